@@ -0,0 +1,190 @@
+package db.bench;
+
+import db.entities.Comment;
+import db.entities.Heading;
+import db.entities.Link;
+import db.entities.Page;
+import db.entities.PageVersion;
+import db.entities.Role;
+import db.entities.Tag;
+import db.entities.User;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Подменные бэкенды, общие для всех бенчмарков одного JVM-форка: заглушка Redis и H2 в режиме PostgreSQL.
+// Схема создаётся Hibernate по сущностям; миграции Flyway написаны для PostgreSQL и здесь не применяются.
+// Тип JSONB объявлен в H2 доменом поверх JSON, таблица tag_stats без сущности создаётся отдельно.
+public class BenchmarkBackends {
+    public static final int PAGES = Integer.getInteger("docman.bench.pages", 1_000);
+    public static final String USERNAME = "ivan.petrov";
+
+    private static final String H2_URL = "jdbc:h2:mem:docman;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;" +
+            "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1;INIT=CREATE DOMAIN IF NOT EXISTS JSONB AS JSON";
+
+    private static BenchmarkBackends instance;
+
+    private final RespStubServer redis;
+    private final SessionFactory sessionFactory;
+    private final SeedData seed;
+
+    private BenchmarkBackends() throws IOException {
+        this.redis = new RespStubServer();
+        // Должно выполниться до первого обращения к RedisCacheUtil: пул создаётся при загрузке класса
+        System.setProperty("docman.redis.host", redis.getHost());
+        System.setProperty("docman.redis.port", Integer.toString(redis.getPort()));
+        this.sessionFactory = buildSessionFactory();
+        createExtraTables(sessionFactory);
+        this.seed = seed(sessionFactory);
+    }
+
+    public static synchronized BenchmarkBackends start() {
+        if (instance == null) {
+            try {
+                instance = new BenchmarkBackends();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось запустить заглушку Redis", e);
+            }
+        }
+        return instance;
+    }
+
+    public RespStubServer getRedis() {
+        return redis;
+    }
+
+    public SessionFactory getSessionFactory() {
+        return sessionFactory;
+    }
+
+    public SeedData getSeed() {
+        return seed;
+    }
+
+    private static SessionFactory buildSessionFactory() {
+        Configuration configuration = new Configuration().configure();
+        configuration.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        configuration.setProperty("hibernate.connection.url", H2_URL);
+        configuration.setProperty("hibernate.connection.username", "sa");
+        configuration.setProperty("hibernate.connection.password", "");
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.setProperty("hibernate.show_sql", "false");
+        configuration.setProperty("hibernate.format_sql", "false");
+        return configuration.buildSessionFactory();
+    }
+
+    private static void createExtraTables(SessionFactory sessionFactory) {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createNativeMutationQuery(
+                            "CREATE TABLE IF NOT EXISTS tag_stats (" +
+                                    "tag_id BIGINT PRIMARY KEY REFERENCES tags (id) ON DELETE CASCADE, " +
+                                    "page_count BIGINT NOT NULL DEFAULT 0)")
+                    .executeUpdate();
+            tx.commit();
+        }
+    }
+
+    // Данные записываются напрямую через сессию, минуя DAO: кэш и outbox остаются пустыми
+    private static SeedData seed(SessionFactory sessionFactory) {
+        LocalDateTime now = LocalDateTime.now();
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            Role role = new Role();
+            role.setName("EDITOR");
+            role.setDescription("Редактирование и публикация страниц");
+            role.setPermissions(Fixtures.EDITOR_PERMISSIONS);
+            session.persist(role);
+
+            User user = new User();
+            user.setUsername(USERNAME);
+            user.setEmail("ivan.petrov@example.com");
+            user.setPassword("$2a$12$R9h/cIPz0gi.URNNX3kh2OPST9/PgBkqquzi.Ss7KIUgO2t0jWMUW");
+            user.setCreatedAt(now);
+            user.setRole(role);
+            session.persist(user);
+
+            Tag tag = new Tag();
+            tag.setName("deployment");
+            tag.setDescription("Развёртывание и эксплуатация сервисов");
+            session.persist(tag);
+
+            List<Long> pageIds = new ArrayList<>(PAGES);
+            List<String> slugs = new ArrayList<>(PAGES);
+            List<Long> versionIds = new ArrayList<>(PAGES);
+            PageVersion firstVersion = null;
+            Link firstLink = null;
+            for (int i = 0; i < PAGES; i++) {
+                Page page = new Page();
+                page.setTitle("Установка и настройка сервера приложений " + i);
+                page.setSlug("server-setup-" + i);
+                page.setCreatedAt(now);
+                page.setUpdatedAt(now);
+                session.persist(page);
+                pageIds.add(page.getId());
+                slugs.add(page.getSlug());
+
+                PageVersion version = new PageVersion();
+                version.setPage(page);
+                version.setVersionNumber(1);
+                version.setContent(Fixtures.markdown(Fixtures.VERSION_CONTENT_CHARS, i));
+                version.setChangedBy(user);
+                version.setChangedAt(now);
+                version.setPublished(true);
+                session.persist(version);
+                versionIds.add(version.getId());
+
+                for (int position = 0; position < Fixtures.HEADINGS_PER_PAGE; position++) {
+                    Heading heading = new Heading();
+                    heading.setPage(page);
+                    heading.setLevel(position % 3 + 1);
+                    heading.setText("Раздел " + position + " страницы " + i);
+                    heading.setPosition(position);
+                    session.persist(heading);
+                }
+
+                Link link = new Link();
+                link.setPage(page);
+                link.setUrl("/pages/server-setup-" + (i + 1) % PAGES);
+                link.setTitle("Следующая страница");
+                link.setInternal(true);
+                link.setTargetSlug("server-setup-" + (i + 1) % PAGES);
+                session.persist(link);
+
+                if (i == 0) {
+                    firstVersion = version;
+                    firstLink = link;
+                }
+                if (i % 100 == 99) {
+                    session.flush();
+                    session.clear();
+                    role = session.getReference(Role.class, role.getId());
+                    user = session.getReference(User.class, user.getId());
+                }
+            }
+
+            Comment comment = new Comment();
+            comment.setPageVersion(session.getReference(PageVersion.class, firstVersion.getId()));
+            comment.setAuthor(user);
+            comment.setText("Проверить команды установки на чистой системе.");
+            comment.setCreatedAt(now);
+            session.persist(comment);
+            tx.commit();
+
+            return new SeedData(role.getId(), user.getId(), tag.getId(), List.copyOf(pageIds), List.copyOf(slugs),
+                    List.copyOf(versionIds), firstVersion.getId(), comment.getId(), firstLink.getId());
+        }
+    }
+
+    public record SeedData(Long roleId, Long userId, Long tagId, List<Long> pageIds, List<String> slugs,
+                           List<Long> pageVersionIds, Long pageVersionId, Long commentId, Long linkId) {
+    }
+}
@@ -0,0 +1,80 @@
+package db.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import db.dto.HeadingDTO;
+import db.dto.LinkDTO;
+import db.util.JsonUtil;
+import db.util.RedisCacheUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Сериализация DTO тем же ObjectMapper, что использует RedisCacheUtil, и полный круг записи и чтения
+// через пул Jedis до заглушки Redis
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheSerializationBenchmark {
+    private static final TypeReference<List<HeadingDTO>> HEADING_LIST_TYPE = new TypeReference<>() {};
+    private static final TypeReference<List<LinkDTO>> LINK_LIST_TYPE = new TypeReference<>() {};
+
+    @Param
+    public Fixtures.DtoType type;
+
+    private final ObjectMapper mapper = JsonUtil.mapper();
+    private Object value;
+    private String json;
+    private JavaType javaType;
+    private String key;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+        BenchmarkBackends.start();
+        value = Fixtures.sample(type);
+        json = mapper.writeValueAsString(value);
+        javaType = switch (type) {
+            case HEADING_LIST -> mapper.getTypeFactory().constructType(HEADING_LIST_TYPE);
+            case LINK_LIST -> mapper.getTypeFactory().constructType(LINK_LIST_TYPE);
+            default -> mapper.getTypeFactory().constructType(value.getClass());
+        };
+        key = "bench:" + type.name().toLowerCase();
+    }
+
+    @Benchmark
+    public String serialize() throws JsonProcessingException {
+        return mapper.writeValueAsString(value);
+    }
+
+    @Benchmark
+    public Object deserialize() throws JsonProcessingException {
+        return mapper.readValue(json, javaType);
+    }
+
+    @Benchmark
+    public Object cacheRoundTrip() {
+        RedisCacheUtil.cacheValue(key, value);
+        return switch (type) {
+            case HEADING_LIST -> RedisCacheUtil.getValue(key, HEADING_LIST_TYPE);
+            case LINK_LIST -> RedisCacheUtil.getValue(key, LINK_LIST_TYPE);
+            default -> RedisCacheUtil.getValue(key, value.getClass());
+        };
+    }
+}
@@ -0,0 +1,230 @@
+package db.bench;
+
+import db.dao.CommentDAO;
+import db.dao.LinkDAO;
+import db.dao.PageDAO;
+import db.dao.RoleDAO;
+import db.dao.TagDAO;
+import db.dao.UserDAO;
+import db.dto.CommentDTO;
+import db.dto.LinkDTO;
+import db.dto.PageDTO;
+import db.dto.RoleDTO;
+import db.dto.TagDTO;
+import db.dto.UserDTO;
+import db.entities.Comment;
+import db.entities.Heading;
+import db.entities.Link;
+import db.entities.Page;
+import db.entities.Role;
+import db.entities.Tag;
+import db.entities.User;
+import db.security.Permission;
+import db.util.RedisCacheUtil;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Защищённые dtoToEntity и сброс ключей кэша доступны через наследников DAO ниже.
+// Промах кэша готовится удалением ключа перед каждым вызовом (Level.Invocation): операции длятся
+// десятки микросекунд и дольше, поэтому накладные расходы JMH на такую подготовку несущественны.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DaoBenchmark {
+    private BenchPageDAO pageDAO;
+    private BenchUserDAO userDAO;
+    private BenchRoleDAO roleDAO;
+    private BenchTagDAO tagDAO;
+    private BenchCommentDAO commentDAO;
+    private BenchLinkDAO linkDAO;
+    private BenchmarkBackends.SeedData seed;
+    private Long hotPageId;
+    private Long coldPageId;
+    private PageDTO pageDTO;
+    private UserDTO userDTO;
+    private RoleDTO roleDTO;
+    private TagDTO tagDTO;
+    private CommentDTO commentDTO;
+    private LinkDTO linkDTO;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkBackends backends = BenchmarkBackends.start();
+        pageDAO = new BenchPageDAO(backends.getSessionFactory());
+        userDAO = new BenchUserDAO(backends.getSessionFactory());
+        roleDAO = new BenchRoleDAO(backends.getSessionFactory());
+        tagDAO = new BenchTagDAO(backends.getSessionFactory());
+        commentDAO = new BenchCommentDAO(backends.getSessionFactory());
+        linkDAO = new BenchLinkDAO(backends.getSessionFactory());
+        seed = backends.getSeed();
+        hotPageId = seed.pageIds().get(0);
+        coldPageId = seed.pageIds().get(seed.pageIds().size() / 2);
+
+        pageDAO.findById(Page.class, hotPageId);
+        pageDAO.getHeadingsByPageId(hotPageId);
+        userDAO.findById(User.class, seed.userId());
+
+        LocalDateTime now = LocalDateTime.now();
+        pageDTO = Fixtures.page(hotPageId);
+        userDTO = new UserDTO(seed.userId(), "ivan.petrov", "ivan.petrov@example.com", "hash",
+                now, now, seed.roleId(), "EDITOR", 0L);
+        roleDTO = new RoleDTO(seed.roleId(), "EDITOR", "Редактирование и публикация страниц",
+                Fixtures.EDITOR_PERMISSIONS);
+        tagDTO = new TagDTO(seed.tagId(), "deployment", "Развёртывание и эксплуатация сервисов");
+        commentDTO = new CommentDTO(seed.commentId(), seed.pageVersionId(), seed.userId(),
+                "Проверить команды установки.", now, null, false, 0L);
+        linkDTO = new LinkDTO(seed.linkId(), hotPageId, "/pages/server-setup-1", "Следующая страница",
+                null, true, "server-setup-1", null);
+    }
+
+    @State(Scope.Thread)
+    public static class ColdCache {
+        @Setup(Level.Invocation)
+        public void evict(DaoBenchmark benchmark) {
+            benchmark.pageDAO.evictCached(benchmark.coldPageId);
+        }
+    }
+
+    @Benchmark
+    public Page findByIdHit() {
+        return pageDAO.findById(Page.class, hotPageId);
+    }
+
+    @Benchmark
+    public Page findByIdMiss(ColdCache coldCache) {
+        return pageDAO.findById(Page.class, coldPageId);
+    }
+
+    // Роль при попадании в кэш берётся из ReferenceDataRegistry, без обращения к базе
+    @Benchmark
+    public User findUserByIdHit() {
+        return userDAO.findById(User.class, seed.userId());
+    }
+
+    @Benchmark
+    public Page pageDtoToEntity() {
+        return pageDAO.convert(pageDTO);
+    }
+
+    @Benchmark
+    public User userDtoToEntity() {
+        return userDAO.convert(userDTO);
+    }
+
+    @Benchmark
+    public Role roleDtoToEntity() {
+        return roleDAO.convert(roleDTO);
+    }
+
+    @Benchmark
+    public Tag tagDtoToEntity() {
+        return tagDAO.convert(tagDTO);
+    }
+
+    @Benchmark
+    public Comment commentDtoToEntity() {
+        return commentDAO.convert(commentDTO);
+    }
+
+    @Benchmark
+    public Link linkDtoToEntity() {
+        return linkDAO.convert(linkDTO);
+    }
+
+    @Benchmark
+    public List<Heading> headingsHit() {
+        return pageDAO.getHeadingsByPageId(hotPageId);
+    }
+
+    @Benchmark
+    public List<Heading> headingsMiss(ColdCache coldCache) {
+        return pageDAO.getHeadingsByPageId(coldPageId);
+    }
+
+    @Benchmark
+    public boolean permissionCheck() {
+        return roleDAO.getPermissionRegistry().isAllowed(seed.roleId(), Permission.COMMENT);
+    }
+
+    private static final class BenchPageDAO extends PageDAO {
+        BenchPageDAO(SessionFactory sessionFactory) {
+            super(sessionFactory);
+        }
+
+        Page convert(PageDTO dto) {
+            return dtoToEntity(dto);
+        }
+
+        void evictCached(Long pageId) {
+            evictEntity(Page.class, pageId);
+            RedisCacheUtil.evict(headingsKey(pageId));
+        }
+    }
+
+    private static final class BenchUserDAO extends UserDAO {
+        BenchUserDAO(SessionFactory sessionFactory) {
+            super(sessionFactory);
+        }
+
+        User convert(UserDTO dto) {
+            return dtoToEntity(dto);
+        }
+    }
+
+    private static final class BenchRoleDAO extends RoleDAO {
+        BenchRoleDAO(SessionFactory sessionFactory) {
+            super(sessionFactory);
+        }
+
+        Role convert(RoleDTO dto) {
+            return dtoToEntity(dto);
+        }
+    }
+
+    private static final class BenchTagDAO extends TagDAO {
+        BenchTagDAO(SessionFactory sessionFactory) {
+            super(sessionFactory);
+        }
+
+        Tag convert(TagDTO dto) {
+            return dtoToEntity(dto);
+        }
+    }
+
+    private static final class BenchCommentDAO extends CommentDAO {
+        BenchCommentDAO(SessionFactory sessionFactory) {
+            super(sessionFactory);
+        }
+
+        Comment convert(CommentDTO dto) {
+            return dtoToEntity(dto);
+        }
+    }
+
+    private static final class BenchLinkDAO extends LinkDAO {
+        BenchLinkDAO(SessionFactory sessionFactory) {
+            super(sessionFactory);
+        }
+
+        Link convert(LinkDTO dto) {
+            return dtoToEntity(dto);
+        }
+    }
+}
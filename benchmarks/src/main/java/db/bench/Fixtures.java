@@ -0,0 +1,121 @@
+package db.bench;
+
+import db.dto.BlockDTO;
+import db.dto.CommentDTO;
+import db.dto.HeadingDTO;
+import db.dto.LinkDTO;
+import db.dto.PageDTO;
+import db.dto.PageVersionDTO;
+import db.dto.RoleDTO;
+import db.dto.TagDTO;
+import db.dto.UserDTO;
+import db.security.Permission;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// DTO размеров, типичных для базы документации: версия страницы около 8 КБ Markdown,
+// блок с JSON на несколько сотен байт, списки заголовков и ссылок одной страницы
+public class Fixtures {
+    public static final int VERSION_CONTENT_CHARS = 8_000;
+    public static final int HEADINGS_PER_PAGE = 24;
+    public static final int LINKS_PER_PAGE = 16;
+    // Маска роли EDITOR, как в V8__role_permissions.sql
+    public static final long EDITOR_PERMISSIONS =
+            Permission.maskOf(Permission.READ, Permission.COMMENT, Permission.EDIT, Permission.PUBLISH);
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2025, 3, 14, 10, 30);
+    private static final String[] WORDS = {
+            "сервер", "настройка", "документация", "pipeline", "индекс", "страница", "версия", "cache",
+            "пользователь", "deploy", "конфигурация", "запрос", "ответ", "ошибка", "миграция", "backup"
+    };
+
+    private Fixtures() {
+    }
+
+    public enum DtoType {
+        PAGE, PAGE_VERSION, USER, ROLE, TAG, COMMENT, BLOCK, LINK, HEADING_LIST, LINK_LIST
+    }
+
+    public static Object sample(DtoType type) {
+        return switch (type) {
+            case PAGE -> page(1L);
+            case PAGE_VERSION -> new PageVersionDTO(10L, 1L, 7, markdown(VERSION_CONTENT_CHARS, 7),
+                    2L, CREATED.plusDays(3), true);
+            case USER -> new UserDTO(2L, "ivan.petrov", "ivan.petrov@example.com",
+                    "$2a$12$R9h/cIPz0gi.URNNX3kh2OPST9/PgBkqquzi.Ss7KIUgO2t0jWMUW",
+                    CREATED, CREATED.plusDays(1), 1L, "EDITOR", 4L);
+            case ROLE -> new RoleDTO(1L, "EDITOR", "Редактирование и публикация страниц",
+                    EDITOR_PERMISSIONS);
+            case TAG -> new TagDTO(5L, "deployment", "Развёртывание и эксплуатация сервисов");
+            case COMMENT -> new CommentDTO(20L, 10L, 2L, sentence(40, 3), CREATED.plusDays(4), null, false, 0L);
+            case BLOCK -> new BlockDTO(30L, 1L, "code", blockJson(), 2_048, true, 1L);
+            case LINK -> link(1);
+            case HEADING_LIST -> headings(1L);
+            case LINK_LIST -> {
+                List<LinkDTO> links = new ArrayList<>(LINKS_PER_PAGE);
+                for (int i = 1; i <= LINKS_PER_PAGE; i++) {
+                    links.add(link(i));
+                }
+                yield links;
+            }
+        };
+    }
+
+    public static PageDTO page(Long id) {
+        return new PageDTO(id, "Установка и настройка сервера приложений " + id, "server-setup-" + id,
+                CREATED, CREATED.plusDays(3), 3L);
+    }
+
+    public static List<HeadingDTO> headings(Long pageId) {
+        List<HeadingDTO> headings = new ArrayList<>(HEADINGS_PER_PAGE);
+        for (int i = 0; i < HEADINGS_PER_PAGE; i++) {
+            headings.add(new HeadingDTO(100L + i, pageId, i % 3 + 1, sentence(5, i), i));
+        }
+        return headings;
+    }
+
+    // Детерминированный Markdown: заголовки, абзацы, списки и ссылки в пропорциях обычной страницы
+    public static String markdown(int chars, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(chars + 256);
+        int section = 0;
+        while (text.length() < chars) {
+            text.append("#".repeat(section % 3 + 1)).append(' ').append(sentence(4, seed + section)).append("\n\n");
+            text.append(sentence(60 + random.nextInt(40), seed * 31 + section)).append("\n\n");
+            for (int item = 0; item < 3; item++) {
+                text.append("- ").append(sentence(8, seed + section * 7L + item)).append('\n');
+            }
+            text.append("\nСм. [[").append("server-setup-").append(random.nextInt(500)).append("]] и ")
+                    .append("[документацию](https://example.com/docs/").append(section).append(").\n\n");
+            section++;
+        }
+        return text.toString();
+    }
+
+    private static String sentence(int words, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sentence = new StringBuilder(words * 9);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.append('.').toString();
+    }
+
+    private static LinkDTO link(int i) {
+        return new LinkDTO((long) i, 1L, "/pages/server-setup-" + i, "Связанная страница " + i,
+                sentence(6, i), true, "server-setup-" + i, (long) i + 1);
+    }
+
+    private static String blockJson() {
+        return "{\"language\":\"bash\",\"caption\":\"Установка пакетов\",\"lines\":["
+                + "\"sudo apt-get update\",\"sudo apt-get install -y openjdk-25-jdk postgresql redis-server\","
+                + "\"sudo systemctl enable --now postgresql redis-server\",\"java -version\"],"
+                + "\"collapsed\":false,\"highlight\":[2,3]}";
+    }
+}
@@ -0,0 +1,75 @@
+package db.bench;
+
+import db.service.DocumentationService;
+
+import java.util.List;
+import java.util.Random;
+
+// Операции нагрузочного прогона и их доли в смеси по умолчанию
+public enum LoadOperation {
+    GET_PAGE_BY_ID(35) {
+        @Override
+        void run(DocumentationService service, BenchmarkBackends.SeedData seed, Random random) {
+            service.getPageById(pick(seed.pageIds(), random));
+        }
+    },
+    GET_FULL_PAGE_BY_SLUG(20) {
+        @Override
+        void run(DocumentationService service, BenchmarkBackends.SeedData seed, Random random) {
+            service.getFullPageBySlug(pick(seed.slugs(), random));
+        }
+    },
+    UPDATE_PAGE_CONTENT(8) {
+        @Override
+        void run(DocumentationService service, BenchmarkBackends.SeedData seed, Random random) {
+            service.updatePageContent(pick(seed.pageIds(), random),
+                    Fixtures.markdown(Fixtures.VERSION_CONTENT_CHARS, random.nextLong()), BenchmarkBackends.USERNAME);
+        }
+    },
+    ADD_COMMENT(7) {
+        @Override
+        void run(DocumentationService service, BenchmarkBackends.SeedData seed, Random random) {
+            service.addComment(pick(seed.pageVersionIds(), random), BenchmarkBackends.USERNAME,
+                    "Уточнить раздел " + random.nextInt(24) + " перед публикацией.");
+        }
+    },
+    SEARCH_TITLE(15) {
+        @Override
+        void run(DocumentationService service, BenchmarkBackends.SeedData seed, Random random) {
+            service.searchPageHits(pick(QUERIES, random), 20, null, null);
+        }
+    },
+    SEARCH_CONTENT(10) {
+        @Override
+        void run(DocumentationService service, BenchmarkBackends.SeedData seed, Random random) {
+            service.searchContentHits(pick(QUERIES, random), 20, null, null);
+        }
+    },
+    SUGGEST(5) {
+        @Override
+        void run(DocumentationService service, BenchmarkBackends.SeedData seed, Random random) {
+            String query = pick(QUERIES, random);
+            service.suggest(query.substring(0, Math.min(query.length(), 1 + random.nextInt(6))), 10);
+        }
+    };
+
+    private static final List<String> QUERIES = List.of(
+            "установка сервера", "настройка", "конфигурация приложений", "миграция", "backup",
+            "deploy pipeline", "ошибка запроса", "индекс", "cache", "пользователь");
+
+    private final int defaultWeight;
+
+    LoadOperation(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    public int getDefaultWeight() {
+        return defaultWeight;
+    }
+
+    abstract void run(DocumentationService service, BenchmarkBackends.SeedData seed, Random random);
+
+    private static <T> T pick(List<T> values, Random random) {
+        return values.get(random.nextInt(values.size()));
+    }
+}
@@ -0,0 +1,269 @@
+package db.bench;
+
+import db.dao.BlockDAO;
+import db.dao.CommentDAO;
+import db.dao.LinkDAO;
+import db.dao.PageDAO;
+import db.dao.PageVersionDAO;
+import db.dao.RoleDAO;
+import db.dao.SearchDAO;
+import db.dao.TagDAO;
+import db.dao.UserDAO;
+import db.metrics.Metrics;
+import db.outbox.CacheInvalidationConsumer;
+import db.outbox.OutboxRelay;
+import db.outbox.SearchIndexingConsumer;
+import db.service.DocumentationService;
+import db.service.DocumentationServiceImpl;
+import db.util.Startup;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.hibernate.SessionFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Нагрузочный прогон DocumentationService на подменных бэкендах (см. BenchmarkBackends).
+// Каждый виртуальный поток выбирает операции по весам смеси; задержки пишутся в HdrHistogram в микросекундах.
+// При docman.load.rate > 0 нагрузка открытая: задержка считается от запланированного момента запуска,
+// поэтому очередь перед перегруженным сервисом видна в перцентилях, а не скрывается паузами клиента.
+//
+// docman.load.threads           число виртуальных потоков (64)
+// docman.load.warmup.seconds    прогрев без записи результатов (10)
+// docman.load.duration.seconds  длительность замера (60)
+// docman.load.rate              суммарная частота операций в секунду, 0 — без пауз (0)
+// docman.load.mix               веса, например GET_PAGE_BY_ID=50,SEARCH_TITLE=50; остальные операции не выполняются
+// docman.load.seed              зерно генераторов, одинаковое зерно даёт одинаковую последовательность операций (42)
+// docman.load.report            CSV-отчёт (load-report.csv); рядом пишется распределение перцентилей .hgrm
+// docman.load.baseline          CSV-отчёт предыдущей сборки для сравнения
+// Сервис обёрнут слоем метрик; его накладные расходы видны при сравнении с прогоном -Ddocman.metrics.enabled=false
+public class LoadTest {
+    private static final int THREADS = Integer.getInteger("docman.load.threads", 64);
+    private static final long WARMUP_SECONDS = Long.getLong("docman.load.warmup.seconds", 10);
+    private static final long DURATION_SECONDS = Long.getLong("docman.load.duration.seconds", 60);
+    private static final double RATE = Double.parseDouble(System.getProperty("docman.load.rate", "0"));
+    private static final String MIX = System.getProperty("docman.load.mix", "");
+    private static final long SEED = Long.getLong("docman.load.seed", 42);
+    private static final Path REPORT = Path.of(System.getProperty("docman.load.report", "load-report.csv"));
+    private static final String BASELINE = System.getProperty("docman.load.baseline");
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final DocumentationService service;
+    private final BenchmarkBackends.SeedData seed;
+    private final Map<LoadOperation, Integer> weights;
+    private final LoadOperation[] schedule;
+    private final Map<LoadOperation, Recorder> recorders = new EnumMap<>(LoadOperation.class);
+    private final Map<LoadOperation, LongAdder> errors = new EnumMap<>(LoadOperation.class);
+    private volatile boolean running = true;
+
+    private LoadTest(DocumentationService service, BenchmarkBackends.SeedData seed, Map<LoadOperation, Integer> weights) {
+        this.service = service;
+        this.seed = seed;
+        this.weights = weights;
+        List<LoadOperation> slots = new ArrayList<>();
+        weights.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                slots.add(operation);
+            }
+        });
+        this.schedule = slots.toArray(LoadOperation[]::new);
+        for (LoadOperation operation : weights.keySet()) {
+            recorders.put(operation, new Recorder(SIGNIFICANT_DIGITS));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Встроенный поиск вместо Elasticsearch, индекс во временном каталоге
+        System.setProperty("docman.search.engine", "EMBEDDED");
+        System.setProperty("docman.search.dir", Files.createTempDirectory("docman-load-index").toString());
+
+        BenchmarkBackends backends = BenchmarkBackends.start();
+        SessionFactory sessionFactory = backends.getSessionFactory();
+        Startup.openSearchIndexes(sessionFactory);
+        DocumentationService service = buildService(sessionFactory);
+        try (OutboxRelay relay = new OutboxRelay(sessionFactory,
+                List.of(new CacheInvalidationConsumer(), new SearchIndexingConsumer()))) {
+            relay.start();
+            LoadTest test = new LoadTest(service, backends.getSeed(), parseMix(MIX));
+            Map<LoadOperation, Histogram> histograms = test.run();
+            test.report(histograms);
+        }
+        backends.getRedis().close();
+        System.exit(0);
+    }
+
+    private static DocumentationService buildService(SessionFactory sessionFactory) {
+        Metrics.bindHibernate(sessionFactory);
+        return Metrics.instrument(DocumentationService.class, new DocumentationServiceImpl(
+                new BlockDAO(sessionFactory),
+                new PageDAO(sessionFactory),
+                new PageVersionDAO(sessionFactory),
+                new RoleDAO(sessionFactory),
+                new SearchDAO(sessionFactory),
+                new TagDAO(sessionFactory),
+                new UserDAO(sessionFactory),
+                new CommentDAO(sessionFactory),
+                new LinkDAO(sessionFactory)), "service");
+    }
+
+    private static Map<LoadOperation, Integer> parseMix(String mix) {
+        Map<LoadOperation, Integer> weights = new EnumMap<>(LoadOperation.class);
+        if (mix.isBlank()) {
+            for (LoadOperation operation : LoadOperation.values()) {
+                weights.put(operation, operation.getDefaultWeight());
+            }
+            return weights;
+        }
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new RuntimeException("Неверный элемент смеси '" + part + "', ожидается ОПЕРАЦИЯ=вес");
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                weights.put(LoadOperation.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new RuntimeException("В смеси нет операций с положительным весом");
+        }
+        return weights;
+    }
+
+    private Map<LoadOperation, Histogram> run() throws InterruptedException {
+        System.out.println("Нагрузка: " + THREADS + " потоков, прогрев " + WARMUP_SECONDS + " с, замер "
+                + DURATION_SECONDS + " с, смесь " + weights);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int worker = 0; worker < THREADS; worker++) {
+                int index = worker;
+                executor.submit(() -> work(index));
+            }
+            TimeUnit.SECONDS.sleep(WARMUP_SECONDS);
+            // Операции, начатые во время прогрева и завершённые после сброса, попадут в замер; их доля ничтожна
+            recorders.values().forEach(Recorder::reset);
+            errors.values().forEach(LongAdder::reset);
+            TimeUnit.SECONDS.sleep(DURATION_SECONDS);
+            running = false;
+        }
+        Map<LoadOperation, Histogram> histograms = new EnumMap<>(LoadOperation.class);
+        recorders.forEach((operation, recorder) -> histograms.put(operation, recorder.getIntervalHistogram()));
+        return histograms;
+    }
+
+    private void work(int index) {
+        Random random = new Random(SEED + index);
+        long intervalNanos = RATE > 0 ? (long) (THREADS * 1e9 / RATE) : 0;
+        long intended = System.nanoTime();
+        while (running) {
+            LoadOperation operation = schedule[random.nextInt(schedule.length)];
+            long started;
+            if (intervalNanos > 0) {
+                intended += intervalNanos;
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                started = intended;
+            } else {
+                started = System.nanoTime();
+            }
+            try {
+                operation.run(service, seed, random);
+            } catch (RuntimeException e) {
+                errors.get(operation).increment();
+            }
+            recorders.get(operation).recordValue(Math.max(0, (System.nanoTime() - started) / 1_000));
+        }
+    }
+
+    private void report(Map<LoadOperation, Histogram> histograms) throws IOException {
+        Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+        long totalErrors = 0;
+        List<String> lines = new ArrayList<>();
+        lines.add("# threads=" + THREADS + " rate=" + RATE + " duration=" + DURATION_SECONDS + "s seed=" + SEED
+                + " pages=" + BenchmarkBackends.PAGES);
+        lines.add("operation,weight,count,errors,throughput_per_sec,mean_us,p50_us,p90_us,p99_us,p999_us,max_us");
+        for (Map.Entry<LoadOperation, Histogram> entry : histograms.entrySet()) {
+            long operationErrors = errors.get(entry.getKey()).sum();
+            lines.add(row(entry.getKey().name(), weights.get(entry.getKey()), entry.getValue(), operationErrors));
+            total.add(entry.getValue());
+            totalErrors += operationErrors;
+        }
+        lines.add(row("TOTAL", weights.values().stream().mapToInt(Integer::intValue).sum(), total, totalErrors));
+        Files.write(REPORT, lines, StandardCharsets.UTF_8);
+
+        Path distribution = REPORT.resolveSibling(REPORT.getFileName().toString().replaceFirst("\\.csv$", "") + ".hgrm");
+        try (PrintStream out = new PrintStream(Files.newOutputStream(distribution), true, StandardCharsets.UTF_8)) {
+            histograms.forEach((operation, histogram) -> {
+                out.println("# " + operation.name() + ", микросекунды");
+                histogram.outputPercentileDistribution(out, 1.0);
+                out.println();
+            });
+        }
+
+        lines.forEach(System.out::println);
+        System.out.println("Отчёт: " + REPORT.toAbsolutePath() + ", распределения: " + distribution.toAbsolutePath());
+        if (BASELINE != null) {
+            compareWithBaseline(lines, Path.of(BASELINE));
+        }
+    }
+
+    private static String row(String name, int weight, Histogram histogram, long errors) {
+        double throughput = histogram.getTotalCount() / (double) DURATION_SECONDS;
+        return String.format(Locale.ROOT, "%s,%d,%d,%d,%.1f,%.1f,%d,%d,%d,%d,%d",
+                name, weight, histogram.getTotalCount(), errors, throughput, histogram.getMean(),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9),
+                histogram.getMaxValue());
+    }
+
+    // Изменение пропускной способности и p99 относительно отчёта предыдущей сборки
+    private static void compareWithBaseline(List<String> current, Path baseline) {
+        Map<String, String[]> previous = new HashMap<>();
+        try {
+            for (String line : Files.readAllLines(baseline, StandardCharsets.UTF_8)) {
+                if (!line.startsWith("#") && !line.startsWith("operation,")) {
+                    String[] columns = line.split(",");
+                    previous.put(columns[0], columns);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать базовый отчёт " + baseline, e);
+        }
+        System.out.println("Сравнение с " + baseline + ":");
+        for (String line : current) {
+            if (line.startsWith("#") || line.startsWith("operation,")) {
+                continue;
+            }
+            String[] columns = line.split(",");
+            String[] before = previous.get(columns[0]);
+            if (before == null) {
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "%-24s throughput %+.1f%%  p99 %+.1f%%%n", columns[0],
+                    change(before[4], columns[4]), change(before[8], columns[8]));
+        }
+    }
+
+    private static double change(String before, String after) {
+        double base = Double.parseDouble(before);
+        return base == 0 ? 0 : (Double.parseDouble(after) - base) * 100 / base;
+    }
+}
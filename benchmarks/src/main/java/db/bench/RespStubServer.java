@@ -0,0 +1,218 @@
+package db.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import db.util.JsonUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Заглушка Redis в памяти процесса: протокол RESP2 и только те команды, которые отправляют
+// RedisCacheUtil, пул Jedis и подписка ReferenceDataRegistry. Сетевой обмен настоящий, поэтому в замерах
+// остаются сериализация, пул соединений и loopback, но нет зависимости от установленного Redis.
+public class RespStubServer implements AutoCloseable {
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final ServerSocket serverSocket;
+    private final Map<String, byte[]> values = new ConcurrentHashMap<>();
+    private final Thread acceptor;
+    private volatile boolean running = true;
+
+    public RespStubServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        this.acceptor = Thread.ofPlatform().daemon().name("resp-stub-acceptor").unstarted(this::accept);
+        this.acceptor.start();
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread.ofVirtual().name("resp-stub-connection").start(() -> serve(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Ошибка заглушки Redis: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            while (true) {
+                List<byte[]> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                execute(command, out);
+                // Jedis ждёт ответ на каждую команду, конвейеризации нет
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Соединение закрыто клиентом
+        }
+    }
+
+    private void execute(List<byte[]> command, OutputStream out) throws IOException {
+        String name = string(command.get(0)).toUpperCase(Locale.ROOT);
+        switch (name) {
+            case "PING" -> simple(out, "PONG");
+            case "GET" -> bulk(out, values.get(string(command.get(1))));
+            case "SET" -> {
+                values.put(string(command.get(1)), command.get(2));
+                simple(out, "OK");
+            }
+            case "DEL" -> {
+                long removed = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    if (values.remove(string(command.get(i))) != null) {
+                        removed++;
+                    }
+                }
+                integer(out, removed);
+            }
+            case "EXISTS" -> integer(out, values.containsKey(string(command.get(1))) ? 1 : 0);
+            case "EVAL" -> integer(out, setIfNewer(command));
+            case "FLUSHALL", "FLUSHDB" -> {
+                values.clear();
+                simple(out, "OK");
+            }
+            case "SELECT", "CLIENT", "AUTH", "QUIT" -> simple(out, "OK");
+            // Один процесс — одна копия реестра справочников: рассылка никому не доставляется
+            case "PUBLISH" -> integer(out, 0);
+            case "SUBSCRIBE" -> {
+                for (int i = 1; i < command.size(); i++) {
+                    out.write("*3".getBytes(StandardCharsets.US_ASCII));
+                    out.write(CRLF);
+                    bulk(out, "subscribe".getBytes(StandardCharsets.US_ASCII));
+                    bulk(out, command.get(i));
+                    integer(out, i);
+                }
+            }
+            default -> error(out, "ERR unknown command '" + name + "'");
+        }
+    }
+
+    // Lua не исполняется: единственный скрипт RedisCacheUtil (запись, если в кэше нет более новой версии)
+    // воспроизводится здесь. Формат: EVAL script 1 key value version
+    private long setIfNewer(List<byte[]> command) {
+        String key = string(command.get(3));
+        byte[] value = command.get(4);
+        long version = Long.parseLong(string(command.get(5)));
+        long[] written = {0};
+        values.compute(key, (k, current) -> {
+            if (current != null) {
+                try {
+                    JsonNode cachedVersion = JsonUtil.mapper().readTree(current).get("version");
+                    if (cachedVersion != null && cachedVersion.isNumber() && cachedVersion.asLong() > version) {
+                        return current;
+                    }
+                } catch (IOException e) {
+                    // Не JSON: перезаписываем, как и скрипт
+                }
+            }
+            written[0] = 1;
+            return value;
+        });
+        return written[0];
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        if (type != '*') {
+            throw new IOException("Ожидался массив RESP, получено: " + (char) type);
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<byte[]> arguments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Ожидалась строка RESP");
+            }
+            int length = Integer.parseInt(readLine(in));
+            arguments.add(in.readNBytes(length));
+            in.skipNBytes(CRLF.length);
+        }
+        return arguments;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(16);
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException();
+            }
+            line.write(b);
+        }
+        in.read();
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void simple(OutputStream out, String value) throws IOException {
+        out.write(('+' + value).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static void error(OutputStream out, String message) throws IOException {
+        out.write(('-' + message).getBytes(StandardCharsets.UTF_8));
+        out.write(CRLF);
+    }
+
+    private static void integer(OutputStream out, long value) throws IOException {
+        out.write((":" + value).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static void bulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.write("$-1".getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+            return;
+        }
+        out.write(("$" + value.length).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.write(value);
+        out.write(CRLF);
+    }
+}
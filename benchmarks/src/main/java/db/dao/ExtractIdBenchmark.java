@@ -0,0 +1,51 @@
+package db.dao;
+
+import db.entities.Page;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Лежит в пакете db.dao ради BaseDAO.extractIdHook: рефлексивный getId на каждом cacheEntity.
+// Сессия не нужна, поэтому PageDAO создаётся без SessionFactory
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExtractIdBenchmark {
+    private PageDAO pageDAO;
+    private Page page;
+
+    @Setup
+    public void setUp() {
+        pageDAO = new PageDAO(null);
+        page = new Page();
+        page.setId(42L);
+        page.setTitle("Установка сервера");
+        page.setSlug("server-setup");
+        page.setCreatedAt(LocalDateTime.now());
+        page.setUpdatedAt(LocalDateTime.now());
+    }
+
+    @Benchmark
+    public Long extractId() {
+        return pageDAO.extractIdHook(page);
+    }
+
+    // Прямой вызов геттера для сравнения с рефлексией
+    @Benchmark
+    public Long getId() {
+        return page.getId();
+    }
+}
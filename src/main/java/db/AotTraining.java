@@ -0,0 +1,105 @@
+package db;
+
+import db.content.ContentParser;
+import db.content.TextDiff;
+import db.dto.TagCountDTO;
+import db.entities.*;
+import db.service.DocumentationService;
+import db.util.ElasticsearchUtil;
+import db.util.HibernateUtil;
+import db.util.RedisCacheUtil;
+import db.util.Startup;
+import org.hibernate.SessionFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Тренировочный прогон для кэша AOT (профиль aot-train): те же пути запуска и чтения, что у DocManSys,
+// но без изменения данных. Redis не очищается и получает только кэшированные копии прочитанных строк,
+// outbox не запускается, встроенный поисковый индекс строится во временном каталоге и удаляется
+public class AotTraining {
+    private static final int PAGES = 20;
+    private static final String SAMPLE = """
+            # Заголовок
+
+            Текст со [ссылкой](/pages/main-page) и **выделением**.
+
+            ## Список
+            - первый пункт
+            - второй пункт
+            """;
+
+    public static void main(String[] args) throws Exception {
+        Path searchDir = Files.createTempDirectory("docman-aot-search");
+        System.setProperty("docman.search.engine", "EMBEDDED");
+        System.setProperty("docman.search.dir", searchDir.toString());
+        try {
+            SessionFactory sessionFactory = Startup.initialize();
+            trainElasticsearchClient();
+            readAll(DocManSys.buildDocumentationService(sessionFactory));
+            trainContent();
+        } finally {
+            HibernateUtil.shutdown();
+            RedisCacheUtil.shutdown();
+            ElasticsearchUtil.close();
+            deleteRecursively(searchDir);
+        }
+    }
+
+    private static void readAll(DocumentationService documentationService) {
+        System.out.printf("Пользователей: %d, ролей: %d%n",
+                documentationService.getAllUsers().size(), documentationService.getAllRoles().size());
+        List<Page> pages = documentationService.getAllPages();
+        for (Page page : pages.subList(0, Math.min(PAGES, pages.size()))) {
+            documentationService.getPageById(page.getId());
+            documentationService.getFullPage(page.getId());
+            documentationService.getFullPageBySlug(page.getSlug());
+            documentationService.getBacklinks(page.getId());
+            List<PageVersion> versions = documentationService.getPageVersions(page.getId());
+            if (versions.size() > 1) {
+                documentationService.diffPageVersions(versions.getFirst().getId(), versions.getLast().getId());
+            }
+        }
+        List<TagCountDTO> tags = documentationService.getTagCloud(10);
+        if (!tags.isEmpty()) {
+            documentationService.getPagesByTag(tags.getFirst().getName(), null, 10);
+            documentationService.searchPagesByTag(tags.getFirst().getName());
+        }
+        documentationService.searchPages("страница");
+        documentationService.searchContentHits("контент", 10, null, null);
+        documentationService.suggest("ст", 5);
+        documentationService.getOrphanPages(null, PAGES);
+        documentationService.getBrokenLinks();
+        System.out.printf("Прочитано страниц: %d%n", Math.min(PAGES, pages.size()));
+    }
+
+    // Разбор и сравнение содержимого выполняются только при записи, здесь они прогоняются на образце
+    private static void trainContent() {
+        ContentParser.parse(SAMPLE);
+        TextDiff.diff(SAMPLE, SAMPLE.replace("второй", "третий") + "\nНовый абзац\n");
+    }
+
+    // Поиск работает со встроенным индексом; клиент Elasticsearch загружается одним ping
+    private static void trainElasticsearchClient() {
+        try {
+            ElasticsearchUtil.warmUp();
+        } catch (RuntimeException e) {
+            System.out.println("ПРЕДУПРЕЖДЕНИЕ Elasticsearch недоступен: " + e.getMessage());
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось удалить " + dir, e);
+        }
+    }
+}
@@ -1,25 +1,43 @@
 package db;
 
 import db.dao.*;
+import db.dto.VersionDiffDTO;
 import db.entities.*;
+import db.metrics.Metrics;
+import db.metrics.MetricsHttpServer;
+import db.metrics.OperationTracer;
+import db.outbox.CacheInvalidationConsumer;
+import db.outbox.OutboxRelay;
+import db.outbox.SearchIndexingConsumer;
+import db.security.Permission;
 import db.service.DocumentationService;
 import db.service.DocumentationServiceImpl;
 import db.util.ElasticsearchUtil;
 import db.util.HibernateUtil;
 import db.util.RedisCacheUtil;
+import db.util.Startup;
 import org.hibernate.SessionFactory;
 import redis.clients.jedis.Jedis;
 
 import java.util.List;
 
 public class DocManSys {
+    // Первый администратор из миграции V11: создаёт пользователей и роли примера
+    private static final String ADMIN = "admin";
+
     public static void main(String[] args) throws Exception {
         cleanRedisCache();
-        SessionFactory sessionFactory = HibernateUtil.getSessionFactory();
+        Metrics.registerMBean();
+        MetricsHttpServer metricsServer = MetricsHttpServer.startIfConfigured();
+        SessionFactory sessionFactory = Startup.initialize();
         DocumentationService documentationService = buildDocumentationService(sessionFactory);
+        OutboxRelay outboxRelay = new OutboxRelay(sessionFactory,
+                List.of(new CacheInvalidationConsumer(), new SearchIndexingConsumer()));
+        outboxRelay.start();
         testRedisConnection();
 
         User guest = createUser(documentationService, "guestUser", "Guest");
+        Startup.firstRequestServed();
         User reader = createUser(documentationService, "readerUser", "Reader");
         User commenter = createUser(documentationService, "commenterUser", "Commenter");
         User editor = createUser(documentationService, "editorUser", "Editor");
@@ -28,13 +46,17 @@ public class DocManSys {
         demonstrateRoleMethods(documentationService, guest);
         demonstratePageMethods(documentationService, editor, commenter);
 
+        outboxRelay.close();
         HibernateUtil.shutdown();
         RedisCacheUtil.shutdown();
         ElasticsearchUtil.close();
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
     }
 
     private static void cleanRedisCache() {
-        try (Jedis jedis = new Jedis("localhost", 6379)) {
+        try (Jedis jedis = new Jedis(RedisCacheUtil.getHost(), RedisCacheUtil.getPort())) {
             jedis.flushAll();
             System.out.println("Redis очищен");
         } catch (Exception e) {
@@ -42,8 +64,8 @@ public class DocManSys {
         }
     }
 
-    private static DocumentationService buildDocumentationService(SessionFactory sessionFactory) {
-        return new DocumentationServiceImpl(
+    static DocumentationService buildDocumentationService(SessionFactory sessionFactory) {
+        DocumentationService service = new DocumentationServiceImpl(
                 new BlockDAO(sessionFactory),
                 new PageDAO(sessionFactory),
                 new PageVersionDAO(sessionFactory),
@@ -54,10 +76,12 @@ public class DocManSys {
                 new CommentDAO(sessionFactory),
                 new LinkDAO(sessionFactory)
         );
+        return Metrics.instrument(DocumentationService.class,
+                OperationTracer.wrap(DocumentationService.class, service), "service");
     }
 
     private static User createUser(DocumentationService documentationService, String username, String roleName) {
-        User user = documentationService.createUser(username, roleName);
+        User user = documentationService.createUser(username, roleName, ADMIN);
         System.out.printf("Создан пользователь %s с ролью %s%n", user.getUsername(), user.getRole().getName());
         return user;
     }
@@ -75,12 +99,12 @@ public class DocManSys {
         System.out.printf("Загружен пользователь по id: %s%n", loadedEditor.getUsername());
 
         commenter.setPassword(commenter.getUsername() + "_new_pass");
-        documentationService.updateUser(commenter);
+        documentationService.updateUser(commenter, ADMIN);
         System.out.printf("Пароль пользователя %s обновлен%n", commenter.getUsername());
 
-        User temp = documentationService.createUser("tempUser", "Guest");
+        User temp = documentationService.createUser("tempUser", "Guest", ADMIN);
         System.out.println("Пользователь tempUser успешно сохранён");
-        documentationService.deleteUser(temp.getId());
+        documentationService.deleteUser(temp.getId(), ADMIN);
         System.out.println("Временный пользователь создан и удален");
     }
 
@@ -95,14 +119,15 @@ public class DocManSys {
 
         Role tempRole = new Role();
         tempRole.setName("Temp");
-        tempRole = documentationService.createRole(tempRole);
+        tempRole.setPermissions(Permission.READ.mask());
+        tempRole = documentationService.createRole(tempRole, ADMIN);
         System.out.printf("Создана временная роль: %s%n", tempRole.getName());
 
         tempRole.setName("TempUpdated");
-        tempRole = documentationService.updateRole(tempRole);
+        tempRole = documentationService.updateRole(tempRole, ADMIN);
         System.out.printf("Роль переименована в: %s%n", tempRole.getName());
 
-        documentationService.deleteRole(tempRole.getId());
+        documentationService.deleteRole(tempRole.getId(), ADMIN);
         System.out.println("Временная роль удалена");
     }
 
@@ -138,6 +163,10 @@ public class DocManSys {
         List<PageVersion> versions = documentationService.getPageVersions(page.getId());
         System.out.printf("Всего версий страницы: %d%n", versions.size());
 
+        VersionDiffDTO diff = documentationService.diffPageVersions(versions.getFirst().getId(), latestVersion.getId());
+        System.out.printf("Изменённых фрагментов между версиями №%d и №%d: %d%n",
+                diff.getFromVersionNumber(), diff.getToVersionNumber(), diff.getHunks().size());
+
         Tag tag = new Tag();
         tag.setName("example");
         tag.setDescription("Пример тега");
@@ -174,7 +203,7 @@ public class DocManSys {
     }
 
     private static void testRedisConnection() {
-        try (Jedis jedis = new Jedis("localhost", 6379)) {
+        try (Jedis jedis = new Jedis(RedisCacheUtil.getHost(), RedisCacheUtil.getPort())) {
             String response = jedis.ping();
             System.out.println("Redis доступен. Ответ: " + response);
         } catch (Exception e) {
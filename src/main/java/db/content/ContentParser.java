@@ -0,0 +1,190 @@
+package db.content;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Разбирает markdown-контент версии за один проход по строкам
+public class ContentParser {
+    public static final int MAX_COLUMN_LENGTH = 255;
+
+    private static final Pattern HEADING = Pattern.compile("^(#{1,6})\\s+(.*?)(?:\\s+#+)?\\s*$");
+    private static final Pattern FENCE = Pattern.compile("^(```|~~~)\\s*(\\S*)\\s*$");
+    private static final Pattern QUOTE = Pattern.compile("^>\\s?(.*)$");
+    private static final Pattern UNORDERED_ITEM = Pattern.compile("^\\s*[-*+]\\s+(.*)$");
+    private static final Pattern ORDERED_ITEM = Pattern.compile("^\\s*\\d+[.)]\\s+(.*)$");
+    private static final Pattern MARKDOWN_LINK = Pattern.compile("\\[([^\\]]*)]\\(([^)\\s]+)(?:\\s+\"[^\"]*\")?\\)");
+    private static final Pattern BARE_URL = Pattern.compile("(?<![(\\[])\\bhttps?://[^\\s)\\]>]*[^\\s)\\]>.,;:!?]");
+    private static final JsonNodeFactory JSON = JsonNodeFactory.instance;
+
+    private final List<ExtractedHeading> headings = new ArrayList<>();
+    private final List<ExtractedLink> links = new ArrayList<>();
+    private final List<ExtractedBlock> blocks = new ArrayList<>();
+
+    private String openType;
+    private final StringBuilder text = new StringBuilder();
+    private final List<String> items = new ArrayList<>();
+    private String fenceMarker;
+    private String codeLanguage;
+
+    private ContentParser() {
+    }
+
+    public static ContentStructure parse(String content) {
+        ContentParser parser = new ContentParser();
+        if (content != null) {
+            try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    parser.accept(line);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        parser.closeBlock();
+        return new ContentStructure(parser.headings, parser.links, parser.blocks);
+    }
+
+    private void accept(String line) {
+        if (fenceMarker != null) {
+            if (line.trim().equals(fenceMarker)) {
+                closeBlock();
+            } else {
+                appendLine(line);
+            }
+            return;
+        }
+
+        Matcher fence = FENCE.matcher(line);
+        if (fence.matches()) {
+            closeBlock();
+            openType = "code";
+            fenceMarker = fence.group(1);
+            codeLanguage = fence.group(2);
+            return;
+        }
+
+        if (line.isBlank()) {
+            closeBlock();
+            return;
+        }
+
+        Matcher heading = HEADING.matcher(line);
+        if (heading.matches()) {
+            closeBlock();
+            int level = heading.group(1).length();
+            String headingText = heading.group(2);
+            headings.add(new ExtractedHeading(level, truncate(headingText)));
+            extractLinks(headingText);
+            ObjectNode node = JSON.objectNode();
+            node.put("level", level);
+            node.put("text", headingText);
+            blocks.add(new ExtractedBlock("heading", node));
+            return;
+        }
+
+        Matcher quote = QUOTE.matcher(line);
+        if (quote.matches()) {
+            continueBlock("quote");
+            appendLine(quote.group(1));
+            extractLinks(quote.group(1));
+            return;
+        }
+
+        Matcher unordered = UNORDERED_ITEM.matcher(line);
+        Matcher ordered = ORDERED_ITEM.matcher(line);
+        if (unordered.matches() || ordered.matches()) {
+            String item = unordered.matches() ? unordered.group(1) : ordered.group(1);
+            continueBlock(unordered.matches() ? "list" : "ordered_list");
+            items.add(item);
+            extractLinks(item);
+            return;
+        }
+
+        if ("list".equals(openType) || "ordered_list".equals(openType)) {
+            // Продолжение предыдущего пункта списка
+            int last = items.size() - 1;
+            items.set(last, items.get(last) + " " + line.trim());
+            extractLinks(line);
+            return;
+        }
+
+        continueBlock("paragraph");
+        appendLine(line);
+        extractLinks(line);
+    }
+
+    private void continueBlock(String type) {
+        if (!type.equals(openType)) {
+            closeBlock();
+            openType = type;
+        }
+    }
+
+    private void appendLine(String line) {
+        if (!text.isEmpty()) {
+            text.append('\n');
+        }
+        text.append(line);
+    }
+
+    private void closeBlock() {
+        if (openType == null) {
+            return;
+        }
+        ObjectNode node = JSON.objectNode();
+        switch (openType) {
+            case "code" -> {
+                if (codeLanguage != null && !codeLanguage.isEmpty()) {
+                    node.put("language", codeLanguage);
+                }
+                node.put("code", text.toString());
+            }
+            case "list", "ordered_list" -> {
+                ArrayNode array = node.putArray("items");
+                items.forEach(array::add);
+            }
+            default -> node.put("text", text.toString());
+        }
+        blocks.add(new ExtractedBlock(openType, node));
+
+        openType = null;
+        fenceMarker = null;
+        codeLanguage = null;
+        text.setLength(0);
+        items.clear();
+    }
+
+    private void extractLinks(String line) {
+        Matcher markdown = MARKDOWN_LINK.matcher(line);
+        while (markdown.find()) {
+            addLink(markdown.group(2), markdown.group(1));
+        }
+        Matcher bare = BARE_URL.matcher(MARKDOWN_LINK.matcher(line).replaceAll(""));
+        while (bare.find()) {
+            addLink(bare.group(), null);
+        }
+    }
+
+    private void addLink(String url, String title) {
+        // Столбец url ограничен 255 символами, обрезанная ссылка была бы битой
+        if (url.length() > MAX_COLUMN_LENGTH) {
+            return;
+        }
+        links.add(new ExtractedLink(url, title == null || title.isBlank() ? null : truncate(title)));
+    }
+
+    private static String truncate(String value) {
+        return value.length() > MAX_COLUMN_LENGTH ? value.substring(0, MAX_COLUMN_LENGTH) : value;
+    }
+}
@@ -0,0 +1,14 @@
+package db.content;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class ContentStructure {
+    private List<ExtractedHeading> headings;
+    private List<ExtractedLink> links;
+    private List<ExtractedBlock> blocks;
+}
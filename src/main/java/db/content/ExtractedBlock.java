@@ -0,0 +1,12 @@
+package db.content;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ExtractedBlock {
+    private String type;
+    private JsonNode content;
+}
@@ -0,0 +1,11 @@
+package db.content;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ExtractedLink {
+    private String url;
+    private String title;
+}
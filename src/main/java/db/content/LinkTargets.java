@@ -0,0 +1,36 @@
+package db.content;
+
+import java.util.regex.Pattern;
+
+// Внутренними считаются ссылки без схемы и хоста; страница определяется по последнему сегменту пути (slug)
+public class LinkTargets {
+    private static final Pattern SCHEME = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*:");
+
+    private LinkTargets() {
+    }
+
+    public static String internalSlug(String url) {
+        if (url == null) {
+            return null;
+        }
+        String path = url.trim();
+        if (path.isEmpty() || path.startsWith("#") || path.startsWith("//") || SCHEME.matcher(path).find()) {
+            return null;
+        }
+        int end = path.length();
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = path.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        path = path.substring(0, end);
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        String slug = path.substring(path.lastIndexOf('/') + 1);
+        return slug.isEmpty() ? null : slug;
+    }
+}
@@ -0,0 +1,352 @@
+package db.content;
+
+import db.dto.DiffHunkDTO;
+import db.dto.DiffSpanDTO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Построчный diff двух текстов с пословным уточнением внутри hunk'ов.
+// Алгоритм Майерса с поиском середины (linear space): строки и слова сравниваются как целые номера,
+// память — O(N + M) на уровень рекурсии, без таблиц N x M.
+// Время ограничено docman.diff.timeout.millis: после срока ещё не разобранные участки
+// помечаются целиком удалёнными и добавленными, как в diff-match-patch, а hunk'и — как truncated
+public final class TextDiff {
+    public static final int CONTEXT_LINES = Integer.getInteger("docman.diff.context", 3);
+    // Больше токенов в hunk'е — пословное сравнение пропускается, остаётся построчное
+    public static final int MAX_WORD_TOKENS = Integer.getInteger("docman.diff.maxWordTokens", 20_000);
+    // 0 — без ограничения
+    public static final long TIMEOUT_MILLIS = Long.getLong("docman.diff.timeout.millis", 1_000);
+
+    public static final char EQUAL = '=';
+    public static final char REMOVED = '-';
+    public static final char ADDED = '+';
+
+    private TextDiff() {
+    }
+
+    public static List<DiffHunkDTO> diff(String from, String to) {
+        return diff(from, to, TIMEOUT_MILLIS > 0 ? System.nanoTime() + TIMEOUT_MILLIS * 1_000_000 : Long.MAX_VALUE);
+    }
+
+    // deadline — значение System.nanoTime(), после которого поиск кратчайшего пути прекращается
+    static List<DiffHunkDTO> diff(String from, String to, long deadlineNanos) {
+        Deadline deadline = new Deadline(deadlineNanos);
+        // Общий словарь: одинаковые строки обоих текстов получают один номер
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> texts = new ArrayList<>();
+        int[] a = lines(from, ids, texts);
+        int[] b = lines(to, ids, texts);
+
+        boolean[] removed = new boolean[a.length];
+        boolean[] added = new boolean[b.length];
+        compare(a, 0, a.length, b, 0, b.length, removed, added, deadline);
+        return hunks(a, b, removed, added, texts, deadline);
+    }
+
+    // Один проход по тексту: в памяти остаются только номера строк и по экземпляру каждой различной строки
+    private static int[] lines(String text, Map<String, Integer> ids, List<String> texts) {
+        if (text == null || text.isEmpty()) {
+            return new int[0];
+        }
+        int[] result = new int[16];
+        int count = 0;
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            int next = end < 0 ? text.length() : end + 1;
+            if (end < 0) {
+                end = text.length();
+            }
+            if (end > start && text.charAt(end - 1) == '\r') {
+                end--;
+            }
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            result[count++] = intern(text.substring(start, end), ids, texts);
+            start = next;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int intern(String token, Map<String, Integer> ids, List<String> texts) {
+        Integer id = ids.get(token);
+        if (id == null) {
+            id = texts.size();
+            ids.put(token, id);
+            texts.add(token);
+        }
+        return id;
+    }
+
+    // Помечает удалённые элементы a и добавленные элементы b на минимальном пути правок
+    private static void compare(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi,
+                                boolean[] removed, boolean[] added, Deadline deadline) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi) {
+            Arrays.fill(added, bLo, bHi, true);
+            return;
+        }
+        if (bLo == bHi) {
+            Arrays.fill(removed, aLo, aHi, true);
+            return;
+        }
+        int[] split = middleSnake(a, aLo, aHi, b, bLo, bHi, deadline);
+        if (split == null) {
+            Arrays.fill(removed, aLo, aHi, true);
+            Arrays.fill(added, bLo, bHi, true);
+            return;
+        }
+        compare(a, aLo, aLo + split[0], b, bLo, bLo + split[1], removed, added, deadline);
+        compare(a, aLo + split[0], aHi, b, bLo + split[1], bHi, removed, added, deadline);
+    }
+
+    // Встречный поиск из начала и конца; возвращает точку (x, y) на оптимальном пути или null, если истёк срок
+    private static int[] middleSnake(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi, Deadline deadline) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD + 1;
+        int length = 2 * maxD + 3;
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        // Диагонали, вышедшие за границы текста, дальше не просматриваются
+        int fStart = 0, fEnd = 0, bStart = 0, bEnd = 0;
+        for (int d = 0; d <= maxD; d++) {
+            if (deadline.reached()) {
+                return null;
+            }
+            for (int k = -d + fStart; k <= d - fEnd; k += 2) {
+                int i = offset + k;
+                int x = k == -d || (k != d && forward[i - 1] < forward[i + 1]) ? forward[i + 1] : forward[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                forward[i] = x;
+                if (x > n) {
+                    fEnd += 2;
+                } else if (y > m) {
+                    fStart += 2;
+                } else if (odd) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < length && backward[j] != -1 && x >= n - backward[j]) {
+                        return new int[]{x, y};
+                    }
+                }
+            }
+            for (int k = -d + bStart; k <= d - bEnd; k += 2) {
+                int i = offset + k;
+                int x = k == -d || (k != d && backward[i - 1] < backward[i + 1]) ? backward[i + 1] : backward[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[i] = x;
+                if (x > n) {
+                    bEnd += 2;
+                } else if (y > m) {
+                    bStart += 2;
+                } else if (!odd) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < length && forward[j] != -1) {
+                        int fx = forward[j];
+                        if (fx >= n - x) {
+                            return new int[]{fx, fx - (j - offset)};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // Смежные изменения, между которыми не больше 2 * CONTEXT_LINES общих строк, попадают в один hunk
+    private static List<DiffHunkDTO> hunks(int[] a, int[] b, boolean[] removed, boolean[] added, List<String> texts,
+                                           Deadline deadline) {
+        List<int[]> changes = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < a.length || j < b.length) {
+            if ((i < a.length && removed[i]) || (j < b.length && added[j])) {
+                int aStart = i, bStart = j;
+                while (i < a.length && removed[i]) i++;
+                while (j < b.length && added[j]) j++;
+                changes.add(new int[]{aStart, i, bStart, j});
+            } else {
+                i++;
+                j++;
+            }
+        }
+
+        List<DiffHunkDTO> hunks = new ArrayList<>();
+        int first = 0;
+        while (first < changes.size()) {
+            int last = first;
+            while (last + 1 < changes.size() && changes.get(last + 1)[0] - changes.get(last)[1] <= 2 * CONTEXT_LINES) {
+                last++;
+            }
+            int gapBefore = changes.get(first)[0] - (first == 0 ? 0 : changes.get(first - 1)[1]);
+            int gapAfter = (last + 1 < changes.size() ? changes.get(last + 1)[0] : a.length) - changes.get(last)[1];
+            hunks.add(hunk(a, b, changes.subList(first, last + 1),
+                    Math.min(CONTEXT_LINES, gapBefore), Math.min(CONTEXT_LINES, gapAfter), texts, deadline));
+            first = last + 1;
+        }
+        return hunks;
+    }
+
+    private static DiffHunkDTO hunk(int[] a, int[] b, List<int[]> changes, int before, int after, List<String> texts,
+                                    Deadline deadline) {
+        int fromStart = changes.getFirst()[0] - before;
+        int toStart = changes.getFirst()[2] - before;
+        int fromEnd = changes.getLast()[1] + after;
+        int toEnd = changes.getLast()[3] + after;
+
+        List<String> lines = new ArrayList<>();
+        int x = fromStart;
+        for (int[] change : changes) {
+            for (; x < change[0]; x++) {
+                lines.add(' ' + texts.get(a[x]));
+            }
+            for (int k = change[0]; k < change[1]; k++) {
+                lines.add(REMOVED + texts.get(a[k]));
+            }
+            for (int k = change[2]; k < change[3]; k++) {
+                lines.add(ADDED + texts.get(b[k]));
+            }
+            x = change[1];
+        }
+        for (; x < fromEnd; x++) {
+            lines.add(' ' + texts.get(a[x]));
+        }
+
+        List<DiffSpanDTO> words = words(join(a, fromStart, fromEnd, texts), join(b, toStart, toEnd, texts), deadline);
+        // Номера строк с 1, как в unified diff; у пустого диапазона — строка перед ним
+        return new DiffHunkDTO(
+                fromEnd > fromStart ? fromStart + 1 : fromStart, fromEnd - fromStart,
+                toEnd > toStart ? toStart + 1 : toStart, toEnd - toStart,
+                lines, words, deadline.expired);
+    }
+
+    private static String join(int[] lines, int start, int end, List<String> texts) {
+        StringBuilder result = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                result.append('\n');
+            }
+            result.append(texts.get(lines[i]));
+        }
+        return result.toString();
+    }
+
+    // Пословный diff всего hunk'а: последовательность фрагментов восстанавливает обе стороны.
+    // После истечения срока уточнение пропускается
+    private static List<DiffSpanDTO> words(String from, String to, Deadline deadline) {
+        if (deadline.reached()) {
+            return null;
+        }
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> texts = new ArrayList<>();
+        int[] a = tokens(from, ids, texts);
+        int[] b = tokens(to, ids, texts);
+        if (a == null || b == null) {
+            return null;
+        }
+
+        boolean[] removed = new boolean[a.length];
+        boolean[] added = new boolean[b.length];
+        compare(a, 0, a.length, b, 0, b.length, removed, added, deadline);
+
+        List<DiffSpanDTO> spans = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        char runOp = EQUAL;
+        int i = 0, j = 0;
+        while (i < a.length || j < b.length) {
+            char op;
+            String token;
+            if (i < a.length && removed[i]) {
+                op = REMOVED;
+                token = texts.get(a[i++]);
+            } else if (j < b.length && added[j]) {
+                op = ADDED;
+                token = texts.get(b[j++]);
+            } else {
+                op = EQUAL;
+                token = texts.get(a[i]);
+                i++;
+                j++;
+            }
+            // Соседние токены с одной операцией склеиваются в один фрагмент
+            if (op != runOp && !run.isEmpty()) {
+                spans.add(new DiffSpanDTO(runOp, run.toString()));
+                run.setLength(0);
+            }
+            runOp = op;
+            run.append(token);
+        }
+        if (!run.isEmpty()) {
+            spans.add(new DiffSpanDTO(runOp, run.toString()));
+        }
+        return spans;
+    }
+
+    // Токены: слово из букв и цифр, серия пробельных символов или отдельный знак; null — слишком много токенов
+    private static int[] tokens(String text, Map<String, Integer> ids, List<String> texts) {
+        int[] result = new int[16];
+        int count = 0;
+        int start = 0;
+        while (start < text.length()) {
+            int end = start + 1;
+            char c = text.charAt(start);
+            if (Character.isLetterOrDigit(c)) {
+                while (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) end++;
+            } else if (Character.isWhitespace(c)) {
+                while (end < text.length() && Character.isWhitespace(text.charAt(end))) end++;
+            }
+            if (count == MAX_WORD_TOKENS) {
+                return null;
+            }
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            result[count++] = intern(text.substring(start, end), ids, texts);
+            start = end;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // Срок сравнения; expired остаётся true, если хотя бы один участок был упрощён из-за срока
+    private static final class Deadline {
+        private final long nanos;
+        private boolean expired;
+
+        private Deadline(long nanos) {
+            this.nanos = nanos;
+        }
+
+        private boolean reached() {
+            if (!expired && System.nanoTime() > nanos) {
+                expired = true;
+            }
+            return expired;
+        }
+    }
+}
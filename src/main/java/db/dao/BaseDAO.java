@@ -1,18 +1,52 @@
 package db.dao;
 
+import db.entities.Versioned;
+import db.metrics.Metrics;
+import db.metrics.Timer;
+import db.outbox.OutboxEventType;
+import db.outbox.OutboxEvents;
 import db.util.RedisCacheUtil;
+import jakarta.persistence.OptimisticLockException;
+import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
 import org.hibernate.Transaction;
 
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public abstract class BaseDAO<T, D> {
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 20;
+
     protected SessionFactory sessionFactory;
+    private final Timer saveTimer;
+    private final Timer updateTimer;
+    private final Timer deleteTimer;
+    private final Timer findByIdTimer;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
 
     public BaseDAO(SessionFactory sessionFactory) {
         this.sessionFactory = sessionFactory;
+        this.saveTimer = timer("save");
+        this.updateTimer = timer("update");
+        this.deleteTimer = timer("delete");
+        this.findByIdTimer = timer("findById");
+    }
+
+    // Таймер метода DAO: dao.ИмяКласса.операция; кэшируется, чтобы не собирать имя на каждом вызове
+    protected Timer timer(String operation) {
+        Timer timer = timers.get(operation);
+        return timer != null ? timer : timers.computeIfAbsent(operation,
+                op -> Metrics.timer("dao." + getClass().getSimpleName() + "." + op));
     }
 
     protected abstract D entityToDTO(T entity);
@@ -40,7 +74,28 @@ public abstract class BaseDAO<T, D> {
         }
     }
 
+    protected <R> R inTransaction(Function<Session, R> work) {
+        Session session = getSession();
+        Transaction tx = session.beginTransaction();
+        R result;
+        try {
+            result = work.apply(session);
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            session.close();
+            throw e;
+        }
+        commitTransaction(tx, session);
+        return result;
+    }
+
     public T save(T entity) {
+        return saveTimer.time(() -> doSave(entity));
+    }
+
+    private T doSave(T entity) {
         Session session = getSession();
         Transaction tx = session.beginTransaction();
         try {
@@ -74,6 +129,7 @@ public abstract class BaseDAO<T, D> {
                 );
             }
 
+            recordChange(session, OutboxEventType.ENTITY_SAVED, managedEntity);
             commitTransaction(tx, session);
             cacheEntity(managedEntity);
             return managedEntity;
@@ -105,18 +161,88 @@ public abstract class BaseDAO<T, D> {
     }
 
     public T update(T entity) {
+        return updateTimer.time(() -> doUpdate(entity));
+    }
+
+    private T doUpdate(T entity) {
         Session session = getSession();
         Transaction tx = session.beginTransaction();
-        session.merge(entity);
-        commitTransaction(tx, session);
-        cacheEntity(entity);
-        return entity;
+        T managedEntity;
+        try {
+            managedEntity = session.merge(entity);
+            session.flush();
+            recordChange(session, OutboxEventType.ENTITY_UPDATED, managedEntity);
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            session.close();
+            throw translateConflict(entity, e);
+        }
+        try {
+            commitTransaction(tx, session);
+        } catch (RuntimeException e) {
+            throw translateConflict(entity, e);
+        }
+        cacheEntity(managedEntity);
+        return managedEntity;
+    }
+
+    // Перечитывает сущность из БД и повторяет изменение, если её успел обновить другой пользователь.
+    // Подходит только для идемпотентных изменений, не зависящих от прочитанного ранее состояния.
+    public T updateWithRetry(Class<T> clazz, Long id, Consumer<T> mutation) {
+        return timer("updateWithRetry").time(() -> doUpdateWithRetry(clazz, id, mutation));
+    }
+
+    private T doUpdateWithRetry(Class<T> clazz, Long id, Consumer<T> mutation) {
+        for (int attempt = 1; ; attempt++) {
+            T fresh;
+            try (Session session = getSession()) {
+                fresh = session.find(clazz, id);
+            }
+            if (fresh == null) {
+                return null;
+            }
+            mutation.accept(fresh);
+            try {
+                return update(fresh);
+            } catch (OptimisticConflictException e) {
+                if (attempt >= MAX_UPDATE_ATTEMPTS) {
+                    throw e;
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        long delay = RETRY_BACKOFF_MILLIS * attempt + ThreadLocalRandom.current().nextLong(RETRY_BACKOFF_MILLIS);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Повтор обновления прерван", e);
+        }
+    }
+
+    private RuntimeException translateConflict(T entity, RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+                return new OptimisticConflictException(Hibernate.getClass(entity).getSimpleName(), extractId(entity), e);
+            }
+        }
+        return e;
     }
 
     public void delete(T entity) {
+        deleteTimer.time(() -> doDelete(entity));
+    }
+
+    private void doDelete(T entity) {
         Session session = getSession();
         Transaction tx = session.beginTransaction();
         Long entityId = extractId(entity);
+        recordChange(session, OutboxEventType.ENTITY_DELETED, entity);
         session.remove(entity);
         commitTransaction(tx, session);
         if (entityId != null) {
@@ -125,6 +251,10 @@ public abstract class BaseDAO<T, D> {
     }
 
     public T findById(Class<T> clazz, Long id) {
+        return findByIdTimer.time(() -> doFindById(clazz, id));
+    }
+
+    private T doFindById(Class<T> clazz, Long id) {
         D cachedDTO = RedisCacheUtil.getValue(entityKey(clazz, id), getDTOClass());
         if (cachedDTO != null) {
             return dtoToEntity(cachedDTO);
@@ -138,6 +268,32 @@ public abstract class BaseDAO<T, D> {
         }
     }
 
+    // Дополнительные события outbox в транзакции изменения; при удалении вызывается до удаления строки
+    protected void recordRelatedChanges(Session session, OutboxEventType type, T entity) {
+    }
+
+    // Ключи, которые кроме ключа самой сущности должен сбросить получатель событий outbox
+    protected List<String> outboxCacheKeys(T entity) {
+        return List.of();
+    }
+
+    // Страница, поисковый документ которой зависит от сущности
+    protected Long outboxPageId(T entity) {
+        return null;
+    }
+
+    private void recordChange(Session session, OutboxEventType type, T entity) {
+        Long id = extractId(entity);
+        Class<?> entityClass = Hibernate.getClass(entity);
+        List<String> keys = new ArrayList<>();
+        if (id != null) {
+            keys.add(entityKey(entityClass, id));
+        }
+        keys.addAll(outboxCacheKeys(entity));
+        OutboxEvents.record(session, entityClass.getSimpleName(), id, type, outboxPageId(entity), keys);
+        recordRelatedChanges(session, type, entity);
+    }
+
     protected void evictEntity(Class<?> clazz, Long id) {
         RedisCacheUtil.evict(entityKey(clazz, id));
     }
@@ -145,15 +301,29 @@ public abstract class BaseDAO<T, D> {
     protected void cacheEntity(T entity) {
         Long id = extractId(entity);
         if (id != null) {
-            D dto = entityToDTO(entity);
-            RedisCacheUtil.cacheValue(entityKey(getDTOClass(), id), dto);
+            cacheUnder(entityKey(Hibernate.getClass(entity), id), entity);
+        }
+    }
+
+    // Версионированные сущности не перезаписывают в кэше состояние, записанное более поздней транзакцией
+    protected void cacheUnder(String key, T entity) {
+        D dto = entityToDTO(entity);
+        if (entity instanceof Versioned versioned && versioned.getVersion() != null) {
+            RedisCacheUtil.cacheValueIfNewer(key, dto, versioned.getVersion());
+        } else {
+            RedisCacheUtil.cacheValue(key, dto);
         }
     }
 
-    private String entityKey(Class<?> clazz, Long id) {
+    static String entityKey(Class<?> clazz, Long id) {
         return clazz.getSimpleName().toLowerCase() + ":id:" + id;
     }
 
+    // Вызов extractId для db.dao.ExtractIdBenchmark из модуля benchmarks; сам метод остаётся закрытым
+    Long extractIdHook(T entity) {
+        return extractId(entity);
+    }
+
     private Long extractId(T entity) {
         if (entity == null) {
             return null;
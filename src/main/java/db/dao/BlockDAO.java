@@ -4,10 +4,20 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import db.dto.BlockDTO;
 import db.entities.Block;
 import db.entities.Page;
+import db.outbox.OutboxEventType;
+import db.outbox.OutboxEvents;
 import db.util.RedisCacheUtil;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.ReturningWork;
 
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -29,7 +39,8 @@ public class BlockDAO extends BaseDAO<Block, BlockDTO> {
                 entity.getType(),
                 entity.getContent(),
                 entity.getPosition(),
-                entity.isVisible()
+                entity.isVisible(),
+                entity.getVersion()
         );
     }
 
@@ -42,6 +53,7 @@ public class BlockDAO extends BaseDAO<Block, BlockDTO> {
         block.setContent(dto.getContent());
         block.setPosition(dto.getPosition());
         block.setVisible(dto.isVisible());
+        block.setVersion(dto.getVersion());
 
         if (dto.getPageId() != null) {
             try (Session session = getSession()) {
@@ -81,12 +93,28 @@ public class BlockDAO extends BaseDAO<Block, BlockDTO> {
     }
 
     public List<Block> getAllBlocks() {
+        return timer("getAllBlocks").time(() -> doGetAllBlocks());
+    }
+
+    private List<Block> doGetAllBlocks() {
         try (Session session = getSession()) {
             return session.createQuery("FROM Block", Block.class).list();
         }
     }
 
+    @Override
+    protected List<String> outboxCacheKeys(Block block) {
+        if (block.getPage() != null && block.getPage().getId() != null) {
+            return List.of(blocksKey(block.getPage().getId()));
+        }
+        return List.of();
+    }
+
     public List<Block> getBlocksByPageId(Long pageId) {
+        return timer("getBlocksByPageId").time(() -> doGetBlocksByPageId(pageId));
+    }
+
+    private List<Block> doGetBlocksByPageId(Long pageId) {
         String key = blocksKey(pageId);
         List<BlockDTO> cachedDTOs = RedisCacheUtil.getValue(key, BLOCK_LIST_TYPE);
         if (cachedDTOs != null) {
@@ -94,7 +122,7 @@ public class BlockDAO extends BaseDAO<Block, BlockDTO> {
         }
         try (Session session = getSession()) {
             List<Block> blocks = session.createQuery(
-                            "FROM Block b WHERE b.page.id = :pageId", Block.class)
+                            "FROM Block b WHERE b.page.id = :pageId ORDER BY b.position, b.id", Block.class)
                     .setParameter("pageId", pageId)
                     .list();
             List<BlockDTO> DTOs = blocks.stream().map(this::entityToDTO).collect(Collectors.toList());
@@ -103,13 +131,205 @@ public class BlockDAO extends BaseDAO<Block, BlockDTO> {
         }
     }
 
+    // Прямые правки блока сохраняют в origin исходный блок из текста версии: по нему PageStructureWriter
+    // узнаёт блок и не перезаписывает правку, пока исходный блок в тексте новой версии не изменится
+    private static final String KEEP_ORIGIN =
+            "origin = COALESCE(origin, jsonb_build_object('type', type, 'content', content)), ";
+
+    // Меняет одно поле JSONB-содержимого на стороне БД; path — ключи через точку, например "items.2"
+    public boolean patchContent(Long blockId, String path, String jsonValue) {
+        return timer("patchContent").time(() -> doPatchContent(blockId, path, jsonValue));
+    }
+
+    private boolean doPatchContent(Long blockId, String path, String jsonValue) {
+        return updateContent(blockId,
+                "UPDATE blocks SET content = jsonb_set(COALESCE(content, '{}'::jsonb), ?, CAST(? AS jsonb), true), " +
+                        KEEP_ORIGIN + "version = version + 1 WHERE id = ? RETURNING page_id",
+                path, jsonValue != null ? jsonValue : "null", true);
+    }
+
+    public boolean removeContentField(Long blockId, String path) {
+        return timer("removeContentField").time(() -> doRemoveContentField(blockId, path));
+    }
+
+    private boolean doRemoveContentField(Long blockId, String path) {
+        return updateContent(blockId,
+                "UPDATE blocks SET content = content #- ?, " + KEEP_ORIGIN + "version = version + 1 WHERE id = ? RETURNING page_id",
+                path, null, false);
+    }
+
+    // Набор параметров задаёт withValue, а не значение: null в patchContent означает JSON null
+    private boolean updateContent(Long blockId, String sql, String path, String jsonValue, boolean withValue) {
+        Long pageId = changeBlock(blockId, List.of(), connection -> {
+            try (PreparedStatement update = connection.prepareStatement(sql)) {
+                int index = 1;
+                update.setArray(index++, jsonPath(connection, path));
+                if (withValue) {
+                    update.setString(index++, jsonValue);
+                }
+                update.setLong(index, blockId);
+                try (ResultSet rs = update.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : null;
+                }
+            }
+        });
+        if (pageId == null) {
+            return false;
+        }
+        evictBlock(blockId, pageId, List.of());
+        return true;
+    }
+
+    // Ставит блок после afterBlockId (null — в начало страницы). Обычно меняется только позиция
+    // самого блока; страница перенумеровывается, лишь когда между соседями не осталось места.
+    public boolean moveBlock(Long blockId, Long afterBlockId) {
+        return timer("moveBlock").time(() -> doMoveBlock(blockId, afterBlockId));
+    }
+
+    private boolean doMoveBlock(Long blockId, Long afterBlockId) {
+        if (blockId.equals(afterBlockId)) {
+            throw new RuntimeException("Блок нельзя поставить после самого себя");
+        }
+        List<Long> respacedIds = new ArrayList<>();
+        Long pageId = changeBlock(blockId, respacedIds, connection -> {
+            Long blockPageId = selectLong(connection, "SELECT page_id FROM blocks WHERE id = ?", blockId);
+            if (blockPageId == null) {
+                return null;
+            }
+            Integer position = positionAfter(connection, blockPageId, blockId, afterBlockId);
+            if (position == null) {
+                respacedIds.addAll(respacePositions(connection, blockPageId));
+                position = positionAfter(connection, blockPageId, blockId, afterBlockId);
+            }
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE blocks SET position = ?, " + KEEP_ORIGIN + "version = version + 1 WHERE id = ?")) {
+                update.setInt(1, position);
+                update.setLong(2, blockId);
+                update.executeUpdate();
+            }
+            return blockPageId;
+        });
+        if (pageId == null) {
+            return false;
+        }
+        evictBlock(blockId, pageId, respacedIds);
+        return true;
+    }
+
+    private Integer positionAfter(Connection connection, Long pageId, Long blockId, Long afterBlockId) throws SQLException {
+        Integer lower = null;
+        if (afterBlockId != null) {
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT position FROM blocks WHERE id = ? AND page_id = ?")) {
+                select.setLong(1, afterBlockId);
+                select.setLong(2, pageId);
+                try (ResultSet rs = select.executeQuery()) {
+                    lower = rs.next() ? rs.getInt(1) : null;
+                }
+            }
+            if (lower == null) {
+                throw new RuntimeException("Блок " + afterBlockId + " не найден на странице " + pageId);
+            }
+        }
+        Integer upper;
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT position FROM blocks WHERE page_id = ? AND id <> ? AND (? IS NULL OR position > ?) " +
+                        "ORDER BY position, id LIMIT 1")) {
+            select.setLong(1, pageId);
+            select.setLong(2, blockId);
+            select.setObject(3, lower, Types.INTEGER);
+            select.setObject(4, lower, Types.INTEGER);
+            try (ResultSet rs = select.executeQuery()) {
+                upper = rs.next() ? rs.getInt(1) : null;
+            }
+        }
+
+        if (lower == null && upper == null) {
+            return 0;
+        }
+        if (upper == null) {
+            return lower + PageStructureWriter.POSITION_STEP;
+        }
+        if (lower == null) {
+            return upper - PageStructureWriter.POSITION_STEP;
+        }
+        if (upper - lower < 2) {
+            return null;
+        }
+        return lower + (upper - lower) / 2;
+    }
+
+    // Возвращает id перенумерованных блоков: у каждого изменились позиция и версия
+    private List<Long> respacePositions(Connection connection, Long pageId) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE blocks b SET position = r.rn * ?, version = b.version + 1 " +
+                        "FROM (SELECT id, ROW_NUMBER() OVER (ORDER BY position, id) AS rn FROM blocks WHERE page_id = ?) r " +
+                        "WHERE b.id = r.id RETURNING b.id")) {
+            update.setInt(1, PageStructureWriter.POSITION_STEP);
+            update.setLong(2, pageId);
+            try (ResultSet rs = update.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private Long selectLong(Connection connection, String sql, Long id) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(sql)) {
+            select.setLong(1, id);
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    private Array jsonPath(Connection connection, String path) throws SQLException {
+        if (path == null || path.isBlank()) {
+            throw new RuntimeException("Путь в содержимом блока не задан");
+        }
+        return connection.createArrayOf("text", path.split("\\."));
+    }
+
+    // work возвращает id страницы изменённого блока или null, если блок не найден;
+    // событие outbox записывается в той же транзакции
+    // otherBlockIds заполняет work: блоки, которые изменились вместе с blockId
+    private Long changeBlock(Long blockId, List<Long> otherBlockIds, ReturningWork<Long> work) {
+        return inTransaction(session -> {
+            Long pageId = session.doReturningWork(work);
+            if (pageId != null) {
+                OutboxEvents.record(session, Block.class.getSimpleName(), blockId, OutboxEventType.ENTITY_UPDATED,
+                        null, blockKeys(blockId, pageId, otherBlockIds));
+            }
+            return pageId;
+        });
+    }
+
+    private void evictBlock(Long blockId, Long pageId, List<Long> otherBlockIds) {
+        RedisCacheUtil.evictAll(blockKeys(blockId, pageId, otherBlockIds));
+    }
+
+    private static List<String> blockKeys(Long blockId, Long pageId, List<Long> otherBlockIds) {
+        List<String> keys = new ArrayList<>(otherBlockIds.size() + 2);
+        keys.add(blocksKey(pageId));
+        keys.add(entityKey(Block.class, blockId));
+        for (Long id : otherBlockIds) {
+            if (!id.equals(blockId)) {
+                keys.add(entityKey(Block.class, id));
+            }
+        }
+        return keys;
+    }
+
     private void evictBlocksByPage(Block block) {
         if (block != null && block.getPage() != null && block.getPage().getId() != null) {
             RedisCacheUtil.evict(blocksKey(block.getPage().getId()));
         }
     }
 
-    private String blocksKey(Long pageId) {
+    static String blocksKey(Long pageId) {
         return String.format(BLOCKS_BY_PAGE_KEY_TEMPLATE, pageId);
     }
 }
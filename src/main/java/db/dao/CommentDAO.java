@@ -33,7 +33,8 @@ public class CommentDAO extends BaseDAO<Comment, CommentDTO> {
                 entity.getText(),
                 entity.getCreatedAt(),
                 entity.getUpdatedAt(),
-                entity.isResolved()
+                entity.isResolved(),
+                entity.getVersion()
         );
     }
 
@@ -46,6 +47,7 @@ public class CommentDAO extends BaseDAO<Comment, CommentDTO> {
         comment.setCreatedAt(dto.getCreatedAt());
         comment.setUpdatedAt(dto.getUpdatedAt());
         comment.setResolved(dto.isResolved());
+        comment.setVersion(dto.getVersion());
 
         try (Session session = getSession()) {
             if (dto.getPageVersionId() != null) {
@@ -88,7 +90,19 @@ public class CommentDAO extends BaseDAO<Comment, CommentDTO> {
         }
     }
 
+    @Override
+    protected List<String> outboxCacheKeys(Comment comment) {
+        if (comment.getPageVersion() != null && comment.getPageVersion().getId() != null) {
+            return List.of(versionKey(comment.getPageVersion().getId()));
+        }
+        return List.of();
+    }
+
     public List<Comment> getCommentsByPageVersionId(Long pageVersionId) {
+        return timer("getCommentsByPageVersionId").time(() -> doGetCommentsByPageVersionId(pageVersionId));
+    }
+
+    private List<Comment> doGetCommentsByPageVersionId(Long pageVersionId) {
         String key = versionKey(pageVersionId);
         List<CommentDTO> cachedDTOs = RedisCacheUtil.getValue(key, COMMENT_LIST_TYPE);
         if (cachedDTOs != null) {
@@ -107,6 +121,10 @@ public class CommentDAO extends BaseDAO<Comment, CommentDTO> {
     }
 
     public List<Comment> getCommentsByPageId(Long pageId) {
+        return timer("getCommentsByPageId").time(() -> doGetCommentsByPageId(pageId));
+    }
+
+    private List<Comment> doGetCommentsByPageId(Long pageId) {
         try (Session session = getSession()) {
             return session.createQuery(
                             "FROM Comment c WHERE c.pageVersion.page.id = :pageId ORDER BY c.createdAt",
@@ -122,7 +140,7 @@ public class CommentDAO extends BaseDAO<Comment, CommentDTO> {
         }
     }
 
-    private String versionKey(Long pageVersionId) {
+    static String versionKey(Long pageVersionId) {
         return String.format(COMMENTS_BY_VERSION_KEY_TEMPLATE, pageVersionId);
     }
 }
@@ -1,6 +1,7 @@
 package db.dao;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import db.content.LinkTargets;
 import db.dto.LinkDTO;
 import db.entities.Link;
 import db.entities.Page;
@@ -8,12 +9,18 @@ import db.util.RedisCacheUtil;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class LinkDAO extends BaseDAO<Link, LinkDTO> {
     private static final String LINKS_BY_PAGE_KEY_TEMPLATE = "page:%d:links";
+    private static final String BACKLINKS_KEY_TEMPLATE = "page:%d:backlinks";
+    static final String ORPHAN_PAGES_KEY = "link:orphans";
+    static final String BROKEN_LINKS_KEY = "link:broken";
     private static final TypeReference<List<LinkDTO>> LINK_LIST_TYPE = new TypeReference<>() {};
+    private static final TypeReference<List<Long>> ID_LIST_TYPE = new TypeReference<>() {};
 
     public LinkDAO(SessionFactory sessionFactory) {
         super(sessionFactory);
@@ -28,7 +35,10 @@ public class LinkDAO extends BaseDAO<Link, LinkDTO> {
                 pageId,
                 entity.getUrl(),
                 entity.getTitle(),
-                entity.getDescription()
+                entity.getDescription(),
+                entity.isInternal(),
+                entity.getTargetSlug(),
+                entity.getTargetPageId()
         );
     }
 
@@ -40,6 +50,9 @@ public class LinkDAO extends BaseDAO<Link, LinkDTO> {
         link.setUrl(dto.getUrl());
         link.setTitle(dto.getTitle());
         link.setDescription(dto.getDescription());
+        link.setInternal(dto.isInternal());
+        link.setTargetSlug(dto.getTargetSlug());
+        link.setTargetPageId(dto.getTargetPageId());
 
         if (dto.getPageId() != null) {
             try (Session session = getSession()) {
@@ -57,28 +70,168 @@ public class LinkDAO extends BaseDAO<Link, LinkDTO> {
 
     @Override
     public Link save(Link link) {
+        resolveTarget(link);
         Link saved = super.save(link);
         evictLinksByPage(saved);
+        evictGraph(List.of(), saved.getTargetPageId());
         return saved;
     }
 
     @Override
     public Link update(Link link) {
+        Long previousTarget = findTargetPageId(link.getId());
+        resolveTarget(link);
         Link updated = super.update(link);
         evictLinksByPage(updated);
+        evictGraph(List.of(), previousTarget, updated.getTargetPageId());
         return updated;
     }
 
     @Override
     public void delete(Link link) {
         Long pageId = link.getPage() != null ? link.getPage().getId() : null;
+        Long previousTarget = findTargetPageId(link.getId());
         super.delete(link);
         if (pageId != null) {
             RedisCacheUtil.evict(linksKey(pageId));
         }
+        evictGraph(List.of(), previousTarget);
+    }
+
+    @Override
+    protected List<String> outboxCacheKeys(Link link) {
+        List<String> keys = new ArrayList<>(graphKeys(List.of(), link.getTargetPageId()));
+        if (link.getPage() != null && link.getPage().getId() != null) {
+            keys.add(linksKey(link.getPage().getId()));
+        }
+        return keys;
+    }
+
+    private void resolveTarget(Link link) {
+        String slug = LinkTargets.internalSlug(link.getUrl());
+        link.setInternal(slug != null);
+        link.setTargetSlug(slug);
+        if (slug == null) {
+            link.setTargetPageId(null);
+            return;
+        }
+        try (Session session = getSession()) {
+            link.setTargetPageId(session.createQuery("SELECT p.id FROM Page p WHERE p.slug = :slug", Long.class)
+                    .setParameter("slug", slug)
+                    .uniqueResult());
+        }
+    }
+
+    private Long findTargetPageId(Long linkId) {
+        if (linkId == null) {
+            return null;
+        }
+        try (Session session = getSession()) {
+            return session.createQuery("SELECT l.targetPageId FROM Link l WHERE l.id = :id", Long.class)
+                    .setParameter("id", linkId)
+                    .uniqueResult();
+        }
+    }
+
+    public List<Link> getBacklinks(Long pageId) {
+        return timer("getBacklinks").time(() -> doGetBacklinks(pageId));
+    }
+
+    private List<Link> doGetBacklinks(Long pageId) {
+        String key = backlinksKey(pageId);
+        List<LinkDTO> cachedDTOs = RedisCacheUtil.getValue(key, LINK_LIST_TYPE);
+        if (cachedDTOs != null) {
+            return cachedDTOs.stream().map(this::dtoToEntity).collect(Collectors.toList());
+        }
+        try (Session session = getSession()) {
+            List<Link> links = session.createQuery(
+                            "FROM Link l WHERE l.targetPageId = :pageId",
+                            Link.class)
+                    .setParameter("pageId", pageId)
+                    .list();
+            List<LinkDTO> DTOs = links.stream().map(this::entityToDTO).collect(Collectors.toList());
+            RedisCacheUtil.cacheValue(key, DTOs);
+            return links;
+        }
+    }
+
+    // Страницы, на которые не ссылается ни одна другая; анти-join по индексу target_page_id.
+    // Постранично по id после afterPageId; страницы выборки — поля одного хэша, сбрасываются вместе
+    public List<Long> findOrphanPageIds(Long afterPageId, int limit) {
+        return timer("findOrphanPageIds").time(() -> doFindOrphanPageIds(afterPageId, limit));
+    }
+
+    private List<Long> doFindOrphanPageIds(Long afterPageId, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        long after = afterPageId != null ? afterPageId : 0L;
+        String field = after + ":" + limit;
+        List<Long> cached = RedisCacheUtil.getField(ORPHAN_PAGES_KEY, field, ID_LIST_TYPE);
+        if (cached != null) {
+            return cached;
+        }
+        try (Session session = getSession()) {
+            List<Long> ids = session.createQuery(
+                            "SELECT p.id FROM Page p WHERE p.id > :afterPageId AND NOT EXISTS " +
+                                    "(SELECT 1 FROM Link l WHERE l.targetPageId = p.id AND l.page.id <> p.id) " +
+                                    "ORDER BY p.id",
+                            Long.class)
+                    .setParameter("afterPageId", after)
+                    .setMaxResults(limit)
+                    .list();
+            RedisCacheUtil.cacheField(ORPHAN_PAGES_KEY, field, ids);
+            return ids;
+        }
+    }
+
+    public List<Link> findBrokenLinks() {
+        return timer("findBrokenLinks").time(() -> doFindBrokenLinks());
+    }
+
+    private List<Link> doFindBrokenLinks() {
+        List<LinkDTO> cachedDTOs = RedisCacheUtil.getValue(BROKEN_LINKS_KEY, LINK_LIST_TYPE);
+        if (cachedDTOs != null) {
+            return cachedDTOs.stream().map(this::dtoToEntity).collect(Collectors.toList());
+        }
+        try (Session session = getSession()) {
+            List<Link> links = session.createQuery(
+                            "FROM Link l WHERE l.internal = true AND l.targetPageId IS NULL",
+                            Link.class)
+                    .list();
+            List<LinkDTO> DTOs = links.stream().map(this::entityToDTO).collect(Collectors.toList());
+            RedisCacheUtil.cacheValue(BROKEN_LINKS_KEY, DTOs);
+            return links;
+        }
+    }
+
+    // Сбрасывает общие выборки графа и обратные ссылки затронутых страниц
+    static void evictGraph(Collection<Long> targetPageIds, Long... moreTargetPageIds) {
+        RedisCacheUtil.evictAll(graphKeys(targetPageIds, moreTargetPageIds));
+    }
+
+    static List<String> graphKeys(Collection<Long> targetPageIds, Long... moreTargetPageIds) {
+        List<String> keys = new ArrayList<>();
+        keys.add(ORPHAN_PAGES_KEY);
+        keys.add(BROKEN_LINKS_KEY);
+        for (Long id : targetPageIds) {
+            if (id != null) {
+                keys.add(backlinksKey(id));
+            }
+        }
+        for (Long id : moreTargetPageIds) {
+            if (id != null) {
+                keys.add(backlinksKey(id));
+            }
+        }
+        return keys;
     }
 
     public List<Link> getLinksByPageId(Long pageId) {
+        return timer("getLinksByPageId").time(() -> doGetLinksByPageId(pageId));
+    }
+
+    private List<Link> doGetLinksByPageId(Long pageId) {
         String key = linksKey(pageId);
         List<LinkDTO> cachedDTOs = RedisCacheUtil.getValue(key, LINK_LIST_TYPE);
         if (cachedDTOs != null) {
@@ -102,7 +255,11 @@ public class LinkDAO extends BaseDAO<Link, LinkDTO> {
         }
     }
 
-    private String linksKey(Long pageId) {
+    static String linksKey(Long pageId) {
         return String.format(LINKS_BY_PAGE_KEY_TEMPLATE, pageId);
     }
+
+    static String backlinksKey(Long pageId) {
+        return String.format(BACKLINKS_KEY_TEMPLATE, pageId);
+    }
 }
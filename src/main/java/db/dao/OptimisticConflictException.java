@@ -0,0 +1,15 @@
+package db.dao;
+
+import lombok.Getter;
+
+@Getter
+public class OptimisticConflictException extends RuntimeException {
+    private final String entityName;
+    private final Long entityId;
+
+    public OptimisticConflictException(String entityName, Long entityId, Throwable cause) {
+        super("Сущность " + entityName + " с ID " + entityId + " была изменена другим пользователем", cause);
+        this.entityName = entityName;
+        this.entityId = entityId;
+    }
+}
@@ -3,13 +3,22 @@ package db.dao;
 import com.fasterxml.jackson.core.type.TypeReference;
 import db.dto.HeadingDTO;
 import db.dto.PageDTO;
+import db.entities.Block;
+import db.entities.Comment;
 import db.entities.Heading;
+import db.entities.Link;
 import db.entities.Page;
+import db.outbox.OutboxEventType;
+import db.outbox.OutboxEvents;
 import db.util.RedisCacheUtil;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 public class PageDAO extends BaseDAO<Page, PageDTO> {
@@ -33,7 +42,8 @@ public class PageDAO extends BaseDAO<Page, PageDTO> {
                 entity.getTitle(),
                 entity.getSlug(),
                 entity.getCreatedAt(),
-                entity.getUpdatedAt()
+                entity.getUpdatedAt(),
+                entity.getVersion()
         );
     }
 
@@ -46,6 +56,7 @@ public class PageDAO extends BaseDAO<Page, PageDTO> {
         page.setSlug(dto.getSlug());
         page.setCreatedAt(dto.getCreatedAt());
         page.setUpdatedAt(dto.getUpdatedAt());
+        page.setVersion(dto.getVersion());
         return page;
     }
 
@@ -54,7 +65,29 @@ public class PageDAO extends BaseDAO<Page, PageDTO> {
         return PageDTO.class;
     }
 
+    @Override
+    protected List<String> outboxCacheKeys(Page page) {
+        List<String> keys = new ArrayList<>();
+        keys.add(ALL_PAGES_KEY);
+        if (page.getSlug() != null) {
+            keys.add(slugKey(page.getSlug()));
+        }
+        if (page.getId() != null) {
+            keys.add(headingsKey(page.getId()));
+        }
+        return keys;
+    }
+
+    @Override
+    protected Long outboxPageId(Page page) {
+        return page.getId();
+    }
+
     public List<Page> findAll() {
+        return timer("findAll").time(() -> doFindAll());
+    }
+
+    private List<Page> doFindAll() {
         List<PageDTO> cachedDTOs = RedisCacheUtil.getValue(ALL_PAGES_KEY, PAGE_LIST_TYPE);
         if (cachedDTOs != null) {
             return cachedDTOs.stream().map(this::dtoToEntity).collect(Collectors.toList());
@@ -67,18 +100,41 @@ public class PageDAO extends BaseDAO<Page, PageDTO> {
         }
     }
 
+    // Одним запросом, в порядке ids; отсутствующие страницы пропускаются
+    public List<Page> findByIds(List<Long> ids) {
+        return timer("findByIds").time(() -> doFindByIds(ids));
+    }
+
+    private List<Page> doFindByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        try (Session session = getSession()) {
+            Map<Long, Page> pages = session.createQuery("FROM Page p WHERE p.id IN (:ids)", Page.class)
+                    .setParameterList("ids", ids)
+                    .list()
+                    .stream()
+                    .collect(Collectors.toMap(Page::getId, page -> page));
+            return ids.stream().map(pages::get).filter(Objects::nonNull).collect(Collectors.toList());
+        }
+    }
+
     public Page findBySlug(String slug) {
+        return timer("findBySlug").time(() -> doFindBySlug(slug));
+    }
+
+    private Page doFindBySlug(String slug) {
         String key = slugKey(slug);
         PageDTO cachedDTO = RedisCacheUtil.getValue(key, PageDTO.class);
         if (cachedDTO != null) {
             return dtoToEntity(cachedDTO);
         }
         try (Session session = getSession()) {
-            Page page = session.createQuery("FROM Page p WHERE p.slug = :slug", Page.class)
+            Page page = session.createNamedQuery("Page.findBySlug", Page.class)
                     .setParameter("slug", slug)
                     .uniqueResult();
             if (page != null) {
-                RedisCacheUtil.cacheValue(key, entityToDTO(page));
+                cacheUnder(key, page);
                 cacheEntity(page);
             }
             return page;
@@ -97,7 +153,8 @@ public class PageDAO extends BaseDAO<Page, PageDTO> {
 
         Page saved = super.save(page);
         RedisCacheUtil.evict(ALL_PAGES_KEY);
-        RedisCacheUtil.cacheValue(slugKey(saved.getSlug()), entityToDTO(saved));
+        cacheUnder(slugKey(saved.getSlug()), saved);
+        relinkSlug(saved.getId(), saved.getSlug());
         return saved;
     }
 
@@ -107,38 +164,184 @@ public class PageDAO extends BaseDAO<Page, PageDTO> {
         String previousSlug = persisted != null ? persisted.getSlug() : null;
         Page updated = super.update(page);
         RedisCacheUtil.evict(ALL_PAGES_KEY);
-        if (previousSlug != null) {
+        if (previousSlug != null && !previousSlug.equals(updated.getSlug())) {
             RedisCacheUtil.evict(slugKey(previousSlug));
+            relinkSlug(updated.getId(), updated.getSlug());
         }
-        RedisCacheUtil.cacheValue(slugKey(updated.getSlug()), entityToDTO(updated));
+        cacheUnder(slugKey(updated.getSlug()), updated);
         RedisCacheUtil.evict(headingsKey(updated.getId()));
         return updated;
     }
 
     @Override
     public void delete(Page page) {
-        String slug = page.getSlug();
-        Long pageId = page.getId();
-        super.delete(page);
-        RedisCacheUtil.evict(ALL_PAGES_KEY);
-        if (slug != null) {
-            RedisCacheUtil.evict(slugKey(slug));
+        deleteById(page.getId());
+    }
+
+    // Удаляет страницу и всё, что ей принадлежит, пакетными запросами без загрузки графа объектов.
+    // Порядок удаления соответствует внешним ключам: комментарии, версии, структура, теги, страница.
+    public void deleteById(Long pageId) {
+        timer("deleteById").time(() -> doDeleteById(pageId));
+    }
+
+    private void doDeleteById(Long pageId) {
+        Session session = getSession();
+        Transaction tx = session.beginTransaction();
+        List<String> purgeKeys = new ArrayList<>();
+        try {
+            String slug = session.createQuery("SELECT p.slug FROM Page p WHERE p.id = :pageId", String.class)
+                    .setParameter("pageId", pageId)
+                    .uniqueResult();
+            if (slug == null) {
+                tx.rollback();
+                session.close();
+                return;
+            }
+
+            List<Long> versionIds = selectIds(session,
+                    "SELECT v.id FROM PageVersion v WHERE v.page.id = :pageId", pageId);
+            List<Long> commentIds = selectIds(session,
+                    "SELECT c.id FROM Comment c WHERE c.pageVersion.page.id = :pageId", pageId);
+            List<Long> blockIds = selectIds(session,
+                    "SELECT b.id FROM Block b WHERE b.page.id = :pageId", pageId);
+            List<Long> linkIds = selectIds(session,
+                    "SELECT l.id FROM Link l WHERE l.page.id = :pageId", pageId);
+            List<String> tagNames = session.createQuery(
+                            "SELECT t.name FROM Page p JOIN p.tags t WHERE p.id = :pageId", String.class)
+                    .setParameter("pageId", pageId)
+                    .list();
+            List<Long> linkingPageIds = selectIds(session,
+                    "SELECT DISTINCT l.page.id FROM Link l WHERE l.targetPageId = :pageId", pageId);
+            List<Long> linkedPageIds = selectIds(session,
+                    "SELECT DISTINCT l.targetPageId FROM Link l WHERE l.page.id = :pageId AND l.targetPageId IS NOT NULL",
+                    pageId);
+
+            // Ссылки других страниц на удаляемую становятся битыми
+            session.createMutationQuery("UPDATE Link l SET l.targetPageId = NULL WHERE l.targetPageId = :pageId")
+                    .setParameter("pageId", pageId)
+                    .executeUpdate();
+
+            executeDelete(session,
+                    "DELETE FROM Comment c WHERE c.pageVersion.id IN " +
+                            "(SELECT v.id FROM PageVersion v WHERE v.page.id = :pageId)", pageId);
+            executeDelete(session, "DELETE FROM PageVersion v WHERE v.page.id = :pageId", pageId);
+            executeDelete(session, "DELETE FROM Heading h WHERE h.page.id = :pageId", pageId);
+            executeDelete(session, "DELETE FROM Block b WHERE b.page.id = :pageId", pageId);
+            executeDelete(session, "DELETE FROM Link l WHERE l.page.id = :pageId", pageId);
+            session.createNativeMutationQuery(
+                            "UPDATE tag_stats SET page_count = page_count - 1 " +
+                                    "WHERE tag_id IN (SELECT tag_id FROM page_tags WHERE page_id = :pageId)")
+                    .setParameter("pageId", pageId)
+                    .executeUpdate();
+            session.createNativeMutationQuery("DELETE FROM page_tags WHERE page_id = :pageId")
+                    .setParameter("pageId", pageId)
+                    .executeUpdate();
+            executeDelete(session, "DELETE FROM Page p WHERE p.id = :pageId", pageId);
+
+            purgeKeys.add(ALL_PAGES_KEY);
+            purgeKeys.add(entityKey(Page.class, pageId));
+            purgeKeys.add(slugKey(slug));
+            purgeKeys.add(headingsKey(pageId));
+            purgeKeys.add(BlockDAO.blocksKey(pageId));
+            purgeKeys.add(LinkDAO.linksKey(pageId));
+            purgeKeys.add(TagDAO.tagsByPageKey(pageId));
+            purgeKeys.add(PageVersionDAO.latestVersionKey(pageId));
+            purgeKeys.add(PageVersionDAO.pageVersionsKey(pageId));
+            purgeKeys.add(PageVersionDAO.versionDiffsKey(pageId));
+            for (Long versionId : versionIds) {
+                purgeKeys.add(PageVersionDAO.versionByIdKey(versionId));
+                purgeKeys.add(CommentDAO.versionKey(versionId));
+            }
+            commentIds.forEach(id -> purgeKeys.add(entityKey(Comment.class, id)));
+            blockIds.forEach(id -> purgeKeys.add(entityKey(Block.class, id)));
+            linkIds.forEach(id -> purgeKeys.add(entityKey(Link.class, id)));
+            tagNames.forEach(name -> purgeKeys.add(TagDAO.pagesByTagKey(name)));
+            if (!tagNames.isEmpty()) {
+                purgeKeys.add(TagDAO.TAG_CLOUD_KEY);
+            }
+            linkingPageIds.forEach(id -> purgeKeys.add(LinkDAO.linksKey(id)));
+            linkedPageIds.forEach(id -> purgeKeys.add(LinkDAO.backlinksKey(id)));
+            purgeKeys.add(LinkDAO.backlinksKey(pageId));
+            purgeKeys.add(LinkDAO.ORPHAN_PAGES_KEY);
+            purgeKeys.add(LinkDAO.BROKEN_LINKS_KEY);
+            OutboxEvents.record(session, Page.class.getSimpleName(), pageId, OutboxEventType.PAGE_DELETED,
+                    pageId, purgeKeys);
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            session.close();
+            throw e;
         }
-        if (pageId != null) {
-            RedisCacheUtil.evict(headingsKey(pageId));
+        commitTransaction(tx, session);
+        RedisCacheUtil.evictAll(purgeKeys);
+    }
+
+    // Внутренние ссылки указывают на slug: после создания страницы или смены её slug
+    // ссылки на новый slug разрешаются в эту страницу, а ссылки на прежний становятся битыми
+    private void relinkSlug(Long pageId, String slug) {
+        Session session = getSession();
+        Transaction tx = session.beginTransaction();
+        List<Long> sourcePageIds;
+        try {
+            sourcePageIds = session.createQuery(
+                            "SELECT DISTINCT l.page.id FROM Link l WHERE " +
+                                    "(l.targetPageId = :pageId AND l.targetSlug <> :slug) OR " +
+                                    "(l.internal = true AND l.targetPageId IS NULL AND l.targetSlug = :slug)",
+                            Long.class)
+                    .setParameter("pageId", pageId)
+                    .setParameter("slug", slug)
+                    .list();
+            session.createMutationQuery(
+                            "UPDATE Link l SET l.targetPageId = NULL WHERE l.targetPageId = :pageId AND l.targetSlug <> :slug")
+                    .setParameter("pageId", pageId)
+                    .setParameter("slug", slug)
+                    .executeUpdate();
+            session.createMutationQuery(
+                            "UPDATE Link l SET l.targetPageId = :pageId " +
+                                    "WHERE l.internal = true AND l.targetPageId IS NULL AND l.targetSlug = :slug")
+                    .setParameter("pageId", pageId)
+                    .setParameter("slug", slug)
+                    .executeUpdate();
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            session.close();
+            throw e;
+        }
+        commitTransaction(tx, session);
+
+        if (!sourcePageIds.isEmpty()) {
+            RedisCacheUtil.evictAll(sourcePageIds.stream().map(LinkDAO::linksKey).toList());
         }
+        LinkDAO.evictGraph(List.of(pageId));
+    }
+
+    private List<Long> selectIds(Session session, String hql, Long pageId) {
+        return session.createQuery(hql, Long.class)
+                .setParameter("pageId", pageId)
+                .list();
+    }
+
+    private void executeDelete(Session session, String hql, Long pageId) {
+        session.createMutationQuery(hql)
+                .setParameter("pageId", pageId)
+                .executeUpdate();
     }
 
     public List<Heading> getHeadingsByPageId(Long pageId) {
+        return timer("getHeadingsByPageId").time(() -> doGetHeadingsByPageId(pageId));
+    }
+
+    private List<Heading> doGetHeadingsByPageId(Long pageId) {
         String key = headingsKey(pageId);
         List<HeadingDTO> cachedDTOs = RedisCacheUtil.getValue(key, HEADING_LIST_TYPE);
         if (cachedDTOs != null) {
             return cachedDTOs.stream().map(this::headingDTOToEntity).collect(Collectors.toList());
         }
         try (Session session = getSession()) {
-            List<Heading> headings = session.createQuery(
-                            "FROM Heading h WHERE h.page.id = :pageId ORDER BY h.position",
-                            Heading.class)
+            List<Heading> headings = session.createNamedQuery("Heading.byPage", Heading.class)
                     .setParameter("pageId", pageId)
                     .list();
             List<HeadingDTO> DTOs = headings.stream().map(this::headingEntityToDTO).collect(Collectors.toList());
@@ -176,11 +379,11 @@ public class PageDAO extends BaseDAO<Page, PageDTO> {
         return heading;
     }
 
-    private String slugKey(String slug) {
+    static String slugKey(String slug) {
         return String.format(SLUG_KEY_TEMPLATE, slug);
     }
 
-    private String headingsKey(Long pageId) {
+    protected static String headingsKey(Long pageId) {
         return String.format(HEADINGS_KEY_TEMPLATE, pageId);
     }
 }
@@ -0,0 +1,433 @@
+package db.dao;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import db.content.ContentStructure;
+import db.content.ExtractedBlock;
+import db.content.ExtractedHeading;
+import db.content.ExtractedLink;
+import db.content.LinkTargets;
+import db.util.JsonUtil;
+import org.hibernate.Session;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+// Приводит заголовки, блоки и ссылки страницы к структуре новой версии, записывая только отличия
+class PageStructureWriter {
+    static final int POSITION_STEP = 1024;
+
+    private static final ObjectMapper OBJECT_MAPPER = JsonUtil.mapper();
+
+    private PageStructureWriter() {
+    }
+
+    static class Changes {
+        boolean headingsChanged;
+        boolean blocksChanged;
+        boolean linksChanged;
+        final List<Long> touchedBlockIds = new ArrayList<>();
+        final List<Long> deletedLinkIds = new ArrayList<>();
+        final Set<Long> affectedTargetPageIds = new HashSet<>();
+    }
+
+    static class ExistingRow {
+        final long id;
+        final int position;
+        final Object key;
+        // Ключ исходного блока из текста версии; не null только у блоков, изменённых напрямую
+        final Object origin;
+
+        ExistingRow(long id, int position, Object key) {
+            this(id, position, key, null);
+        }
+
+        ExistingRow(long id, int position, Object key, Object origin) {
+            this.id = id;
+            this.position = position;
+            this.key = key;
+            this.origin = origin;
+        }
+    }
+
+    static class Write<X> {
+        final Long rowId;
+        final X item;
+        final int position;
+
+        Write(Long rowId, X item, int position) {
+            this.rowId = rowId;
+            this.item = item;
+            this.position = position;
+        }
+    }
+
+    static class Plan<X> {
+        final List<Long> deletes = new ArrayList<>();
+        final List<Write<X>> updates = new ArrayList<>();
+        final List<Write<X>> inserts = new ArrayList<>();
+
+        boolean isEmpty() {
+            return deletes.isEmpty() && updates.isEmpty() && inserts.isEmpty();
+        }
+    }
+
+    static Changes apply(Session session, Long pageId, ContentStructure structure) {
+        return session.doReturningWork(connection -> {
+            Changes changes = new Changes();
+            syncHeadings(connection, pageId, structure.getHeadings(), changes);
+            syncBlocks(connection, pageId, structure.getBlocks(), changes);
+            syncLinks(connection, pageId, structure.getLinks(), changes);
+            return changes;
+        });
+    }
+
+    private static void syncHeadings(Connection connection, Long pageId, List<ExtractedHeading> headings,
+                                     Changes changes) throws SQLException {
+        List<ExistingRow> existing = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT id, level, text, position FROM headings WHERE page_id = ? ORDER BY position, id")) {
+            select.setLong(1, pageId);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(new ExistingRow(rs.getLong(1), rs.getInt(4), headingKey(rs.getInt(2), rs.getString(3))));
+                }
+            }
+        }
+
+        Plan<ExtractedHeading> plan = plan(existing, headings, h -> headingKey(h.getLevel(), h.getText()));
+        if (plan.isEmpty()) {
+            return;
+        }
+        changes.headingsChanged = true;
+
+        executeDeletes(connection, "DELETE FROM headings WHERE id = ?", plan.deletes);
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE headings SET level = ?, text = ?, position = ? WHERE id = ?")) {
+            for (Write<ExtractedHeading> write : plan.updates) {
+                update.setInt(1, write.item.getLevel());
+                update.setString(2, write.item.getText());
+                update.setInt(3, write.position);
+                update.setLong(4, write.rowId);
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO headings (page_id, level, text, position) VALUES (?, ?, ?, ?)")) {
+            for (Write<ExtractedHeading> write : plan.inserts) {
+                insert.setLong(1, pageId);
+                insert.setInt(2, write.item.getLevel());
+                insert.setString(3, write.item.getText());
+                insert.setInt(4, write.position);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private static void syncBlocks(Connection connection, Long pageId, List<ExtractedBlock> blocks,
+                                   Changes changes) throws SQLException {
+        List<ExistingRow> existing = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT id, type, CAST(content AS TEXT), position, origin ->> 'type', CAST(origin -> 'content' AS TEXT), " +
+                        "origin IS NOT NULL FROM blocks WHERE page_id = ? ORDER BY position, id")) {
+            select.setLong(1, pageId);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    Object origin = rs.getBoolean(7) ? blockKey(rs.getString(5), parseJson(rs.getString(6))) : null;
+                    existing.add(new ExistingRow(rs.getLong(1), rs.getInt(4),
+                            blockKey(rs.getString(2), parseJson(rs.getString(3))), origin));
+                }
+            }
+        }
+
+        Plan<ExtractedBlock> plan = planBlocks(existing, blocks, b -> blockKey(b.getType(), b.getContent()));
+        if (plan.isEmpty()) {
+            return;
+        }
+        changes.blocksChanged = true;
+        changes.touchedBlockIds.addAll(plan.deletes);
+
+        executeDeletes(connection, "DELETE FROM blocks WHERE id = ?", plan.deletes);
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE blocks SET type = ?, content = CAST(? AS jsonb), position = ?, origin = NULL, " +
+                        "version = version + 1 WHERE id = ?")) {
+            for (Write<ExtractedBlock> write : plan.updates) {
+                update.setString(1, write.item.getType());
+                update.setString(2, write.item.getContent().toString());
+                update.setInt(3, write.position);
+                update.setLong(4, write.rowId);
+                update.addBatch();
+                changes.touchedBlockIds.add(write.rowId);
+            }
+            update.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO blocks (page_id, type, content, position, isVisible, version) " +
+                        "VALUES (?, ?, CAST(? AS jsonb), ?, TRUE, 0)")) {
+            for (Write<ExtractedBlock> write : plan.inserts) {
+                insert.setLong(1, pageId);
+                insert.setString(2, write.item.getType());
+                insert.setString(3, write.item.getContent().toString());
+                insert.setInt(4, write.position);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    // Ссылки не упорядочены: сравниваются как мультимножества пар (url, title)
+    private static void syncLinks(Connection connection, Long pageId, List<ExtractedLink> links,
+                                  Changes changes) throws SQLException {
+        Map<String, Deque<long[]>> existing = new HashMap<>();
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT id, url, title, target_page_id FROM links WHERE page_id = ?")) {
+            select.setLong(1, pageId);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    long targetPageId = rs.getLong(4);
+                    existing.computeIfAbsent(linkKey(rs.getString(2), rs.getString(3)), k -> new ArrayDeque<>())
+                            .add(new long[]{rs.getLong(1), rs.wasNull() ? 0 : targetPageId});
+                }
+            }
+        }
+
+        List<ExtractedLink> inserts = new ArrayList<>();
+        for (ExtractedLink link : links) {
+            Deque<long[]> rows = existing.get(linkKey(link.getUrl(), link.getTitle()));
+            if (rows != null && !rows.isEmpty()) {
+                rows.poll();
+            } else {
+                inserts.add(link);
+            }
+        }
+        List<Long> deletes = new ArrayList<>();
+        for (Deque<long[]> rows : existing.values()) {
+            for (long[] row : rows) {
+                deletes.add(row[0]);
+                if (row[1] != 0) {
+                    changes.affectedTargetPageIds.add(row[1]);
+                }
+            }
+        }
+        if (inserts.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+        changes.linksChanged = true;
+        changes.deletedLinkIds.addAll(deletes);
+
+        Map<String, Long> targets = resolveTargets(connection, inserts);
+        executeDeletes(connection, "DELETE FROM links WHERE id = ?", deletes);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO links (page_id, url, title, internal, target_slug, target_page_id) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (ExtractedLink link : inserts) {
+                String slug = LinkTargets.internalSlug(link.getUrl());
+                Long targetPageId = slug != null ? targets.get(slug) : null;
+                insert.setLong(1, pageId);
+                insert.setString(2, link.getUrl());
+                insert.setString(3, link.getTitle());
+                insert.setBoolean(4, slug != null);
+                insert.setString(5, slug);
+                insert.setObject(6, targetPageId, Types.BIGINT);
+                insert.addBatch();
+                if (targetPageId != null) {
+                    changes.affectedTargetPageIds.add(targetPageId);
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private static Map<String, Long> resolveTargets(Connection connection, List<ExtractedLink> links) throws SQLException {
+        Set<String> slugs = new LinkedHashSet<>();
+        for (ExtractedLink link : links) {
+            String slug = LinkTargets.internalSlug(link.getUrl());
+            if (slug != null) {
+                slugs.add(slug);
+            }
+        }
+        Map<String, Long> targets = new HashMap<>();
+        if (slugs.isEmpty()) {
+            return targets;
+        }
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT slug, id FROM pages WHERE slug = ANY (?)")) {
+            select.setArray(1, connection.createArrayOf("varchar", slugs.toArray()));
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    targets.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+        }
+        return targets;
+    }
+
+    // Блок, изменённый напрямую, остаётся как есть (содержимое и позиция), пока в тексте версии есть его
+    // неизменённый исходный блок. Если исходный блок в тексте изменён или удалён, текст версии важнее:
+    // строка сравнивается по текущему содержимому, как обычная, и при перезаписи теряет origin
+    static <X> Plan<X> planBlocks(List<ExistingRow> existing, List<X> extracted, Function<X, Object> keyOf) {
+        List<ExistingRow> rows = new ArrayList<>(existing.size());
+        List<X> remaining = new ArrayList<>(extracted);
+        for (ExistingRow row : existing) {
+            if (row.origin != null) {
+                int index = indexOfKey(remaining, row.origin, keyOf);
+                if (index >= 0) {
+                    remaining.remove(index);
+                    continue;
+                }
+            }
+            rows.add(row);
+        }
+        return plan(rows, remaining, keyOf);
+    }
+
+    private static <X> int indexOfKey(List<X> items, Object key, Function<X, Object> keyOf) {
+        for (int i = 0; i < items.size(); i++) {
+            if (key.equals(keyOf.apply(items.get(i)))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Совпадающие начало и конец списка не переписываются; изменённая середина получает позиции
+    // между соседями, а если места между ними нет — список перенумеровывается целиком
+    private static <X> Plan<X> plan(List<ExistingRow> existing, List<X> extracted, Function<X, Object> keyOf) {
+        int existingSize = existing.size();
+        int extractedSize = extracted.size();
+
+        int prefix = 0;
+        while (prefix < existingSize && prefix < extractedSize
+                && existing.get(prefix).key.equals(keyOf.apply(extracted.get(prefix)))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < existingSize - prefix && suffix < extractedSize - prefix
+                && existing.get(existingSize - 1 - suffix).key.equals(keyOf.apply(extracted.get(extractedSize - 1 - suffix)))) {
+            suffix++;
+        }
+
+        List<ExistingRow> oldMiddle = existing.subList(prefix, existingSize - suffix);
+        List<X> newMiddle = extracted.subList(prefix, extractedSize - suffix);
+        Integer lower = prefix > 0 ? existing.get(prefix - 1).position : null;
+        Integer upper = suffix > 0 ? existing.get(existingSize - suffix).position : null;
+        int[] middlePositions = middlePositions(lower, upper, newMiddle.size());
+
+        Plan<X> plan = new Plan<>();
+        for (int i = newMiddle.size(); i < oldMiddle.size(); i++) {
+            plan.deletes.add(oldMiddle.get(i).id);
+        }
+
+        if (middlePositions != null) {
+            for (int i = 0; i < newMiddle.size(); i++) {
+                addWrite(plan, i < oldMiddle.size() ? oldMiddle.get(i) : null, newMiddle.get(i), middlePositions[i], keyOf);
+            }
+            return plan;
+        }
+
+        for (int i = 0; i < extractedSize; i++) {
+            int position = i * POSITION_STEP;
+            ExistingRow row;
+            if (i < prefix) {
+                row = existing.get(i);
+            } else if (i >= extractedSize - suffix) {
+                row = existing.get(existingSize - (extractedSize - i));
+            } else {
+                int middleIndex = i - prefix;
+                row = middleIndex < oldMiddle.size() ? oldMiddle.get(middleIndex) : null;
+            }
+            addWrite(plan, row, extracted.get(i), position, keyOf);
+        }
+        return plan;
+    }
+
+    private static <X> void addWrite(Plan<X> plan, ExistingRow row, X item, int position, Function<X, Object> keyOf) {
+        if (row == null) {
+            plan.inserts.add(new Write<>(null, item, position));
+        } else if (row.position != position || !row.key.equals(keyOf.apply(item))) {
+            plan.updates.add(new Write<>(row.id, item, position));
+        }
+    }
+
+    private static int[] middlePositions(Integer lower, Integer upper, int count) {
+        int[] positions = new int[count];
+        if (count == 0) {
+            return positions;
+        }
+        if (lower == null && upper == null) {
+            for (int i = 0; i < count; i++) {
+                positions[i] = i * POSITION_STEP;
+            }
+        } else if (upper == null) {
+            for (int i = 0; i < count; i++) {
+                positions[i] = lower + (i + 1) * POSITION_STEP;
+            }
+        } else if (lower == null) {
+            for (int i = 0; i < count; i++) {
+                positions[i] = upper - (count - i) * POSITION_STEP;
+            }
+        } else {
+            long gap = (long) upper - lower;
+            if (gap - 1 < count) {
+                return null;
+            }
+            long step = gap / (count + 1);
+            for (int i = 0; i < count; i++) {
+                positions[i] = (int) (lower + (i + 1) * step);
+            }
+        }
+        return positions;
+    }
+
+    private static void executeDeletes(Connection connection, String sql, List<Long> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement delete = connection.prepareStatement(sql)) {
+            for (Long id : ids) {
+                delete.setLong(1, id);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        }
+    }
+
+    private static String headingKey(int level, String text) {
+        return level + "\u0000" + text;
+    }
+
+    private static Object blockKey(String type, JsonNode content) {
+        return List.of(Objects.toString(type, ""), content);
+    }
+
+    private static String linkKey(String url, String title) {
+        return url + "\u0000" + Objects.toString(title, "");
+    }
+
+    private static JsonNode parseJson(String json) {
+        if (json == null) {
+            return NullNode.getInstance();
+        }
+        try {
+            return OBJECT_MAPPER.readTree(json);
+        } catch (Exception e) {
+            return OBJECT_MAPPER.getNodeFactory().textNode(json);
+        }
+    }
+}
@@ -1,16 +1,28 @@
 package db.dao;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import db.content.ContentParser;
+import db.content.TextDiff;
+import db.dto.DiffHunkDTO;
 import db.dto.PageVersionDTO;
+import db.dto.VersionDiffDTO;
+import db.entities.Block;
+import db.entities.Link;
 import db.entities.Page;
 import db.entities.PageVersion;
 import db.entities.User;
+import db.metrics.Metrics;
+import db.metrics.Timer;
+import db.outbox.OutboxEventType;
+import db.outbox.OutboxEvents;
 import db.util.RedisCacheUtil;
+import jakarta.persistence.LockModeType;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -18,6 +30,10 @@ public class PageVersionDAO {
     private static final String LATEST_VERSION_KEY_TEMPLATE = "page:%d:version:latest";
     private static final String PAGE_VERSIONS_KEY_TEMPLATE = "page:%d:versions";
     private static final String VERSION_BY_ID_KEY_TEMPLATE = "pageversion:id:%d";
+    // Версии неизменяемы, поэтому точный diff пары хранится без TTL — в хэше страницы, который удаляется
+    // вместе со страницей и её версиями. Diff, упрощённый по сроку (truncated), не кэшируется
+    private static final String VERSION_DIFFS_KEY_TEMPLATE = "page:%d:diffs";
+    private static final Timer DIFF = Metrics.timer("diff.compute");
     private static final TypeReference<List<PageVersionDTO>> PAGE_VERSION_LIST_TYPE = new TypeReference<>() {};
 
     private final SessionFactory sessionFactory;
@@ -26,6 +42,11 @@ public class PageVersionDAO {
         this.sessionFactory = sessionFactory;
     }
 
+    // Таймер метода DAO: dao.PageVersionDAO.операция
+    private static Timer timer(String operation) {
+        return Metrics.timer("dao.PageVersionDAO." + operation);
+    }
+
     private PageVersionDTO entityToDTO(PageVersion entity) {
         if (entity == null) return null;
         Long pageId = entity.getPage() != null ? entity.getPage().getId() : null;
@@ -64,14 +85,17 @@ public class PageVersionDAO {
     }
 
     public PageVersion findLatestVersion(Long pageId) {
+        return timer("findLatestVersion").time(() -> doFindLatestVersion(pageId));
+    }
+
+    private PageVersion doFindLatestVersion(Long pageId) {
         String key = latestVersionKey(pageId);
         PageVersionDTO cachedDTO = RedisCacheUtil.getValue(key, PageVersionDTO.class);
         if (cachedDTO != null) {
             return dtoToEntity(cachedDTO);
         }
         try (Session session = sessionFactory.openSession()) {
-            PageVersion version = session.createQuery(
-                            "FROM PageVersion v WHERE v.page.id = :pageId ORDER BY v.versionNumber DESC", PageVersion.class)
+            PageVersion version = session.createNamedQuery("PageVersion.byPageDesc", PageVersion.class)
                     .setParameter("pageId", pageId)
                     .setMaxResults(1)
                     .uniqueResult();
@@ -84,18 +108,26 @@ public class PageVersionDAO {
     }
 
     public PageVersion createNewVersion(Page page, User changer, String newContent) {
+        return timer("createNewVersion").time(() -> doCreateNewVersion(page, changer, newContent));
+    }
+
+    private PageVersion doCreateNewVersion(Page page, User changer, String newContent) {
         try (Session session = sessionFactory.openSession()) {
             Transaction transaction = session.beginTransaction();
 
-            Integer latestVersionNumber = session.createQuery(
-                            "SELECT max(v.versionNumber) FROM PageVersion v WHERE v.page.id = :pageId",
-                            Integer.class)
+            // Блокировка строки страницы: параллельные правки одной страницы получают разные номера версий
+            // и не строят план структуры по одному и тому же старому состоянию.
+            // Читается заново, поэтому устаревшая копия страницы не перезаписывает её состояние
+            Page managedPage = session.find(Page.class, page.getId(), LockModeType.PESSIMISTIC_WRITE);
+            if (managedPage == null) {
+                throw new RuntimeException("Страница не найдена: " + page.getId());
+            }
+
+            Integer latestVersionNumber = session.createNamedQuery("PageVersion.maxVersionNumber", Integer.class)
                     .setParameter("pageId", page.getId())
                     .uniqueResult();
             int nextVersion = latestVersionNumber == null ? 1 : latestVersionNumber + 1;
 
-            Page managedPage = session.merge(page);
-
             PageVersion version = new PageVersion();
             version.setPage(managedPage);
             version.setVersionNumber(nextVersion);
@@ -105,11 +137,21 @@ public class PageVersionDAO {
             version.setPublished(false);
 
             session.persist(version);
+            PageStructureWriter.Changes changes =
+                    PageStructureWriter.apply(session, page.getId(), ContentParser.parse(newContent));
+            List<String> invalidatedKeys = new ArrayList<>();
+            invalidatedKeys.add(latestVersionKey(page.getId()));
+            invalidatedKeys.add(pageVersionsKey(page.getId()));
+            invalidatedKeys.addAll(structureKeys(page.getId(), changes));
+            OutboxEvents.record(session, Page.class.getSimpleName(), page.getId(),
+                    OutboxEventType.PAGE_VERSION_CREATED, page.getId(), invalidatedKeys);
             transaction.commit();
 
             cacheVersion(version);
             RedisCacheUtil.cacheValue(latestVersionKey(page.getId()), entityToDTO(version));
             RedisCacheUtil.evict(latestVersionKey(page.getId()));
+            RedisCacheUtil.evict(pageVersionsKey(page.getId()));
+            evictStructure(page.getId(), changes);
 
             return version;
         } catch (Exception e) {
@@ -117,15 +159,42 @@ public class PageVersionDAO {
         }
     }
 
+    private void evictStructure(Long pageId, PageStructureWriter.Changes changes) {
+        List<String> keys = structureKeys(pageId, changes);
+        if (!keys.isEmpty()) {
+            RedisCacheUtil.evictAll(keys);
+        }
+    }
+
+    private static List<String> structureKeys(Long pageId, PageStructureWriter.Changes changes) {
+        List<String> keys = new ArrayList<>();
+        if (changes.headingsChanged) {
+            keys.add(PageDAO.headingsKey(pageId));
+        }
+        if (changes.blocksChanged) {
+            keys.add(BlockDAO.blocksKey(pageId));
+            changes.touchedBlockIds.forEach(id -> keys.add(BaseDAO.entityKey(Block.class, id)));
+        }
+        if (changes.linksChanged) {
+            keys.add(LinkDAO.linksKey(pageId));
+            changes.deletedLinkIds.forEach(id -> keys.add(BaseDAO.entityKey(Link.class, id)));
+            keys.addAll(LinkDAO.graphKeys(changes.affectedTargetPageIds));
+        }
+        return keys;
+    }
+
     public List<PageVersion> findAllVersions(Long pageId) {
+        return timer("findAllVersions").time(() -> doFindAllVersions(pageId));
+    }
+
+    private List<PageVersion> doFindAllVersions(Long pageId) {
         String key = pageVersionsKey(pageId);
         List<PageVersionDTO> cachedDTOs = RedisCacheUtil.getValue(key, PAGE_VERSION_LIST_TYPE);
         if (cachedDTOs != null) {
             return cachedDTOs.stream().map(this::dtoToEntity).collect(Collectors.toList());
         }
         try (Session session = sessionFactory.openSession()) {
-            List<PageVersion> versions = session.createQuery(
-                            "FROM PageVersion v WHERE v.page.id = :pageId ORDER BY v.versionNumber", PageVersion.class)
+            List<PageVersion> versions = session.createNamedQuery("PageVersion.byPage", PageVersion.class)
                     .setParameter("pageId", pageId)
                     .list();
             List<PageVersionDTO> DTOs = versions.stream().map(this::entityToDTO).collect(Collectors.toList());
@@ -135,6 +204,10 @@ public class PageVersionDAO {
     }
 
     public PageVersion findById(Long id) {
+        return timer("findById").time(() -> doFindById(id));
+    }
+
+    private PageVersion doFindById(Long id) {
         String key = versionByIdKey(id);
         PageVersionDTO cachedDTO = RedisCacheUtil.getValue(key, PageVersionDTO.class);
         if (cachedDTO != null) {
@@ -149,21 +222,69 @@ public class PageVersionDAO {
         }
     }
 
+    public VersionDiffDTO diffVersions(Long fromVersionId, Long toVersionId) {
+        return timer("diffVersions").time(() -> doDiffVersions(fromVersionId, toVersionId));
+    }
+
+    private VersionDiffDTO doDiffVersions(Long fromVersionId, Long toVersionId) {
+        PageVersionDTO from = findDTOById(fromVersionId);
+        PageVersionDTO to = findDTOById(toVersionId);
+        if (from == null || to == null) throw new RuntimeException("Page version not found");
+        if (!from.getPageId().equals(to.getPageId())) throw new RuntimeException("Page versions belong to different pages");
+
+        String key = versionDiffsKey(from.getPageId());
+        String field = fromVersionId + ":" + toVersionId;
+        VersionDiffDTO cached = RedisCacheUtil.getField(key, field, VersionDiffDTO.class);
+        if (cached != null) {
+            return cached;
+        }
+        List<DiffHunkDTO> hunks = DIFF.time(() -> TextDiff.diff(from.getContent(), to.getContent()));
+        boolean truncated = hunks.stream().anyMatch(DiffHunkDTO::isTruncated);
+        VersionDiffDTO diff = new VersionDiffDTO(from.getPageId(),
+                from.getId(), from.getVersionNumber(), to.getId(), to.getVersionNumber(), hunks, truncated);
+        if (truncated) {
+            Metrics.counter("diff.truncated").increment();
+        } else {
+            RedisCacheUtil.cacheField(key, field, diff);
+        }
+        return diff;
+    }
+
+    // Для diff нужно только содержимое: без dtoToEntity и лишних запросов страницы и автора
+    private PageVersionDTO findDTOById(Long id) {
+        PageVersionDTO cachedDTO = RedisCacheUtil.getValue(versionByIdKey(id), PageVersionDTO.class);
+        if (cachedDTO != null) {
+            return cachedDTO;
+        }
+        try (Session session = sessionFactory.openSession()) {
+            PageVersion version = session.find(PageVersion.class, id);
+            if (version == null) {
+                return null;
+            }
+            cacheVersion(version);
+            return entityToDTO(version);
+        }
+    }
+
     private void cacheVersion(PageVersion version) {
         if (version != null && version.getId() != null) {
             RedisCacheUtil.cacheValue(versionByIdKey(version.getId()), entityToDTO(version));
         }
     }
 
-    private String latestVersionKey(Long pageId) {
+    static String latestVersionKey(Long pageId) {
         return String.format(LATEST_VERSION_KEY_TEMPLATE, pageId);
     }
 
-    private String pageVersionsKey(Long pageId) {
+    static String pageVersionsKey(Long pageId) {
         return String.format(PAGE_VERSIONS_KEY_TEMPLATE, pageId);
     }
 
-    private String versionByIdKey(Long versionId) {
+    static String versionByIdKey(Long versionId) {
         return String.format(VERSION_BY_ID_KEY_TEMPLATE, versionId);
     }
+
+    static String versionDiffsKey(Long pageId) {
+        return String.format(VERSION_DIFFS_KEY_TEMPLATE, pageId);
+    }
 }
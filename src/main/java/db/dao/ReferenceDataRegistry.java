@@ -0,0 +1,227 @@
+package db.dao;
+
+import db.dto.RoleDTO;
+import db.dto.TagDTO;
+import db.entities.Role;
+import db.entities.Tag;
+import db.util.RedisCacheUtil;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Роли и теги в памяти процесса: неизменяемый снимок, который целиком заменяется при изменении.
+// Изменение рассылается остальным узлам через канал Redis, получатели перечитывают справочники из БД.
+// После переподключения подписки снимок тоже перечитывается: уведомления за время разрыва потеряны
+public final class ReferenceDataRegistry {
+    public static final String CHANNEL = System.getProperty("docman.reference.channel", "docman:reference");
+    private static final long RESUBSCRIBE_DELAY_MILLIS = 5_000;
+
+    private static volatile ReferenceDataRegistry instance;
+
+    private final SessionFactory sessionFactory;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.of(Map.of(), Map.of()));
+    // Число локальных изменений: перечитывание, начатое до изменения, не должно затереть его старым снимком
+    private long changes;
+
+    private ReferenceDataRegistry(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public static ReferenceDataRegistry getInstance(SessionFactory sessionFactory) {
+        if (instance == null) {
+            synchronized (ReferenceDataRegistry.class) {
+                if (instance == null) {
+                    ReferenceDataRegistry registry = new ReferenceDataRegistry(sessionFactory);
+                    registry.reload();
+                    registry.startSubscriber();
+                    instance = registry;
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Словари по id и имени; маски прав ролей вычислены заранее
+    public record Snapshot(Map<Long, RoleDTO> rolesById, Map<String, RoleDTO> rolesByName, Map<Long, Long> permissions,
+                           Map<Long, TagDTO> tagsById, Map<String, TagDTO> tagsByName) {
+
+        static Snapshot of(Map<Long, RoleDTO> roles, Map<Long, TagDTO> tags) {
+            Map<String, RoleDTO> rolesByName = new HashMap<>();
+            Map<Long, Long> permissions = new HashMap<>();
+            for (RoleDTO role : roles.values()) {
+                rolesByName.put(role.getName(), role);
+                permissions.put(role.getId(), role.getPermissions());
+            }
+            Map<String, TagDTO> tagsByName = new HashMap<>();
+            for (TagDTO tag : tags.values()) {
+                tagsByName.put(tag.getName(), tag);
+            }
+            return new Snapshot(Map.copyOf(roles), Map.copyOf(rolesByName), Map.copyOf(permissions),
+                    Map.copyOf(tags), Map.copyOf(tagsByName));
+        }
+    }
+
+    public Snapshot snapshot() {
+        return snapshot.get();
+    }
+
+    public RoleDTO role(Long id) {
+        return id == null ? null : snapshot.get().rolesById().get(id);
+    }
+
+    public RoleDTO roleByName(String name) {
+        return name == null ? null : snapshot.get().rolesByName().get(name);
+    }
+
+    public Collection<RoleDTO> roles() {
+        return snapshot.get().rolesById().values();
+    }
+
+    // null, если роль неизвестна
+    public Long permissions(Long roleId) {
+        return roleId == null ? null : snapshot.get().permissions().get(roleId);
+    }
+
+    public TagDTO tag(Long id) {
+        return id == null ? null : snapshot.get().tagsById().get(id);
+    }
+
+    public TagDTO tagByName(String name) {
+        return name == null ? null : snapshot.get().tagsByName().get(name);
+    }
+
+    public void reload() {
+        while (true) {
+            long seen;
+            synchronized (this) {
+                seen = changes;
+            }
+            Snapshot loaded = load();
+            synchronized (this) {
+                if (changes == seen) {
+                    snapshot.set(loaded);
+                    return;
+                }
+            }
+        }
+    }
+
+    private Snapshot load() {
+        try (Session session = sessionFactory.openSession()) {
+            Map<Long, RoleDTO> roles = new HashMap<>();
+            for (Role role : session.createQuery("FROM Role", Role.class).list()) {
+                roles.put(role.getId(), RoleDAO.toDTO(role));
+            }
+            Map<Long, TagDTO> tags = new HashMap<>();
+            for (Tag tag : session.createQuery("FROM Tag", Tag.class).list()) {
+                tags.put(tag.getId(), TagDAO.toDTO(tag));
+            }
+            return Snapshot.of(roles, tags);
+        }
+    }
+
+    void roleChanged(RoleDTO role) {
+        if (role.getId() != null) {
+            updateRoles(roles -> {
+                roles.values().removeIf(existing -> Objects.equals(existing.getName(), role.getName()));
+                roles.put(role.getId(), role);
+            });
+        }
+    }
+
+    void roleDeleted(Long id) {
+        updateRoles(roles -> roles.remove(id));
+    }
+
+    void tagChanged(TagDTO tag) {
+        if (tag.getId() != null) {
+            updateTags(tags -> {
+                tags.values().removeIf(existing -> Objects.equals(existing.getName(), tag.getName()));
+                tags.put(tag.getId(), tag);
+            });
+        }
+    }
+
+    void tagDeleted(Long id) {
+        updateTags(tags -> tags.remove(id));
+    }
+
+    private void updateRoles(Consumer<Map<Long, RoleDTO>> change) {
+        synchronized (this) {
+            Snapshot current = snapshot.get();
+            Map<Long, RoleDTO> roles = new HashMap<>(current.rolesById());
+            change.accept(roles);
+            snapshot.set(Snapshot.of(roles, current.tagsById()));
+            changes++;
+        }
+        notifyNodes();
+    }
+
+    private void updateTags(Consumer<Map<Long, TagDTO>> change) {
+        synchronized (this) {
+            Snapshot current = snapshot.get();
+            Map<Long, TagDTO> tags = new HashMap<>(current.tagsById());
+            change.accept(tags);
+            snapshot.set(Snapshot.of(current.rolesById(), tags));
+            changes++;
+        }
+        notifyNodes();
+    }
+
+    // Запись в БД уже зафиксирована, поэтому ошибка рассылки только логируется
+    private void notifyNodes() {
+        try {
+            RedisCacheUtil.publish(CHANNEL, nodeId);
+        } catch (RuntimeException e) {
+            System.out.println("Не удалось разослать изменение справочников: " + e.getMessage());
+        }
+    }
+
+    private void startSubscriber() {
+        Thread subscriber = new Thread(this::subscribe, "reference-data-subscriber");
+        subscriber.setDaemon(true);
+        subscriber.start();
+    }
+
+    private void subscribe() {
+        boolean reconnect = false;
+        while (true) {
+            boolean resubscribed = reconnect;
+            try (Jedis jedis = new Jedis(RedisCacheUtil.getHost(), RedisCacheUtil.getPort())) {
+                jedis.subscribe(new JedisPubSub() {
+                    @Override
+                    public void onSubscribe(String channel, int subscribedChannels) {
+                        if (resubscribed) {
+                            reload();
+                        }
+                    }
+
+                    @Override
+                    public void onMessage(String channel, String message) {
+                        if (!nodeId.equals(message)) {
+                            reload();
+                        }
+                    }
+                }, CHANNEL);
+            } catch (RuntimeException e) {
+                System.out.println("Подписка на изменения справочников прервана: " + e.getMessage());
+            }
+            reconnect = true;
+            try {
+                Thread.sleep(RESUBSCRIBE_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
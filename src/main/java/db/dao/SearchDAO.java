@@ -1,23 +1,72 @@
 package db.dao;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
 import co.elastic.clients.elasticsearch._types.query_dsl.Query;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
 import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.InnerHits;
+import co.elastic.clients.elasticsearch.core.search.InnerHitsResult;
+import co.elastic.clients.json.JsonData;
+import db.dto.SearchHitDTO;
+import db.dto.SearchResultDTO;
+import db.dto.SuggestionDTO;
 import db.entities.Page;
+import db.metrics.Metrics;
+import db.metrics.Timer;
+import db.search.Analyzer;
+import db.search.ContentIndexMode;
+import db.search.AutocompleteIndex;
+import db.search.ElasticsearchIndexingPipeline;
+import db.search.EmbeddedSearchEngine;
+import db.search.PageIndexAdmin;
+import db.search.PagesReindexJob;
+import db.search.SearchEngineMode;
+import db.search.SearchResultCache;
 import db.util.ElasticsearchUtil;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class SearchDAO {
+    private static final int MAX_RESULTS = 100;
+    private static final int MAX_HIGHLIGHTS = 3;
+    private static final int HIGHLIGHT_FRAGMENT_SIZE = 150;
+    private static final List<String> SOURCE_FIELDS = List.of("id", "slug", "title");
+    private static final Set<EmbeddedSearchEngine.Field> TITLE_AND_TAGS =
+            EnumSet.of(EmbeddedSearchEngine.Field.TITLE, EmbeddedSearchEngine.Field.TAGS);
+    private static final Set<EmbeddedSearchEngine.Field> CONTENT =
+            EnumSet.of(EmbeddedSearchEngine.Field.CONTENT);
+
     private SessionFactory sessionFactory;
     private final ElasticsearchClient esClient;
+    private final EmbeddedSearchEngine embeddedEngine;
+    private final SearchResultCache<SearchResultDTO> resultCache = new SearchResultCache<>(SearchDAO::copyResult);
+    private final AutocompleteIndex autocompleteIndex;
+    private final PageDAO pageDAO;
 
     public SearchDAO(SessionFactory sessionFactory) {
         this.sessionFactory = sessionFactory;
-        this.esClient = ElasticsearchUtil.getClient();
+        this.pageDAO = new PageDAO(sessionFactory);
+        this.autocompleteIndex = AutocompleteIndex.getInstance();
+        if (SearchEngineMode.current() == SearchEngineMode.EMBEDDED) {
+            this.esClient = null;
+            this.embeddedEngine = EmbeddedSearchEngine.getInstance();
+        } else {
+            this.esClient = ElasticsearchUtil.getClient();
+            this.embeddedEngine = null;
+        }
+    }
+
+    // Таймер метода DAO: dao.SearchDAO.операция
+    private static Timer timer(String operation) {
+        return Metrics.timer("dao.SearchDAO." + operation);
     }
 
     /*
@@ -35,43 +84,49 @@ public class SearchDAO {
     */
 
     public List<Page> searchByTitleOrTag(String query) {
-        try {
-            Query queryBuilder = Query.of(q -> q
-                    .bool(b -> b
-                            .should(Query.of(q1 -> q1
-                                    .match(m -> m
-                                            .field("title")
-                                            .query(query.toLowerCase())
-                                    )
-                            ))
-                            .should(Query.of(q2 -> q2
-                                    .nested(n -> n
-                                            .path("tags")
-                                            .query(Query.of(q3 -> q3
-                                                    .match(m -> m
-                                                            .field("tags.name")
-                                                            .query(query.toLowerCase())
-                                                    )
-                                            ))
-                                    )
-                            ))
-                    )
-            );
+        return timer("searchByTitleOrTag").time(() -> doSearchByTitleOrTag(query));
+    }
 
-            SearchResponse<Page> response = esClient.search(s -> s
-                            .index("pages")
-                            .query(queryBuilder)
-                            .size(100),
-                    Page.class
-            );
+    private List<Page> doSearchByTitleOrTag(String query) {
+        return toPages(searchHitsByTitleOrTag(query, MAX_RESULTS, null, null));
+    }
 
-            return response.hits().hits().stream()
-                    .map(Hit::source)
-                    .toList();
-        } catch (Exception e) {
-            System.out.println("Совпадений не найдено");
-            return List.of();
+    // Постраничная выдача: следующая страница запрашивается с afterScore и afterId из предыдущего результата
+    public SearchResultDTO searchHitsByTitleOrTag(String query, int size, Double afterScore, Long afterId) {
+        return timer("searchHitsByTitleOrTag").time(() -> doSearchHitsByTitleOrTag(query, size, afterScore, afterId));
+    }
+
+    private SearchResultDTO doSearchHitsByTitleOrTag(String query, int size, Double afterScore, Long afterId) {
+        return cached("title", query, size, afterScore, afterId, this::loadHitsByTitleOrTag);
+    }
+
+    private SearchResultDTO loadHitsByTitleOrTag(String query, int size, Double afterScore, Long afterId) {
+        if (embeddedEngine != null) {
+            return searchEmbedded(query, TITLE_AND_TAGS, size, afterScore, afterId);
         }
+        Query queryBuilder = Query.of(q -> q
+                .bool(b -> b
+                        .should(Query.of(q1 -> q1
+                                .match(m -> m
+                                        .field("title")
+                                        .query(query.toLowerCase())
+                                )
+                        ))
+                        .should(Query.of(q2 -> q2
+                                .nested(n -> n
+                                        .path("tags")
+                                        .query(Query.of(q3 -> q3
+                                                .match(m -> m
+                                                        .field("tags.name")
+                                                        .query(query.toLowerCase())
+                                                )
+                                        ))
+                                        .innerHits(highlightedInnerHits("tags.name"))
+                                )
+                        ))
+                )
+        );
+        return searchElasticsearch(queryBuilder, size, afterScore, afterId);
     }
 
     /*
@@ -88,35 +143,192 @@ public class SearchDAO {
     */
 
     public List<Page> searchByContent(String query) {
-        try {
-            Query queryBuilder = Query.of(q -> q
-                    .nested(n -> n
-                            .path("versions")
-                            .query(Query.of(q1 -> q1
-                                    .match(m -> m
-                                            .field("versions.content")
-                                            .query(query.toLowerCase())
-                                    )
-                            ))
+        return timer("searchByContent").time(() -> doSearchByContent(query));
+    }
+
+    private List<Page> doSearchByContent(String query) {
+        return toPages(searchHitsByContent(query, MAX_RESULTS, null, null));
+    }
+
+    public SearchResultDTO searchHitsByContent(String query, int size, Double afterScore, Long afterId) {
+        return timer("searchHitsByContent").time(() -> doSearchHitsByContent(query, size, afterScore, afterId));
+    }
+
+    private SearchResultDTO doSearchHitsByContent(String query, int size, Double afterScore, Long afterId) {
+        return cached("content", query, size, afterScore, afterId, this::loadHitsByContent);
+    }
+
+    private SearchResultDTO loadHitsByContent(String query, int size, Double afterScore, Long afterId) {
+        if (embeddedEngine != null) {
+            return searchEmbedded(query, CONTENT, size, afterScore, afterId);
+        }
+        if (PageIndexAdmin.CONTENT_MODE == ContentIndexMode.LATEST) {
+            Query contentQuery = Query.of(q -> q
+                    .match(m -> m
+                            .field("content")
+                            .query(query.toLowerCase())
                     )
             );
+            return searchElasticsearch(contentQuery, size, afterScore, afterId);
+        }
+        Query queryBuilder = Query.of(q -> q
+                .nested(n -> n
+                        .path("versions")
+                        .query(Query.of(q1 -> q1
+                                .match(m -> m
+                                        .field("versions.content")
+                                        .query(query.toLowerCase())
+                                )
+                        ))
+                        .innerHits(highlightedInnerHits("versions.content"))
+                )
+        );
+        return searchElasticsearch(queryBuilder, size, afterScore, afterId);
+    }
 
-            SearchResponse<Page> response = esClient.search(s -> s
-                            .index("pages")
-                            .query(queryBuilder)
-                            .size(100),
-                    Page.class
-            );
+    // Подсказки строятся из памяти, без запросов к базе и поисковому движку
+    public List<SuggestionDTO> suggest(String prefix, int limit) {
+        return timer("suggest").time(() -> doSuggest(prefix, limit));
+    }
 
-            return response.hits().hits().stream()
-                    .map(Hit::source)
-                    .toList();
+    private List<SuggestionDTO> doSuggest(String prefix, int limit) {
+        return autocompleteIndex.suggest(prefix, limit);
+    }
+
+    // Полная пересборка индекса; поиск продолжает работать со старым индексом до переключения.
+    // Возвращает число проиндексированных страниц
+    public long rebuildIndex() {
+        return timer("rebuildIndex").time(() -> doRebuildIndex());
+    }
+
+    private long doRebuildIndex() {
+        if (embeddedEngine != null) {
+            embeddedEngine.rebuild();
+            return embeddedEngine.size();
+        }
+        ElasticsearchIndexingPipeline pipeline = ElasticsearchIndexingPipeline.start(sessionFactory);
+        return new PagesReindexJob(sessionFactory, esClient, pipeline).run();
+    }
 
+    private SearchResultDTO cached(String kind, String query, int size, Double afterScore, Long afterId,
+                                   SearchLoader loader) {
+        String normalized = SearchResultCache.normalize(query);
+        if (normalized.isEmpty()) {
+            return new SearchResultDTO(List.of(), null, null);
+        }
+        int pageSize = pageSize(size);
+        String key = kind + "|" + pageSize + "|" + afterScore + "|" + afterId + "|" + normalized;
+        SearchResultDTO result = resultCache.get(key, () -> loader.load(normalized, pageSize, afterScore, afterId));
+        return result != null ? result : new SearchResultDTO(List.of(), null, null);
+    }
+
+    @FunctionalInterface
+    private interface SearchLoader {
+        SearchResultDTO load(String query, int size, Double afterScore, Long afterId);
+    }
+
+    // Из _source забираются только поля выдачи; содержимое страниц не передаётся
+    private SearchResultDTO searchElasticsearch(Query query, int size, Double afterScore, Long afterId) {
+        int pageSize = pageSize(size);
+        try {
+            SearchResponse<SearchHitDTO> response = esClient.search(s -> {
+                        s.index(PageIndexAdmin.ALIAS)
+                                .query(query)
+                                .size(pageSize)
+                                .source(src -> src.filter(f -> f.includes(SOURCE_FIELDS)))
+                                .highlight(h -> h
+                                        .fields("title", f -> f.numberOfFragments(0))
+                                        .fields("content", f -> f
+                                                .fragmentSize(HIGHLIGHT_FRAGMENT_SIZE)
+                                                .numberOfFragments(MAX_HIGHLIGHTS)))
+                                .sort(so -> so.score(sc -> sc.order(SortOrder.Desc)))
+                                .sort(so -> so.field(f -> f.field("id").order(SortOrder.Asc)));
+                        if (afterScore != null && afterId != null) {
+                            s.searchAfter(FieldValue.of(afterScore), FieldValue.of(afterId));
+                        }
+                        return s;
+                    },
+                    SearchHitDTO.class
+            );
+
+            List<SearchHitDTO> hits = new ArrayList<>();
+            List<FieldValue> lastSort = null;
+            for (Hit<SearchHitDTO> hit : response.hits().hits()) {
+                SearchHitDTO dto = hit.source();
+                if (dto == null) {
+                    continue;
+                }
+                dto.setScore(hit.score() != null ? hit.score() : 0.0);
+                dto.setHighlights(collectHighlights(hit));
+                hits.add(dto);
+                lastSort = hit.sort();
+            }
+            if (hits.size() < pageSize || lastSort == null || lastSort.size() < 2) {
+                return new SearchResultDTO(List.copyOf(hits), null, null);
+            }
+            return new SearchResultDTO(List.copyOf(hits), lastSort.get(0).doubleValue(), lastSort.get(1).longValue());
         } catch (Exception e) {
-            System.out.println("Совпадений не найдено");
-            return List.of();
+            // Ошибка не кэшируется и не выдаётся за пустой результат: следующий запрос снова обратится к Elasticsearch
+            System.out.println("ОШИБКА поиска в Elasticsearch: " + e.getMessage());
+            throw new RuntimeException("Ошибка поиска в Elasticsearch", e);
         }
     }
 
-}
+    private static InnerHits highlightedInnerHits(String field) {
+        return InnerHits.of(ih -> ih
+                .size(MAX_HIGHLIGHTS)
+                .source(src -> src.fetch(false))
+                .highlight(h -> h.fields(field, f -> f.fragmentSize(HIGHLIGHT_FRAGMENT_SIZE))));
+    }
+
+    private static List<String> collectHighlights(Hit<SearchHitDTO> hit) {
+        List<String> highlights = new ArrayList<>();
+        hit.highlight().values().forEach(highlights::addAll);
+        for (InnerHitsResult inner : hit.innerHits().values()) {
+            for (Hit<JsonData> innerHit : inner.hits().hits()) {
+                innerHit.highlight().values().forEach(highlights::addAll);
+            }
+        }
+        return highlights.size() > MAX_HIGHLIGHTS ? highlights.subList(0, MAX_HIGHLIGHTS) : highlights;
+    }
+
+    // Вызывающий может изменять выдачу, поэтому кэш отдаёт её копию
+    private static SearchResultDTO copyResult(SearchResultDTO result) {
+        List<SearchHitDTO> hits = null;
+        if (result.getHits() != null) {
+            hits = new ArrayList<>(result.getHits().size());
+            for (SearchHitDTO hit : result.getHits()) {
+                hits.add(new SearchHitDTO(hit.getId(), hit.getSlug(), hit.getTitle(), hit.getScore(),
+                        hit.getHighlights() == null ? null : new ArrayList<>(hit.getHighlights())));
+            }
+        }
+        return new SearchResultDTO(hits, result.getAfterScore(), result.getAfterId());
+    }
 
+    private static int pageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_RESULTS));
+    }
+
+    private SearchResultDTO searchEmbedded(String query, Set<EmbeddedSearchEngine.Field> fields, int size,
+                                           Double afterScore, Long afterId) {
+        int pageSize = pageSize(size);
+        Set<String> terms = new HashSet<>(Analyzer.analyze(query));
+        List<SearchHitDTO> hits = embeddedEngine.search(query, fields, pageSize, afterScore, afterId).stream()
+                .map(hit -> {
+                    String highlighted = Analyzer.highlight(hit.getTitle(), terms);
+                    return new SearchHitDTO(hit.getPageId(), hit.getSlug(), hit.getTitle(), hit.getScore(),
+                            highlighted != null ? List.of(highlighted) : List.of());
+                })
+                .toList();
+        if (hits.size() < pageSize) {
+            return new SearchResultDTO(hits, null, null);
+        }
+        SearchHitDTO last = hits.get(hits.size() - 1);
+        return new SearchResultDTO(hits, last.getScore(), last.getId());
+    }
+
+    // Полные страницы одним запросом в порядке выдачи; страницы, удалённые после индексации, пропускаются
+    private List<Page> toPages(SearchResultDTO result) {
+        return pageDAO.findByIds(result.getHits().stream().map(SearchHitDTO::getId).toList());
+    }
+}
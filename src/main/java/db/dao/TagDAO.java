@@ -1,16 +1,22 @@
 package db.dao;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import db.dto.PageSummaryDTO;
+import db.dto.TagCountDTO;
 import db.dto.TagDTO;
 import db.entities.Page;
 import db.entities.Tag;
+import db.outbox.OutboxEventType;
+import db.outbox.OutboxEvents;
 import db.util.RedisCacheUtil;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 public class TagDAO extends BaseDAO<Tag, TagDTO> {
@@ -18,20 +24,34 @@ public class TagDAO extends BaseDAO<Tag, TagDTO> {
     private static final String TAGS_BY_PAGE_KEY_TEMPLATE = "tag:page:%d";
     private static final String PAGES_BY_TAG_KEY_TEMPLATE = "tag:name:%s:pages";
     private static final TypeReference<List<TagDTO>> TAG_LIST_TYPE = new TypeReference<>() {};
+    static final String TAG_CLOUD_KEY = "tag:cloud";
+    private static final int TAG_CLOUD_CACHE_SIZE = 100;
     private static final TypeReference<List<Page>> PAGE_LIST_TYPE = new TypeReference<>() {};
+    private static final TypeReference<List<TagCountDTO>> TAG_COUNT_LIST_TYPE = new TypeReference<>() {};
+
+    private final ReferenceDataRegistry referenceData;
 
     public TagDAO(SessionFactory sessionFactory) {
         super(sessionFactory);
+        this.referenceData = ReferenceDataRegistry.getInstance(sessionFactory);
     }
 
     @Override
     protected TagDTO entityToDTO(Tag entity) {
-        if (entity == null) return null;
-        return new TagDTO(entity.getId(), entity.getName(), entity.getDescription());
+        return toDTO(entity);
     }
 
     @Override
     protected Tag dtoToEntity(TagDTO dto) {
+        return toEntity(dto);
+    }
+
+    static TagDTO toDTO(Tag entity) {
+        if (entity == null) return null;
+        return new TagDTO(entity.getId(), entity.getName(), entity.getDescription());
+    }
+
+    static Tag toEntity(TagDTO dto) {
         if (dto == null) return null;
         Tag tag = new Tag();
         tag.setId(dto.getId());
@@ -54,11 +74,23 @@ public class TagDAO extends BaseDAO<Tag, TagDTO> {
             }
         }
         Tag saved = super.save(tag);
+        referenceData.tagChanged(toDTO(saved));
         evictTagCaches(saved);
         return saved;
     }
 
+    @Override
+    public Tag findById(Class<Tag> clazz, Long id) {
+        TagDTO known = referenceData.tag(id);
+        return known != null ? toEntity(known) : super.findById(clazz, id);
+    }
+
+    // Тег, созданный другим узлом до получения уведомления, ищется в БД
     private Tag findByName(String name) {
+        TagDTO known = referenceData.tagByName(name);
+        if (known != null) {
+            return toEntity(known);
+        }
         try (Session session = getSession()) {
             return session.createQuery(
                             "SELECT t FROM Tag t WHERE t.name = :name", Tag.class)
@@ -72,28 +104,90 @@ public class TagDAO extends BaseDAO<Tag, TagDTO> {
 
     @Override
     public Tag update(Tag tag) {
+        TagDTO previous = referenceData.tag(tag.getId());
         Tag updated = super.update(tag);
+        referenceData.tagChanged(toDTO(updated));
         evictTagCaches(updated);
+        if (previous != null && !Objects.equals(previous.getName(), updated.getName())) {
+            RedisCacheUtil.evict(pagesByTagKey(previous.getName()));
+        }
         return updated;
     }
 
+    // Тег из снимка справочников не знает своих страниц, поэтому они берутся из page_tags
     @Override
     public void delete(Tag tag) {
-        Set<Page> relatedPages = tag.getPages() != null ? new HashSet<>(tag.getPages()) : Set.of();
+        List<Long> pageIds = tag.getId() != null ? taggedPageIds(tag.getId()) : List.of();
         String name = tag.getName();
         super.delete(tag);
+        referenceData.tagDeleted(tag.getId());
         RedisCacheUtil.evict(ALL_TAGS_KEY);
+        RedisCacheUtil.evict(TAG_CLOUD_KEY);
         if (name != null) {
             RedisCacheUtil.evict(pagesByTagKey(name));
         }
-        for (Page page : relatedPages) {
-            if (page != null && page.getId() != null) {
-                RedisCacheUtil.evict(tagsByPageKey(page.getId()));
+        for (Long pageId : pageIds) {
+            RedisCacheUtil.evict(tagsByPageKey(pageId));
+        }
+    }
+
+    // Поисковые документы страниц содержат имя тега: при удалении и переименовании тега
+    // их переиндексирует получатель outbox
+    @Override
+    protected void recordRelatedChanges(Session session, OutboxEventType type, Tag tag) {
+        if (type == OutboxEventType.ENTITY_DELETED && tag.getId() != null) {
+            // Строки page_tags удаляются в той же транзакции до удаления тега
+            List<Long> pageIds = session.createNativeQuery(
+                            "DELETE FROM page_tags WHERE tag_id = :tagId RETURNING page_id", Long.class)
+                    .setParameter("tagId", tag.getId())
+                    .list();
+            for (Long pageId : pageIds) {
+                recordPageTagsChanged(session, pageId, tag.getName());
+            }
+        } else if (type == OutboxEventType.ENTITY_UPDATED && tag.getId() != null) {
+            // Тег, которого ещё нет в снимке, мог быть переименован: страницы переиндексируются на всякий случай
+            TagDTO previous = referenceData.tag(tag.getId());
+            if (previous != null && Objects.equals(previous.getName(), tag.getName())) {
+                return;
+            }
+            String previousName = previous != null ? previous.getName() : tag.getName();
+            for (Long pageId : taggedPageIds(session, tag.getId())) {
+                recordPageTagsChanged(session, pageId, previousName);
             }
         }
     }
 
+    private List<Long> taggedPageIds(Long tagId) {
+        try (Session session = getSession()) {
+            return taggedPageIds(session, tagId);
+        }
+    }
+
+    private static List<Long> taggedPageIds(Session session, Long tagId) {
+        return session.createNativeQuery("SELECT page_id FROM page_tags WHERE tag_id = :tagId", Long.class)
+                .setParameter("tagId", tagId)
+                .list();
+    }
+
+    @Override
+    protected List<String> outboxCacheKeys(Tag tag) {
+        return tag.getName() != null
+                ? List.of(ALL_TAGS_KEY, TAG_CLOUD_KEY, pagesByTagKey(tag.getName()))
+                : List.of(ALL_TAGS_KEY, TAG_CLOUD_KEY);
+    }
+
     public List<Tag> getAllTags() {
+        return timer("getAllTags").time(() -> doGetAllTags());
+    }
+
+    private List<Tag> doGetAllTags() {
+        Collection<TagDTO> known = referenceData.snapshot().tagsById().values();
+        if (!known.isEmpty()) {
+            return known.stream()
+                    .sorted(Comparator.comparing(TagDTO::getId))
+                    .map(TagDAO::toEntity)
+                    .collect(Collectors.toList());
+        }
         List<TagDTO> cachedDTOs = RedisCacheUtil.getValue(ALL_TAGS_KEY, TAG_LIST_TYPE);
         if (cachedDTOs != null) {
             return cachedDTOs.stream().map(this::dtoToEntity).collect(Collectors.toList());
@@ -107,6 +201,10 @@ public class TagDAO extends BaseDAO<Tag, TagDTO> {
     }
 
     public List<Tag> getTagsByPageId(Long pageId) {
+        return timer("getTagsByPageId").time(() -> doGetTagsByPageId(pageId));
+    }
+
+    private List<Tag> doGetTagsByPageId(Long pageId) {
         String key = tagsByPageKey(pageId);
         List<TagDTO> cachedDTOs = RedisCacheUtil.getValue(key, TAG_LIST_TYPE);
         if (cachedDTOs != null) {
@@ -128,6 +226,10 @@ public class TagDAO extends BaseDAO<Tag, TagDTO> {
     }
 
     public List<Page> findPagesByTag(String tagName) {
+        return timer("findPagesByTag").time(() -> doFindPagesByTag(tagName));
+    }
+
+    private List<Page> doFindPagesByTag(String tagName) {
         String key = pagesByTagKey(tagName);
         List<Page> cached = RedisCacheUtil.getValue(key, PAGE_LIST_TYPE);
         if (cached != null) {
@@ -147,6 +249,164 @@ public class TagDAO extends BaseDAO<Tag, TagDTO> {
         }
     }
 
+    // page_tags и счётчик tag_stats меняются в одной транзакции
+    public boolean addTagToPage(Long pageId, String tagName) {
+        return timer("addTagToPage").time(() -> doAddTagToPage(pageId, tagName));
+    }
+
+    private record TagLink(Tag created, boolean added) {
+    }
+
+    // Новый тег создаётся в той же транзакции через ON CONFLICT: при одновременном добавлении одного имени
+    // проигравшая транзакция не нарушает уникальность, а читает id уже созданного тега
+    private boolean doAddTagToPage(Long pageId, String tagName) {
+        Tag known = findByName(tagName);
+        TagLink link = inTransaction(session -> {
+            Tag created = null;
+            Long tagId;
+            if (known != null) {
+                tagId = known.getId();
+            } else {
+                Long createdId = session.createNativeQuery(
+                                "INSERT INTO tags (name) VALUES (:name) ON CONFLICT (name) DO NOTHING RETURNING id",
+                                Long.class)
+                        .setParameter("name", tagName)
+                        .uniqueResult();
+                if (createdId != null) {
+                    created = new Tag();
+                    created.setId(createdId);
+                    created.setName(tagName);
+                    List<String> keys = new ArrayList<>(outboxCacheKeys(created));
+                    keys.add(entityKey(Tag.class, createdId));
+                    OutboxEvents.record(session, Tag.class.getSimpleName(), createdId,
+                            OutboxEventType.ENTITY_SAVED, null, keys);
+                    tagId = createdId;
+                } else {
+                    tagId = session.createNativeQuery("SELECT id FROM tags WHERE name = :name", Long.class)
+                            .setParameter("name", tagName)
+                            .uniqueResult();
+                }
+            }
+            int inserted = session.createNativeMutationQuery(
+                            "INSERT INTO page_tags (page_id, tag_id) VALUES (:pageId, :tagId) ON CONFLICT DO NOTHING")
+                    .setParameter("pageId", pageId)
+                    .setParameter("tagId", tagId)
+                    .executeUpdate();
+            if (inserted > 0) {
+                recordPageTagsChanged(session, pageId, tagName);
+                session.createNativeMutationQuery(
+                                "INSERT INTO tag_stats (tag_id, page_count) VALUES (:tagId, 1) " +
+                                        "ON CONFLICT (tag_id) DO UPDATE SET page_count = tag_stats.page_count + 1")
+                        .setParameter("tagId", tagId)
+                        .executeUpdate();
+            }
+            return new TagLink(created, inserted > 0);
+        });
+        if (link.created() != null) {
+            referenceData.tagChanged(toDTO(link.created()));
+            evictTagCaches(link.created());
+        }
+        if (link.added()) {
+            evictPageTagCaches(pageId, tagName);
+        }
+        return link.added();
+    }
+
+    public boolean removeTagFromPage(Long pageId, String tagName) {
+        return timer("removeTagFromPage").time(() -> doRemoveTagFromPage(pageId, tagName));
+    }
+
+    private boolean doRemoveTagFromPage(Long pageId, String tagName) {
+        Tag tag = findByName(tagName);
+        if (tag == null) {
+            return false;
+        }
+        Long tagId = tag.getId();
+        boolean removed = inTransaction(session -> {
+            int deleted = session.createNativeMutationQuery(
+                            "DELETE FROM page_tags WHERE page_id = :pageId AND tag_id = :tagId")
+                    .setParameter("pageId", pageId)
+                    .setParameter("tagId", tagId)
+                    .executeUpdate();
+            if (deleted > 0) {
+                recordPageTagsChanged(session, pageId, tagName);
+                session.createNativeMutationQuery(
+                                "UPDATE tag_stats SET page_count = page_count - 1 WHERE tag_id = :tagId")
+                        .setParameter("tagId", tagId)
+                        .executeUpdate();
+            }
+            return deleted > 0;
+        });
+        if (removed) {
+            evictPageTagCaches(pageId, tagName);
+        }
+        return removed;
+    }
+
+    public List<TagCountDTO> getTopTags(int limit) {
+        return timer("getTopTags").time(() -> doGetTopTags(limit));
+    }
+
+    private List<TagCountDTO> doGetTopTags(int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        if (limit <= TAG_CLOUD_CACHE_SIZE) {
+            List<TagCountDTO> cached = RedisCacheUtil.getValue(TAG_CLOUD_KEY, TAG_COUNT_LIST_TYPE);
+            if (cached == null) {
+                cached = loadTopTags(TAG_CLOUD_CACHE_SIZE);
+                RedisCacheUtil.cacheValue(TAG_CLOUD_KEY, cached);
+            }
+            return cached.subList(0, Math.min(limit, cached.size()));
+        }
+        return loadTopTags(limit);
+    }
+
+    private List<TagCountDTO> loadTopTags(int limit) {
+        try (Session session = getSession()) {
+            List<Object[]> rows = session.createNativeQuery(
+                            "SELECT t.id, t.name, s.page_count FROM tag_stats s JOIN tags t ON t.id = s.tag_id " +
+                                    "WHERE s.page_count > 0 ORDER BY s.page_count DESC, s.tag_id LIMIT :limit",
+                            Object[].class)
+                    .setParameter("limit", limit)
+                    .list();
+            return rows.stream()
+                    .map(row -> new TagCountDTO(((Number) row[0]).longValue(), (String) row[1], ((Number) row[2]).longValue()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // Постраничная выдача по ключу: следующая страница начинается после последнего полученного id
+    public List<PageSummaryDTO> findPageSummariesByTag(String tagName, Long afterPageId, int limit) {
+        return timer("findPageSummariesByTag").time(() -> doFindPageSummariesByTag(tagName, afterPageId, limit));
+    }
+
+    private List<PageSummaryDTO> doFindPageSummariesByTag(String tagName, Long afterPageId, int limit) {
+        try (Session session = getSession()) {
+            return session.createQuery(
+                            "SELECT new db.dto.PageSummaryDTO(p.id, p.title) FROM Page p JOIN p.tags t " +
+                                    "WHERE t.name = :tagName AND p.id > :afterPageId ORDER BY p.id",
+                            PageSummaryDTO.class)
+                    .setParameter("tagName", tagName)
+                    .setParameter("afterPageId", afterPageId != null ? afterPageId : 0L)
+                    .setMaxResults(limit)
+                    .list();
+        }
+    }
+
+    private void evictPageTagCaches(Long pageId, String tagName) {
+        RedisCacheUtil.evictAll(pageTagKeys(pageId, tagName));
+    }
+
+    private void recordPageTagsChanged(Session session, Long pageId, String tagName) {
+        OutboxEvents.record(session, Page.class.getSimpleName(), pageId, OutboxEventType.PAGE_TAGS_CHANGED,
+                pageId, pageTagKeys(pageId, tagName));
+    }
+
+    private static List<String> pageTagKeys(Long pageId, String tagName) {
+        return List.of(TAG_CLOUD_KEY, tagsByPageKey(pageId), pagesByTagKey(tagName));
+    }
+
     private void evictTagCaches(Tag tag) {
         RedisCacheUtil.evict(ALL_TAGS_KEY);
         if (tag.getName() != null) {
@@ -161,11 +421,11 @@ public class TagDAO extends BaseDAO<Tag, TagDTO> {
         }
     }
 
-    private String tagsByPageKey(Long pageId) {
+    static String tagsByPageKey(Long pageId) {
         return String.format(TAGS_BY_PAGE_KEY_TEMPLATE, pageId);
     }
 
-    private String pagesByTagKey(String tagName) {
+    static String pagesByTagKey(String tagName) {
         return String.format(PAGES_BY_TAG_KEY_TEMPLATE, tagName);
     }
 }
@@ -1,6 +1,7 @@
 package db.dao;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import db.dto.RoleDTO;
 import db.dto.UserDTO;
 import db.entities.Role;
 import db.entities.User;
@@ -17,8 +18,11 @@ public class UserDAO extends BaseDAO<User, UserDTO> {
     private static final TypeReference<List<UserDTO>> USER_LIST_TYPE = new TypeReference<>() {
     };
 
+    private final ReferenceDataRegistry referenceData;
+
     public UserDAO(SessionFactory sessionFactory) {
         super(sessionFactory);
+        this.referenceData = ReferenceDataRegistry.getInstance(sessionFactory);
     }
 
     @Override
@@ -34,7 +38,8 @@ public class UserDAO extends BaseDAO<User, UserDTO> {
                 entity.getCreatedAt(),
                 entity.getUpdatedAt(),
                 roleId,
-                roleName
+                roleName,
+                entity.getVersion()
         );
     }
 
@@ -48,8 +53,13 @@ public class UserDAO extends BaseDAO<User, UserDTO> {
         user.setPassword(dto.getPassword());
         user.setCreatedAt(dto.getCreatedAt());
         user.setUpdatedAt(dto.getUpdatedAt());
+        user.setVersion(dto.getVersion());
 
-        if (dto.getRoleId() != null) {
+        RoleDTO knownRole = referenceData.role(dto.getRoleId());
+        if (knownRole != null) {
+            user.setRole(RoleDAO.toEntity(knownRole));
+        } else if (dto.getRoleId() != null) {
+            // Роль, созданная другим узлом до получения уведомления
             try (Session session = getSession()) {
                 Role role = session.find(Role.class, dto.getRoleId());
                 if (role != null) {
@@ -81,7 +91,7 @@ public class UserDAO extends BaseDAO<User, UserDTO> {
         }
         User saved = super.save(user);
         RedisCacheUtil.evict(ALL_USERS_KEY);
-        RedisCacheUtil.cacheValue(usernameKey(saved.getUsername()), entityToDTO(saved));
+        cacheUnder(usernameKey(saved.getUsername()), saved);
         return saved;
     }
 
@@ -90,7 +100,7 @@ public class UserDAO extends BaseDAO<User, UserDTO> {
         User updated = super.update(user);
         RedisCacheUtil.evict(ALL_USERS_KEY);
         if (updated.getUsername() != null) {
-            RedisCacheUtil.cacheValue(usernameKey(updated.getUsername()), entityToDTO(updated));
+            cacheUnder(usernameKey(updated.getUsername()), updated);
         }
         return updated;
     }
@@ -105,14 +115,25 @@ public class UserDAO extends BaseDAO<User, UserDTO> {
         }
     }
 
+    @Override
+    protected List<String> outboxCacheKeys(User user) {
+        return user.getUsername() != null
+                ? List.of(ALL_USERS_KEY, usernameKey(user.getUsername()))
+                : List.of(ALL_USERS_KEY);
+    }
+
     public User findByUsername(String username) {
+        return timer("findByUsername").time(() -> doFindByUsername(username));
+    }
+
+    private User doFindByUsername(String username) {
         String key = usernameKey(username);
         UserDTO cachedDTO = RedisCacheUtil.getValue(key, UserDTO.class);
         if (cachedDTO != null) {
             return dtoToEntity(cachedDTO);
         }
         try (Session session = getSession()) {
-            User user = session.createQuery("FROM User u WHERE u.username = :username", User.class)
+            User user = session.createNamedQuery("User.findByUsername", User.class)
                     .setParameter("username", username)
                     .uniqueResult();
             if (user != null) {
@@ -124,6 +145,10 @@ public class UserDAO extends BaseDAO<User, UserDTO> {
 
 
     public List<User> getAllUsers() {
+        return timer("getAllUsers").time(() -> doGetAllUsers());
+    }
+
+    private List<User> doGetAllUsers() {
         List<UserDTO> cachedDTOs = RedisCacheUtil.getValue(ALL_USERS_KEY, USER_LIST_TYPE);
         if (cachedDTOs != null) {
             return cachedDTOs.stream().map(this::dtoToEntity).collect(Collectors.toList());
@@ -14,4 +14,5 @@ public class BlockDTO {
     private String content;
     private Integer position;
     private boolean isVisible;
+    private Long version;
 }
\ No newline at end of file
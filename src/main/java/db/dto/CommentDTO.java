@@ -17,4 +17,5 @@ public class CommentDTO {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private boolean resolved;
+    private Long version;
 }
\ No newline at end of file
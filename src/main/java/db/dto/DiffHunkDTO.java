@@ -0,0 +1,22 @@
+package db.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// lines — строки в формате unified diff (' ', '-', '+'); words — пословный diff тех же строк, null для слишком больших hunk'ов и после истечения срока сравнения
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DiffHunkDTO {
+    private int fromLine;
+    private int fromCount;
+    private int toLine;
+    private int toCount;
+    private List<String> lines;
+    private List<DiffSpanDTO> words;
+    // Сравнение прервано по сроку: hunk может быть крупнее минимального, words — отсутствовать
+    private boolean truncated;
+}
@@ -0,0 +1,14 @@
+package db.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// op: '=' — общий текст, '-' — удалён, '+' — добавлен
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DiffSpanDTO {
+    private char op;
+    private String text;
+}
@@ -13,4 +13,7 @@ public class LinkDTO {
     private String url;
     private String title;
     private String description;
+    private boolean internal;
+    private String targetSlug;
+    private Long targetPageId;
 }
\ No newline at end of file
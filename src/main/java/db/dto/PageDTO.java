@@ -15,4 +15,5 @@ public class PageDTO {
     private String slug;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    private Long version;
 }
\ No newline at end of file
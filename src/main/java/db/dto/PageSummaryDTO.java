@@ -0,0 +1,13 @@
+package db.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageSummaryDTO {
+    private Long id;
+    private String title;
+}
@@ -11,4 +11,5 @@ public class RoleDTO {
     private Long id;
     private String name;
     private String description;
+    private long permissions;
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package db.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchHitDTO {
+    private Long id;
+    private String slug;
+    private String title;
+    private double score;
+    private List<String> highlights;
+}
@@ -0,0 +1,17 @@
+package db.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// afterScore и afterId передаются в следующий запрос; null, если больше результатов нет
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchResultDTO {
+    private List<SearchHitDTO> hits;
+    private Double afterScore;
+    private Long afterId;
+}
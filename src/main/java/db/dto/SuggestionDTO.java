@@ -0,0 +1,17 @@
+package db.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// type — TITLE, SLUG или TAG; у тегов pageId и slug не заполнены
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionDTO {
+    private String text;
+    private String type;
+    private Long pageId;
+    private String slug;
+    private long weight;
+}
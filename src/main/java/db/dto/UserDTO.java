@@ -18,4 +18,5 @@ public class UserDTO {
     private LocalDateTime updatedAt;
     private Long roleId;
     private String roleName;
+    private Long version;
 }
\ No newline at end of file
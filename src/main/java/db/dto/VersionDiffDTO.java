@@ -0,0 +1,21 @@
+package db.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionDiffDTO {
+    private Long pageId;
+    private Long fromVersionId;
+    private Integer fromVersionNumber;
+    private Long toVersionId;
+    private Integer toVersionNumber;
+    private List<DiffHunkDTO> hunks;
+    // Хотя бы один hunk посчитан с упрощением по сроку; такой diff не кэшируется
+    private boolean truncated;
+}
@@ -8,7 +8,7 @@ import java.time.LocalDateTime;
 @Data
 @Entity
 @Table(name = "comments")
-public class Comment {
+public class Comment implements Versioned {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -21,6 +21,10 @@ public class Comment {
     @JoinColumn(name = "author_id", nullable = false)
     private User author;
 
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     @Column(nullable = false, columnDefinition = "TEXT")
     private String text;
 
@@ -5,6 +5,7 @@ import lombok.Data;
 
 @Data
 @Entity
+@NamedQuery(name = "Heading.byPage", query = "FROM Heading h WHERE h.page.id = :pageId ORDER BY h.position")
 @Table(name = "headings")
 public class Heading {
     @Id
@@ -21,4 +21,13 @@ public class Link {
     private String title;
 
     private String description;
+
+    @Column(nullable = false)
+    private boolean internal;
+
+    @Column(name = "target_slug")
+    private String targetSlug;
+
+    @Column(name = "target_page_id")
+    private Long targetPageId;
 }
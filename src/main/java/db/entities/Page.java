@@ -10,12 +10,17 @@ import java.util.Set;
 
 @Data
 @Entity
+@NamedQuery(name = "Page.findBySlug", query = "FROM Page p WHERE p.slug = :slug")
 @Table(name = "pages")
-public class Page {
+public class Page implements Versioned {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     @Column(nullable = false)
     private String title;
 
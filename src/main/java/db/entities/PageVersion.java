@@ -9,6 +9,12 @@ import java.util.List;
 
 @Data
 @Entity
+@NamedQuery(name = "PageVersion.byPageDesc",
+        query = "FROM PageVersion v WHERE v.page.id = :pageId ORDER BY v.versionNumber DESC")
+@NamedQuery(name = "PageVersion.byPage",
+        query = "FROM PageVersion v WHERE v.page.id = :pageId ORDER BY v.versionNumber")
+@NamedQuery(name = "PageVersion.maxVersionNumber",
+        query = "SELECT max(v.versionNumber) FROM PageVersion v WHERE v.page.id = :pageId")
 @Table(name = "page_versions")
 public class PageVersion {
     @Id
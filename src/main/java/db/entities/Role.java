@@ -15,4 +15,8 @@ public class Role {
     private String name;
 
     private String description;
+
+    // Маска db.security.Permission
+    @Column(nullable = false)
+    private long permissions;
 }
@@ -8,12 +8,17 @@ import java.util.Set;
 
 @Data
 @Entity
+@NamedQuery(name = "User.findByUsername", query = "FROM User u WHERE u.username = :username")
 @Table(name = "users")
-public class User {
+public class User implements Versioned {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     @Column(unique = true, nullable = false)
     private String username;
 
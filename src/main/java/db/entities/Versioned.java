@@ -0,0 +1,5 @@
+package db.entities;
+
+public interface Versioned {
+    Long getVersion();
+}
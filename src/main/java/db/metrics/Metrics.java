@@ -0,0 +1,158 @@
+package db.metrics;
+
+import db.util.Backend;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Реестр таймеров, счётчиков и показателей процесса. Экспортируется через JMX (MetricsMBean)
+// и текстовую точку MetricsHttpServer. Запись не берёт блокировок, поэтому слой можно держать включённым под нагрузкой.
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("docman.metrics.enabled", "true"));
+    public static final String OBJECT_NAME = "docman:type=Metrics";
+
+    private static final ConcurrentMap<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+
+    static {
+        for (Backend backend : Backend.values()) {
+            String prefix = "backend." + backend.name().toLowerCase(Locale.ROOT);
+            gauge(prefix + ".permits.limit", backend::getLimit);
+            gauge(prefix + ".permits.available", backend::getAvailablePermits);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static Timer timer(String name) {
+        Timer timer = TIMERS.get(name);
+        return timer != null ? timer : TIMERS.computeIfAbsent(name, n -> new Timer(n, ENABLED));
+    }
+
+    public static LongAdder counter(String name) {
+        LongAdder counter = COUNTERS.get(name);
+        return counter != null ? counter : COUNTERS.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    // Оборачивает реализацию интерфейса: у каждого метода свой таймер prefix.имяМетода.
+    // Перегруженные методы делят один таймер
+    @SuppressWarnings("unchecked")
+    public static <T> T instrument(Class<T> type, T target, String prefix) {
+        if (!ENABLED) {
+            return target;
+        }
+        Map<Method, Timer> timers = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            timers.put(method, timer(prefix + "." + method.getName()));
+        }
+        InvocationHandler handler = (proxy, method, args) -> {
+            Timer timer = timers.get(method);
+            if (timer == null) {
+                return invoke(target, method, args);
+            }
+            long started = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invoke(target, method, args);
+                failed = false;
+                return result;
+            } finally {
+                timer.record(System.nanoTime() - started, failed);
+            }
+        };
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Счётчики Hibernate Statistics: число подготовленных SQL-выражений, запросов, загрузок и транзакций
+    public static void bindHibernate(SessionFactory sessionFactory) {
+        if (!ENABLED) {
+            return;
+        }
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.setStatisticsEnabled(true);
+        gauge("hibernate.statements.prepared", statistics::getPrepareStatementCount);
+        gauge("hibernate.statements.closed", statistics::getCloseStatementCount);
+        gauge("hibernate.queries.executed", statistics::getQueryExecutionCount);
+        gauge("hibernate.queries.maxMillis", statistics::getQueryExecutionMaxTime);
+        gauge("hibernate.entities.loaded", statistics::getEntityLoadCount);
+        gauge("hibernate.entities.fetched", statistics::getEntityFetchCount);
+        gauge("hibernate.collections.fetched", statistics::getCollectionFetchCount);
+        gauge("hibernate.sessions.opened", statistics::getSessionOpenCount);
+        gauge("hibernate.connections.obtained", statistics::getConnectCount);
+        gauge("hibernate.transactions", statistics::getTransactionCount);
+        gauge("hibernate.flushes", statistics::getFlushCount);
+        gauge("hibernate.optimisticFailures", statistics::getOptimisticFailureCount);
+    }
+
+    public static List<Timer> timers() {
+        return new TreeMap<>(TIMERS).values().stream().toList();
+    }
+
+    // Счётчики и показатели вместе, по имени
+    public static Map<String, Long> values() {
+        Map<String, Long> values = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> values.put(name, counter.sum()));
+        GAUGES.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return values;
+    }
+
+    // Плоское представление для JMX: у таймера атрибуты имя.count, имя.errors, имя.meanMicros, имя.p99Micros и т.д.
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        for (Timer timer : timers()) {
+            long count = timer.getCount();
+            snapshot.put(timer.getName() + ".count", count);
+            snapshot.put(timer.getName() + ".errors", timer.getErrors());
+            snapshot.put(timer.getName() + ".meanMicros", count == 0 ? 0 : timer.getTotalNanos() / count / 1_000);
+            snapshot.put(timer.getName() + ".p50Micros", timer.getPercentileNanos(0.5) / 1_000);
+            snapshot.put(timer.getName() + ".p99Micros", timer.getPercentileNanos(0.99) / 1_000);
+            snapshot.put(timer.getName() + ".maxMicros", timer.getMaxNanos() / 1_000);
+        }
+        snapshot.putAll(values());
+        return snapshot;
+    }
+
+    public static synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(), name);
+            }
+        } catch (JMException e) {
+            throw new RuntimeException("Не удалось зарегистрировать MBean метрик", e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package db.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Метрики в текстовом формате Prometheus по GET /metrics. Порт задаётся docman.metrics.port, 0 — точка не запускается.
+// По умолчанию слушает только loopback; другой адрес задаётся docman.metrics.host
+public class MetricsHttpServer implements AutoCloseable {
+    public static final int PORT = Integer.getInteger("docman.metrics.port", 0);
+    public static final String HOST = System.getProperty("docman.metrics.host", "127.0.0.1");
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private MetricsHttpServer(String host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/metrics", this::handle);
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Метрики доступны на http://" + host + ":" + getPort() + "/metrics");
+    }
+
+    public static MetricsHttpServer start(int port) {
+        return start(HOST, port);
+    }
+
+    public static MetricsHttpServer start(String host, int port) {
+        try {
+            return new MetricsHttpServer(host, port);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось запустить точку метрик на " + host + ":" + port, e);
+        }
+    }
+
+    // null, если порт не задан
+    public static MetricsHttpServer startIfConfigured() {
+        return PORT > 0 ? start(PORT) : null;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    static String render() {
+        StringBuilder text = new StringBuilder(8_192);
+        text.append("# TYPE docman_calls_total counter\n");
+        text.append("# TYPE docman_errors_total counter\n");
+        text.append("# TYPE docman_duration_seconds summary\n");
+        text.append("# TYPE docman_duration_seconds_max gauge\n");
+        for (Timer timer : Metrics.timers()) {
+            String label = "{timer=\"" + timer.getName() + "\"";
+            line(text, "docman_calls_total", label + "}", timer.getCount());
+            line(text, "docman_errors_total", label + "}", timer.getErrors());
+            for (double quantile : QUANTILES) {
+                line(text, "docman_duration_seconds", label + ",quantile=\"" + quantile + "\"}",
+                        seconds(timer.getPercentileNanos(quantile)));
+            }
+            line(text, "docman_duration_seconds_sum", label + "}", seconds(timer.getTotalNanos()));
+            line(text, "docman_duration_seconds_count", label + "}", timer.getCount());
+            line(text, "docman_duration_seconds_max", label + "}", seconds(timer.getMaxNanos()));
+        }
+        for (Map.Entry<String, Long> entry : Metrics.values().entrySet()) {
+            line(text, "docman_" + entry.getKey().replaceAll("[^A-Za-z0-9_]", "_"), "", entry.getValue());
+        }
+        return text.toString();
+    }
+
+    private static void line(StringBuilder text, String name, String labels, Object value) {
+        text.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,82 @@
+package db.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+// SQL-выражения и команды Redis одной операции сервиса. Запись идёт и из потоков, которым операцию передал OperationTracer.propagate
+public class OperationTrace {
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final String operation;
+    private final ConcurrentMap<String, LongAdder> shapes = new ConcurrentHashMap<>();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder redisCommands = new LongAdder();
+    private volatile boolean closed;
+
+    OperationTrace(String operation) {
+        this.operation = operation;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    public long getRedisCommands() {
+        return redisCommands.sum();
+    }
+
+    // Число выполнений каждой формы SQL-выражения
+    public Map<String, Long> getShapes() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        shapes.forEach((shape, count) -> counts.put(shape, count.sum()));
+        return counts;
+    }
+
+    // Формы, повторившиеся не меньше threshold раз: признак N+1
+    public Map<String, Long> getRepeatedShapes(int threshold) {
+        Map<String, Long> repeated = new LinkedHashMap<>();
+        shapes.forEach((shape, count) -> {
+            long value = count.sum();
+            if (value >= threshold) {
+                repeated.put(shape, value);
+            }
+        });
+        return repeated;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    void statement(String sql) {
+        statements.increment();
+        shapes.computeIfAbsent(shape(sql), s -> new LongAdder()).increment();
+    }
+
+    void redisCommand() {
+        redisCommands.increment();
+    }
+
+    // Литералы и списки параметров заменяются на ?, чтобы запросы, различающиеся только значениями, совпали
+    static String shape(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = PARAMETER_LIST.matcher(shape).replaceAll("(?)");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+    }
+}
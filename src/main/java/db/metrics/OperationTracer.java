@@ -0,0 +1,165 @@
+package db.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+// Считает SQL-выражения и команды Redis каждой операции сервиса, ищет повторяющиеся формы запросов (N+1)
+// и проверяет бюджеты операций.
+//
+// docman.trace.mode     OFF — без трассировки, LOG — предупреждения в консоль, STRICT — исключение StatementBudgetException
+// docman.trace.repeat   сколько выполнений одной формы запроса за операцию считается N+1 (5)
+// docman.trace.budgets  бюджеты операций: getPageById=2/2,getFullPage=12/10 — SQL-выражений/команд Redis
+public final class OperationTracer {
+    public enum Mode {OFF, LOG, STRICT}
+
+    public static final Mode MODE = Mode.valueOf(System.getProperty("docman.trace.mode", "OFF").toUpperCase(Locale.ROOT));
+    public static final int REPEAT_THRESHOLD = Integer.getInteger("docman.trace.repeat", 5);
+
+    // Другие потоки пишут в трассу операции только через propagate: наследуемая трасса осталась бы
+    // у долгоживущих потоков, созданных во время операции, и после её завершения
+    private static final ThreadLocal<OperationTrace> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<OperationTrace> LAST = new ThreadLocal<>();
+    private static final ConcurrentMap<String, Budget> BUDGETS = new ConcurrentHashMap<>();
+
+    static {
+        String budgets = System.getProperty("docman.trace.budgets", "");
+        for (String part : budgets.split(",")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            String[] pair = part.trim().split("=");
+            String[] limits = pair.length == 2 ? pair[1].split("/") : new String[0];
+            if (limits.length != 2) {
+                throw new RuntimeException("Неверный бюджет '" + part + "', ожидается операция=sql/redis");
+            }
+            budget(pair[0].trim(), Integer.parseInt(limits[0].trim()), Integer.parseInt(limits[1].trim()));
+        }
+    }
+
+    private OperationTracer() {
+    }
+
+    public record Budget(int maxStatements, int maxRedisCommands) {
+    }
+
+    public static void budget(String operation, int maxStatements, int maxRedisCommands) {
+        BUDGETS.put(operation, new Budget(maxStatements, maxRedisCommands));
+    }
+
+    // Трасса последней завершённой операции текущего потока, для проверок в тестах
+    public static OperationTrace lastTrace() {
+        return LAST.get();
+    }
+
+    // Каждый вызов метода интерфейса — отдельная операция; вложенные вызовы считаются частью внешней
+    @SuppressWarnings("unchecked")
+    public static <T> T wrap(Class<T> type, T target) {
+        if (MODE == Mode.OFF) {
+            return target;
+        }
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class || current() != null) {
+                return invoke(target, method, args);
+            }
+            OperationTrace trace = new OperationTrace(method.getName());
+            CURRENT.set(trace);
+            Object result;
+            try {
+                result = invoke(target, method, args);
+            } finally {
+                trace.close();
+                CURRENT.remove();
+                LAST.set(trace);
+            }
+            check(trace);
+            return result;
+        };
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Задачи, отправленные через возвращённый Executor, пишут в трассу текущей операции
+    // (например, параллельная загрузка FullPage). Вне операции возвращается тот же executor
+    public static Executor propagate(Executor executor) {
+        OperationTrace trace = current();
+        if (trace == null) {
+            return executor;
+        }
+        return task -> executor.execute(() -> {
+            OperationTrace previous = CURRENT.get();
+            CURRENT.set(trace);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        });
+    }
+
+    // Задача, выполняющаяся после завершения операции, в её трассу не пишет
+    private static OperationTrace current() {
+        OperationTrace trace = CURRENT.get();
+        return trace == null || trace.isClosed() ? null : trace;
+    }
+
+    static void statement(String sql) {
+        OperationTrace trace = current();
+        if (trace != null) {
+            trace.statement(sql);
+        }
+    }
+
+    public static void redisCommand() {
+        OperationTrace trace = current();
+        if (trace != null) {
+            trace.redisCommand();
+        }
+    }
+
+    private static void check(OperationTrace trace) {
+        List<String> problems = new ArrayList<>();
+        for (Map.Entry<String, Long> repeated : trace.getRepeatedShapes(REPEAT_THRESHOLD).entrySet()) {
+            Metrics.counter("trace.nPlusOne").increment();
+            problems.add("N+1: " + repeated.getValue() + " раз " + repeated.getKey());
+        }
+        Budget budget = BUDGETS.get(trace.getOperation());
+        if (budget != null) {
+            if (trace.getStatements() > budget.maxStatements()) {
+                Metrics.counter("trace.budgetExceeded").increment();
+                problems.add("SQL-выражений " + trace.getStatements() + " при бюджете " + budget.maxStatements());
+            }
+            if (trace.getRedisCommands() > budget.maxRedisCommands()) {
+                Metrics.counter("trace.budgetExceeded").increment();
+                problems.add("команд Redis " + trace.getRedisCommands() + " при бюджете " + budget.maxRedisCommands());
+            }
+        }
+        if (problems.isEmpty()) {
+            return;
+        }
+        String message = "Операция " + trace.getOperation() + ": " + String.join("; ", problems);
+        if (MODE == Mode.STRICT) {
+            throw new StatementBudgetException(message, trace);
+        }
+        System.out.println("ПРЕДУПРЕЖДЕНИЕ " + message);
+    }
+}
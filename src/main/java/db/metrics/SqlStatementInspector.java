@@ -0,0 +1,13 @@
+package db.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+// Подключается в hibernate.cfg.xml; вне трассируемой операции обходится одним чтением ThreadLocal
+public class SqlStatementInspector implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        OperationTracer.statement(sql);
+        return sql;
+    }
+}
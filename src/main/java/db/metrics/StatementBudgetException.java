@@ -0,0 +1,14 @@
+package db.metrics;
+
+public class StatementBudgetException extends RuntimeException {
+    private final transient OperationTrace trace;
+
+    public StatementBudgetException(String message, OperationTrace trace) {
+        super(message);
+        this.trace = trace;
+    }
+
+    public OperationTrace getTrace() {
+        return trace;
+    }
+}
@@ -0,0 +1,125 @@
+package db.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Счётчик вызовов, ошибок и времени выполнения. Перцентили оцениваются по логарифмическим корзинам
+// (четыре на каждую степень двойки, погрешность до 25%): запись — несколько атомарных инкрементов без блокировок.
+// Выключенный таймер (docman.metrics.enabled=false) только выполняет действие и ничего не записывает.
+public class Timer {
+    private static final int BUCKETS = 256;
+
+    private final String name;
+    private final boolean enabled;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    Timer(String name, boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public <R> R time(Supplier<R> action) {
+        if (!enabled) {
+            return action.get();
+        }
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            R result = action.get();
+            failed = false;
+            return result;
+        } finally {
+            record(System.nanoTime() - started, failed);
+        }
+    }
+
+    public void time(Runnable action) {
+        time(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public void record(long nanos, boolean failed) {
+        if (!enabled) {
+            return;
+        }
+        long value = Math.max(0, nanos);
+        count.increment();
+        if (failed) {
+            errors.increment();
+        }
+        totalNanos.add(value);
+        buckets.incrementAndGet(bucket(value));
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    // Верхняя граница корзины, в которую попадает quantile-я доля вызовов
+    public long getPercentileNanos(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= threshold) {
+                return Math.min(upperBound(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < 4) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - 2)) & 3;
+        return exponent * 4 + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int exponent = bucket / 4;
+        int sub = bucket % 4;
+        return ((5L + sub) << (exponent - 2)) - 1;
+    }
+}
@@ -0,0 +1,13 @@
+package db.outbox;
+
+import db.entities.OutboxEvent;
+import db.util.RedisCacheUtil;
+
+public class CacheInvalidationConsumer implements OutboxConsumer {
+    @Override
+    public void handle(OutboxEvent event, OutboxPayload payload) {
+        if (payload.getCacheKeys() != null && !payload.getCacheKeys().isEmpty()) {
+            RedisCacheUtil.evictAll(payload.getCacheKeys());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package db.outbox;
+
+import db.entities.OutboxEvent;
+
+// Доставка «хотя бы один раз»: обработка должна быть идемпотентной
+public interface OutboxConsumer {
+    void handle(OutboxEvent event, OutboxPayload payload);
+
+    // Вызывается после доставки пачки и до отметки processed_at: получатель, который применяет
+    // изменения асинхронно, должен дождаться их подтверждения или бросить исключение
+    default void flush() {
+    }
+}
@@ -0,0 +1,10 @@
+package db.outbox;
+
+public enum OutboxEventType {
+    ENTITY_SAVED,
+    ENTITY_UPDATED,
+    ENTITY_DELETED,
+    PAGE_VERSION_CREATED,
+    PAGE_TAGS_CHANGED,
+    PAGE_DELETED
+}
@@ -0,0 +1,30 @@
+package db.outbox;
+
+import db.entities.OutboxEvent;
+import db.util.JsonUtil;
+import org.hibernate.Session;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+// Событие сохраняется в сессии вызывающего кода и фиксируется вместе с его транзакцией
+public class OutboxEvents {
+    private OutboxEvents() {
+    }
+
+    public static void record(Session session, String aggregateType, Long aggregateId, OutboxEventType type,
+                              Long pageId, Collection<String> cacheKeys) {
+        OutboxEvent event = new OutboxEvent();
+        event.setAggregateType(aggregateType);
+        event.setAggregateId(aggregateId);
+        event.setEventType(type.name());
+        event.setPayload(JsonUtil.toJson(new OutboxPayload(pageId, List.copyOf(cacheKeys))));
+        event.setCreatedAt(LocalDateTime.now());
+        session.persist(event);
+    }
+
+    public static OutboxPayload payloadOf(OutboxEvent event) {
+        return JsonUtil.fromJson(event.getPayload(), OutboxPayload.class);
+    }
+}
@@ -0,0 +1,16 @@
+package db.outbox;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// pageId заполняется, если изменение затрагивает поисковый документ страницы
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxPayload {
+    private Long pageId;
+    private List<String> cacheKeys;
+}
@@ -0,0 +1,238 @@
+package db.outbox;
+
+import db.entities.OutboxEvent;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Доставляет события из outbox_events подписчикам в порядке id.
+// Пачка захватывается арендой (claimed_until) в короткой транзакции, доставка и OutboxConsumer.flush
+// идут без открытой транзакции и соединения. Отметка processed_at ставится только после успешной доставки
+// всем подписчикам и подтверждения через flush: при сбое аренда снимается или истекает, и событие
+// доставляется повторно.
+// Несколько экземпляров не получают одни и те же события, но порядок событий одной страницы сохраняется
+// только в пределах экземпляра: пока один доставляет старые события страницы, другой может доставить
+// более новые. Подписчики от этого не зависят — они сбрасывают кэш и перечитывают страницу из базы,
+// а не применяют содержимое события. Подписчику, которому нужен строгий порядок, нужен один экземпляр.
+public class OutboxRelay implements AutoCloseable {
+    private static final int BATCH_SIZE = Integer.getInteger("docman.outbox.batch", 200);
+    private static final long POLL_INTERVAL_MILLIS = Long.getLong("docman.outbox.poll.millis", 500);
+    private static final long RETENTION_HOURS = Long.getLong("docman.outbox.retention.hours", 24);
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    // Аренда должна пережить доставку пачки вместе с flush (повторные попытки подписчиков до 30 с)
+    private static final long LEASE_SECONDS = Long.getLong("docman.outbox.lease.seconds", 120);
+
+    private final SessionFactory sessionFactory;
+    private final List<OutboxConsumer> consumers;
+    private final Thread worker;
+    private final AtomicLong deliveredEvents = new AtomicLong();
+    private final AtomicLong failedDeliveries = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong deliveryNanos = new AtomicLong();
+    private volatile boolean running;
+    private long lastPurgeMillis;
+
+    public OutboxRelay(SessionFactory sessionFactory, List<OutboxConsumer> consumers) {
+        this.sessionFactory = sessionFactory;
+        this.consumers = List.copyOf(consumers);
+        this.worker = new Thread(this::run, "docman-outbox-relay");
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        worker.start();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getDeliveredEvents() {
+        return deliveredEvents.get();
+    }
+
+    public long getFailedDeliveries() {
+        return failedDeliveries.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    // Событий в секунду за время, потраченное на доставку
+    public double getThroughput() {
+        long nanos = deliveryNanos.get();
+        return nanos == 0 ? 0.0 : deliveredEvents.get() * 1e9 / nanos;
+    }
+
+    public long getPendingEvents() {
+        try (Session session = sessionFactory.openSession()) {
+            return session.createQuery(
+                            "SELECT count(e) FROM OutboxEvent e WHERE e.processedAt IS NULL", Long.class)
+                    .uniqueResult();
+        }
+    }
+
+    private void run() {
+        long backoff = POLL_INTERVAL_MILLIS;
+        while (running) {
+            int processed;
+            try {
+                processed = processBatch();
+                backoff = POLL_INTERVAL_MILLIS;
+                purgeProcessed();
+            } catch (RuntimeException e) {
+                System.out.println("Ошибка доставки событий outbox: " + e.getMessage());
+                processed = 0;
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+            // Полная пачка означает, что в журнале, скорее всего, есть ещё события
+            if (processed < BATCH_SIZE) {
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Возвращает число событий, отмеченных обработанными
+    public int processBatch() {
+        List<OutboxEvent> events = claimBatch();
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        long started = System.nanoTime();
+        List<Long> delivered = new ArrayList<>(events.size());
+        RuntimeException failure = null;
+        for (OutboxEvent event : events) {
+            try {
+                deliver(event);
+            } catch (RuntimeException e) {
+                // Последующие события не доставляются, чтобы не нарушить порядок
+                failedDeliveries.incrementAndGet();
+                failure = e;
+                break;
+            }
+            delivered.add(event.getId());
+        }
+        if (!delivered.isEmpty()) {
+            try {
+                for (OutboxConsumer consumer : consumers) {
+                    consumer.flush();
+                }
+            } catch (RuntimeException e) {
+                // Без подтверждения вся пачка остаётся необработанной
+                failedDeliveries.incrementAndGet();
+                failure = e;
+                delivered.clear();
+            }
+        }
+        // Доставленные события — всегда начало пачки
+        List<Long> released = events.subList(delivered.size(), events.size()).stream().map(OutboxEvent::getId).toList();
+        complete(delivered, released);
+        deliveryNanos.addAndGet(System.nanoTime() - started);
+        deliveredEvents.addAndGet(delivered.size());
+        batches.incrementAndGet();
+        if (failure != null) {
+            throw failure;
+        }
+        return delivered.size();
+    }
+
+    // Короткая транзакция: строки блокируются через FOR UPDATE SKIP LOCKED только на время установки аренды
+    private List<OutboxEvent> claimBatch() {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            try {
+                List<OutboxEvent> events = session.createNativeQuery(
+                                "SELECT * FROM outbox_events WHERE processed_at IS NULL " +
+                                        "AND (claimed_until IS NULL OR claimed_until < now()) " +
+                                        "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", OutboxEvent.class)
+                        .setParameter("limit", BATCH_SIZE)
+                        .list();
+                if (!events.isEmpty()) {
+                    session.createNativeMutationQuery(
+                                    "UPDATE outbox_events SET claimed_until = now() + make_interval(secs => :lease) " +
+                                            "WHERE id IN (:ids)")
+                            .setParameter("lease", LEASE_SECONDS)
+                            .setParameterList("ids", events.stream().map(OutboxEvent::getId).toList())
+                            .executeUpdate();
+                }
+                tx.commit();
+                return events;
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Доставленные события отмечаются обработанными, с остальных аренда снимается для повторной доставки
+    private void complete(List<Long> delivered, List<Long> released) {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            try {
+                if (!delivered.isEmpty()) {
+                    session.createNativeMutationQuery(
+                                    "UPDATE outbox_events SET processed_at = :now, claimed_until = NULL WHERE id IN (:ids)")
+                            .setParameter("now", LocalDateTime.now())
+                            .setParameterList("ids", delivered)
+                            .executeUpdate();
+                }
+                if (!released.isEmpty()) {
+                    session.createNativeMutationQuery("UPDATE outbox_events SET claimed_until = NULL WHERE id IN (:ids)")
+                            .setParameterList("ids", released)
+                            .executeUpdate();
+                }
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void deliver(OutboxEvent event) {
+        OutboxPayload payload = OutboxEvents.payloadOf(event);
+        for (OutboxConsumer consumer : consumers) {
+            consumer.handle(event, payload);
+        }
+    }
+
+    private void purgeProcessed() {
+        long now = System.currentTimeMillis();
+        if (now - lastPurgeMillis < PURGE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastPurgeMillis = now;
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createMutationQuery("DELETE FROM OutboxEvent e WHERE e.processedAt < :threshold")
+                    .setParameter("threshold", LocalDateTime.now().minusHours(RETENTION_HOURS))
+                    .executeUpdate();
+            tx.commit();
+        }
+    }
+}
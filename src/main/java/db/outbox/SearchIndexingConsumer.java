@@ -0,0 +1,28 @@
+package db.outbox;
+
+import db.entities.OutboxEvent;
+import db.entities.Tag;
+import db.search.SearchIndexing;
+
+public class SearchIndexingConsumer implements OutboxConsumer {
+    @Override
+    public void handle(OutboxEvent event, OutboxPayload payload) {
+        if (Tag.class.getSimpleName().equals(event.getAggregateType())
+                || OutboxEventType.PAGE_TAGS_CHANGED.name().equals(event.getEventType())) {
+            SearchIndexing.tagsChanged();
+        }
+        if (payload.getPageId() == null) {
+            return;
+        }
+        if (OutboxEventType.PAGE_DELETED.name().equals(event.getEventType())) {
+            SearchIndexing.pageDeleted(payload.getPageId());
+        } else {
+            SearchIndexing.pageChanged(payload.getPageId());
+        }
+    }
+
+    @Override
+    public void flush() {
+        SearchIndexing.flush();
+    }
+}
@@ -0,0 +1,113 @@
+package db.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Разбивает текст на слова, приводит к нижнему регистру и выделяет основу русских и английских слов
+public class Analyzer {
+    // Более длинные последовательности (хеши, base64) не ищут по словам
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final Set<String> STOP_WORDS = Set.of(
+            "и", "в", "во", "не", "на", "с", "со", "что", "как", "а", "по", "к", "у", "из", "за", "от", "о", "об",
+            "the", "a", "an", "and", "or", "of", "to", "in", "on", "for", "is", "are", "be", "by", "with");
+
+    private Analyzer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                current.append(c == 'ё' || c == 'Ё' ? 'е' : Character.toLowerCase(c));
+            } else if (!current.isEmpty()) {
+                addToken(tokens, current);
+            }
+        }
+        addToken(tokens, current);
+        return tokens;
+    }
+
+    private static void addToken(List<String> tokens, StringBuilder current) {
+        if (!current.isEmpty() && current.length() <= MAX_TOKEN_LENGTH) {
+            tokens.add(current.toString());
+        }
+        current.setLength(0);
+    }
+
+    public static List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String token : tokenize(text)) {
+            if (!STOP_WORDS.contains(token)) {
+                terms.add(stem(token));
+            }
+        }
+        return terms;
+    }
+
+    // Оборачивает в <em> слова текста, основа которых совпадает с одним из терминов запроса
+    public static String highlight(String text, Collection<String> queryTerms) {
+        if (text == null || queryTerms.isEmpty()) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder(text.length() + 16);
+        boolean matched = false;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                String word = text.substring(start, i);
+                List<String> terms = analyze(word);
+                if (!terms.isEmpty() && queryTerms.contains(terms.get(0))) {
+                    result.append("<em>").append(word).append("</em>");
+                    matched = true;
+                } else {
+                    result.append(word);
+                }
+                start = -1;
+            }
+            if (!letter && i < text.length()) {
+                result.append(text.charAt(i));
+            }
+        }
+        return matched ? result.toString() : null;
+    }
+
+    static String stem(String token) {
+        if (isCyrillic(token)) {
+            return RussianStemmer.stem(token);
+        }
+        if (isLatin(token)) {
+            return EnglishStemmer.stem(token.toLowerCase(Locale.ROOT));
+        }
+        return token;
+    }
+
+    private static boolean isCyrillic(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (Character.UnicodeBlock.of(token.charAt(i)) != Character.UnicodeBlock.CYRILLIC) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLatin(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c < 'a' || c > 'z') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
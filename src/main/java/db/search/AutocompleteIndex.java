@@ -0,0 +1,441 @@
+package db.search;
+
+import db.dto.SuggestionDTO;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Префиксное дерево по заголовкам, slug и тегам. В каждом узле хранятся TOP_K самых популярных
+// подсказок поддерева, поэтому ответ — это спуск по префиксу без обхода поддерева.
+// Вес страницы — число внутренних ссылок на неё плюс один, вес тега — число его страниц.
+// Изменения копятся до flush() получателя outbox и применяются пачкой.
+// Дерево строится в фоне при открытии; до готовности suggest возвращает пустой список.
+public class AutocompleteIndex implements PageIndexListener {
+    public static final int TOP_K = 10;
+    // Кроме начала заголовка подсказка находится по началу любого из первых MAX_WORD_KEYS слов
+    private static final int MAX_WORD_KEYS = 8;
+    private static final Comparator<Entry> BY_WEIGHT = Comparator.comparingLong((Entry entry) -> entry.weight).reversed()
+            .thenComparing(entry -> entry.text)
+            .thenComparing(entry -> entry.type)
+            .thenComparing(entry -> entry.pageId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private static volatile AutocompleteIndex instance;
+
+    private final SessionFactory sessionFactory;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Node root = new Node();
+    private final Map<Long, List<Entry>> pageEntries = new HashMap<>();
+    private final Map<String, Entry> tagEntries = new HashMap<>();
+    // Цели внутренних ссылок каждой страницы: при изменении ссылок пересчитывается вес старых и новых целей
+    private final Map<Long, Set<Long>> outgoing = new HashMap<>();
+    // Изменения, ожидающие применения в flush()
+    private final Set<Long> pending = new LinkedHashSet<>();
+    private boolean tagsDirty;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile boolean ready;
+
+    private AutocompleteIndex(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public static AutocompleteIndex getInstance(SessionFactory sessionFactory) {
+        if (instance == null) {
+            synchronized (AutocompleteIndex.class) {
+                if (instance == null) {
+                    AutocompleteIndex index = new AutocompleteIndex(sessionFactory);
+                    SearchIndexing.register(index);
+                    instance = index;
+                    index.buildInBackground();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Индекс открывается один раз при запуске (Startup.openSearchIndexes)
+    public static AutocompleteIndex getInstance() {
+        AutocompleteIndex current = instance;
+        if (current == null) {
+            throw new IllegalStateException("Индекс автодополнения не открыт");
+        }
+        return current;
+    }
+
+    // Изменения из outbox, пришедшие во время построения, остаются в pending: их применит первый flush() после него
+    private void buildInBackground() {
+        Thread.ofVirtual().name("docman-autocomplete-build").start(() -> {
+            long started = System.nanoTime();
+            try {
+                rebuild();
+                System.out.printf("Индекс автодополнения построен за %d мс%n", (System.nanoTime() - started) / 1_000_000);
+            } catch (RuntimeException e) {
+                System.out.println("ОШИБКА построения индекса автодополнения: " + e.getMessage());
+            }
+        });
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public List<SuggestionDTO> suggest(String prefix, int limit) {
+        String key = normalizePrefix(prefix);
+        if (!ready || key.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.children.get(key.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+            return node.top.stream()
+                    .limit(Math.min(limit, TOP_K))
+                    .map(entry -> new SuggestionDTO(entry.text, entry.type, entry.pageId, entry.slug, entry.weight))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void rebuild() {
+        List<Object[]> pages;
+        List<Object[]> tags;
+        Map<Long, Set<Long>> targets;
+        try (Session session = sessionFactory.openSession()) {
+            pages = loadPages(session, null);
+            targets = loadTargets(session, null);
+            tags = loadTags(session);
+        }
+        lock.writeLock().lock();
+        try {
+            root.children.clear();
+            root.terminals.clear();
+            root.top.clear();
+            pageEntries.clear();
+            tagEntries.clear();
+            outgoing.clear();
+            outgoing.putAll(targets);
+            pages.forEach(this::putPage);
+            applyTags(tags);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void pageChanged(Long pageId) {
+        synchronized (pending) {
+            pending.add(pageId);
+        }
+    }
+
+    // Удаление страницы меняет число страниц у её тегов
+    @Override
+    public void pageDeleted(Long pageId) {
+        synchronized (pending) {
+            pending.add(pageId);
+            tagsDirty = true;
+        }
+    }
+
+    @Override
+    public void tagsChanged() {
+        synchronized (pending) {
+            tagsDirty = true;
+        }
+    }
+
+    // Изменения пачки outbox применяются вне пути записи: перечитываются изменённые страницы
+    // и цели их старых и новых ссылок, теги — только если они менялись
+    @Override
+    public void flush() {
+        if (!ready) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            Set<Long> dirty;
+            boolean reloadTags;
+            synchronized (pending) {
+                if (pending.isEmpty() && !tagsDirty) {
+                    return;
+                }
+                dirty = new LinkedHashSet<>(pending);
+                reloadTags = tagsDirty;
+                pending.clear();
+                tagsDirty = false;
+            }
+            try {
+                apply(dirty, reloadTags);
+            } catch (RuntimeException e) {
+                synchronized (pending) {
+                    pending.addAll(dirty);
+                    tagsDirty |= reloadTags;
+                }
+                throw e;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void apply(Set<Long> dirty, boolean reloadTags) {
+        Set<Long> affected = new HashSet<>(dirty);
+        lock.readLock().lock();
+        try {
+            for (Long pageId : dirty) {
+                affected.addAll(outgoing.getOrDefault(pageId, Set.of()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Object[]> pages = List.of();
+        List<Object[]> tags = null;
+        Map<Long, Set<Long>> targets = Map.of();
+        Map<Long, Set<Long>> sources = Map.of();
+        try (Session session = sessionFactory.openSession()) {
+            if (!dirty.isEmpty()) {
+                targets = loadTargets(session, dirty);
+                targets.values().forEach(affected::addAll);
+                // Ссылки других страниц, разрешившиеся на новую страницу, попадают в их списки целей
+                sources = loadSources(session, dirty);
+                pages = loadPages(session, affected);
+            }
+            if (reloadTags) {
+                tags = loadTags(session);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            dirty.forEach(outgoing::remove);
+            outgoing.putAll(targets);
+            sources.forEach((target, pageIds) -> pageIds.forEach(pageId ->
+                    outgoing.computeIfAbsent(pageId, id -> new HashSet<>()).add(target)));
+            affected.forEach(this::removePage);
+            pages.forEach(this::putPage);
+            if (tags != null) {
+                applyTags(tags);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Без pageIds — все страницы
+    private static List<Object[]> loadPages(Session session, Collection<Long> pageIds) {
+        String sql = "SELECT p.id, p.title, p.slug, (SELECT count(*) FROM links l WHERE l.target_page_id = p.id) " +
+                "FROM pages p" + (pageIds == null ? "" : " WHERE p.id IN (:ids)");
+        NativeQuery<Object[]> query = session.createNativeQuery(sql, Object[].class);
+        if (pageIds != null) {
+            query.setParameterList("ids", pageIds);
+        }
+        return query.list();
+    }
+
+    // Страницы, на которые ссылается каждая из страниц; без pageIds — для всех страниц
+    private static Map<Long, Set<Long>> loadTargets(Session session, Collection<Long> pageIds) {
+        String sql = "SELECT l.page_id, l.target_page_id FROM links l WHERE l.target_page_id IS NOT NULL" +
+                (pageIds == null ? "" : " AND l.page_id IN (:ids)");
+        NativeQuery<Object[]> query = session.createNativeQuery(sql, Object[].class);
+        if (pageIds != null) {
+            query.setParameterList("ids", pageIds);
+        }
+        return group(query.list());
+    }
+
+    // Страницы, которые ссылаются на каждую из страниц
+    private static Map<Long, Set<Long>> loadSources(Session session, Collection<Long> pageIds) {
+        return group(session.createNativeQuery(
+                        "SELECT l.target_page_id, l.page_id FROM links l WHERE l.target_page_id IN (:ids)", Object[].class)
+                .setParameterList("ids", pageIds)
+                .list());
+    }
+
+    private static Map<Long, Set<Long>> group(List<Object[]> rows) {
+        Map<Long, Set<Long>> grouped = new HashMap<>();
+        for (Object[] row : rows) {
+            grouped.computeIfAbsent(((Number) row[0]).longValue(), id -> new HashSet<>())
+                    .add(((Number) row[1]).longValue());
+        }
+        return grouped;
+    }
+
+    private static List<Object[]> loadTags(Session session) {
+        return session.createNativeQuery(
+                        "SELECT t.name, s.page_count FROM tags t JOIN tag_stats s ON s.tag_id = t.id " +
+                                "WHERE s.page_count > 0", Object[].class)
+                .list();
+    }
+
+    private void putPage(Object[] row) {
+        Long pageId = ((Number) row[0]).longValue();
+        String title = (String) row[1];
+        String slug = (String) row[2];
+        long weight = ((Number) row[3]).longValue() + 1;
+        List<Entry> entries = new ArrayList<>(2);
+        entries.add(new Entry(title, "TITLE", pageId, slug, weight, wordKeys(title)));
+        entries.add(new Entry(slug, "SLUG", pageId, slug, weight, wordKeys(slug)));
+        entries.forEach(this::insert);
+        pageEntries.put(pageId, entries);
+    }
+
+    private void removePage(Long pageId) {
+        List<Entry> entries = pageEntries.remove(pageId);
+        if (entries != null) {
+            entries.forEach(this::remove);
+        }
+    }
+
+    // Теги заменяются только при изменении веса или состава
+    private void applyTags(List<Object[]> rows) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            counts.put((String) row[0], ((Number) row[1]).longValue());
+        }
+        for (Entry entry : List.copyOf(tagEntries.values())) {
+            Long count = counts.get(entry.text);
+            if (count == null || count != entry.weight) {
+                remove(entry);
+                tagEntries.remove(entry.text);
+            }
+        }
+        counts.forEach((name, count) -> {
+            if (!tagEntries.containsKey(name)) {
+                Entry entry = new Entry(name, "TAG", null, null, count, wordKeys(name));
+                insert(entry);
+                tagEntries.put(name, entry);
+            }
+        });
+    }
+
+    private void insert(Entry entry) {
+        for (String key : entry.keys) {
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+                node.offer(entry);
+            }
+            node.terminals.add(entry);
+        }
+    }
+
+    private void remove(Entry entry) {
+        for (String key : entry.keys) {
+            List<Node> path = new ArrayList<>(key.length() + 1);
+            path.add(root);
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.children.get(key.charAt(i));
+                path.add(node);
+            }
+            if (node == null) {
+                continue;
+            }
+            node.terminals.remove(entry);
+            // Снизу вверх: пересчитываем лучшие подсказки и удаляем опустевшие узлы
+            for (int depth = path.size() - 1; depth > 0; depth--) {
+                Node current = path.get(depth);
+                if (current.top.contains(entry)) {
+                    current.recompute();
+                }
+                if (current.top.isEmpty() && current.children.isEmpty()) {
+                    path.get(depth - 1).children.remove(key.charAt(depth - 1));
+                }
+            }
+        }
+    }
+
+    // Ключи: весь текст и его окончания, начинающиеся с каждого из первых слов
+    private static Set<String> wordKeys(String text) {
+        List<String> words = Analyzer.tokenize(text);
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < words.size() && i < MAX_WORD_KEYS; i++) {
+            keys.add(String.join(" ", words.subList(i, words.size())));
+        }
+        return keys;
+    }
+
+    private static String normalizePrefix(String text) {
+        return text == null ? "" : String.join(" ", Analyzer.tokenize(text));
+    }
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        final List<Entry> terminals = new ArrayList<>(1);
+        final List<Entry> top = new ArrayList<>(1);
+
+        void offer(Entry entry) {
+            if (top.contains(entry)) {
+                return;
+            }
+            if (top.size() == TOP_K && BY_WEIGHT.compare(entry, top.get(TOP_K - 1)) >= 0) {
+                return;
+            }
+            int position = 0;
+            while (position < top.size() && BY_WEIGHT.compare(top.get(position), entry) < 0) {
+                position++;
+            }
+            top.add(position, entry);
+            if (top.size() > TOP_K) {
+                top.remove(TOP_K);
+            }
+        }
+
+        void recompute() {
+            top.clear();
+            terminals.forEach(this::offer);
+            for (Node child : children.values()) {
+                child.top.forEach(this::offer);
+            }
+        }
+    }
+
+    private static final class Entry {
+        final String text;
+        final String type;
+        final Long pageId;
+        final String slug;
+        final long weight;
+        final Set<String> keys;
+
+        Entry(String text, String type, Long pageId, String slug, long weight, Set<String> keys) {
+            this.text = text;
+            this.type = type;
+            this.pageId = pageId;
+            this.slug = slug;
+            this.weight = weight;
+            this.keys = keys;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Entry entry)) {
+                return false;
+            }
+            return type.equals(entry.type) && text.equals(entry.text) && Objects.equals(pageId, entry.pageId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, text, pageId);
+        }
+    }
+}
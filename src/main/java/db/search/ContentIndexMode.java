@@ -0,0 +1,20 @@
+package db.search;
+
+import java.util.Locale;
+
+// LATEST: в документе страницы одно плоское поле content с последней опубликованной версией.
+// VERSIONS: прежняя схема, все версии вложенными документами versions.content.
+// Если схема индекса не совпадает с режимом, он пересобирается в фоне при запуске (Startup.openSearchIndexes).
+public enum ContentIndexMode {
+    LATEST,
+    VERSIONS;
+
+    public static ContentIndexMode current() {
+        String value = System.getProperty("docman.search.content", LATEST.name());
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Неизвестный режим индексации содержимого: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package db.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import db.util.Backend;
+import db.util.ElasticsearchUtil;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Переносит изменения страниц в индекс Elasticsearch в фоне.
+// Очередь хранит только идентификаторы: повторные изменения одной страницы схлопываются,
+// а актуальное состояние читается из базы непосредственно перед отправкой пачки через _bulk.
+// Запись идёт через псевдоним PageIndexAdmin.ALIAS; во время переиндексации изменения дублируются в новый индекс.
+// Событие outbox отмечается обработанным только после flush(): до этого очередь лишь ускоряет отправку.
+public class ElasticsearchIndexingPipeline implements PageIndexListener, AutoCloseable {
+    private static final int CAPACITY = Integer.getInteger("docman.index.capacity", 10_000);
+    private static final int BATCH_SIZE = Integer.getInteger("docman.index.batch", 500);
+    private static final long FLUSH_INTERVAL_MILLIS = Long.getLong("docman.index.flush.millis", 1_000);
+    private static final long INITIAL_BACKOFF_MILLIS = 200;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final long SHUTDOWN_FLUSH_MILLIS = 10_000;
+    private static final long CONFIRM_MILLIS = Long.getLong("docman.index.confirm.millis", 30_000);
+
+    private static volatile ElasticsearchIndexingPipeline instance;
+
+    private final ElasticsearchClient client;
+    private final Function<List<Long>, Loaded> loader;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final Set<Long> pending = new LinkedHashSet<>();
+    private final Set<Long> deletedDuringReindex = ConcurrentHashMap.newKeySet();
+    private final Thread worker;
+    private int inFlight;
+    // Пачка отправляется сразу, не дожидаясь FLUSH_INTERVAL_MILLIS, пока кто-то ждёт в flush
+    private boolean flushRequested;
+    private volatile boolean running = true;
+    private volatile boolean indexReady;
+    private volatile String reindexTarget;
+
+    // Состояние страниц пачки из базы: документы, содержимое версий и последние версии для истории
+    record Loaded(Map<Long, PageDocument> documents, Map<Long, List<String>> versions, List<VersionDocument> history) {
+    }
+
+    // loader читает пачку из базы; тесты подставляют свой вместо SessionFactory
+    ElasticsearchIndexingPipeline(ElasticsearchClient client, Function<List<Long>, Loaded> loader) {
+        this.client = client;
+        this.loader = loader;
+        this.worker = new Thread(this::run, "docman-es-indexer");
+        this.worker.setDaemon(true);
+    }
+
+    public static ElasticsearchIndexingPipeline start(SessionFactory sessionFactory) {
+        if (instance == null) {
+            synchronized (ElasticsearchIndexingPipeline.class) {
+                if (instance == null) {
+                    ElasticsearchIndexingPipeline pipeline = new ElasticsearchIndexingPipeline(
+                            ElasticsearchUtil.getClient(), batch -> load(sessionFactory, batch));
+                    pipeline.startWorker();
+                    SearchIndexing.register(pipeline);
+                    Runtime.getRuntime().addShutdownHook(new Thread(pipeline::close, "docman-es-indexer-flush"));
+                    instance = pipeline;
+                }
+            }
+        }
+        return instance;
+    }
+
+    void startWorker() {
+        worker.start();
+    }
+
+    @Override
+    public void pageChanged(Long pageId) {
+        enqueue(pageId);
+    }
+
+    @Override
+    public void pageDeleted(Long pageId) {
+        enqueue(pageId);
+    }
+
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // С этого момента каждая пачка пишется и в индекс target, который заполняет PagesReindexJob.
+    // Одновременно выполняется только одна переиндексация
+    public synchronized void beginReindex(String target) {
+        if (reindexTarget != null) {
+            throw new IllegalStateException("Переиндексация в " + reindexTarget + " уже выполняется");
+        }
+        deletedDuringReindex.clear();
+        reindexTarget = target;
+    }
+
+    // Страницы, удалённые после beginReindex: загрузка могла прочитать их раньше удаления
+    public Set<Long> getDeletedDuringReindex() {
+        return Set.copyOf(deletedDuringReindex);
+    }
+
+    public synchronized void endReindex(String target) {
+        if (target.equals(reindexTarget)) {
+            reindexTarget = null;
+            deletedDuringReindex.clear();
+        }
+    }
+
+    // Подтверждение для outbox: страницы, отклонённые с временной ошибкой, остаются в очереди,
+    // поэтому успешный возврат означает, что Elasticsearch принял все полученные изменения
+    @Override
+    public void flush() {
+        if (!flush(CONFIRM_MILLIS, TimeUnit.MILLISECONDS)) {
+            throw new RuntimeException("Elasticsearch не подтвердил индексацию за " + CONFIRM_MILLIS
+                    + " мс, в очереди " + getPendingCount());
+        }
+    }
+
+    // Ожидает отправки всего, что уже поставлено в очередь
+    public boolean flush(long timeout, TimeUnit unit) {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            flushRequested = true;
+            notEmpty.signal();
+            while (!pending.isEmpty() || inFlight > 0) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = drained.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        SearchIndexing.unregister(this);
+        running = false;
+        if (!flush(SHUTDOWN_FLUSH_MILLIS, TimeUnit.MILLISECONDS)) {
+            System.out.println("Не все изменения отправлены в Elasticsearch до остановки: " + getPendingCount());
+        }
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // При переполнении очереди пишущий поток ждёт, пока индексатор не разгрузит её
+    private void enqueue(Long pageId) {
+        lock.lock();
+        try {
+            while (running && pending.size() >= CAPACITY && !pending.contains(pageId)) {
+                notFull.await();
+            }
+            pending.add(pageId);
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Ожидание очереди индексации прервано", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void requeue(List<Long> pageIds) {
+        lock.lock();
+        try {
+            pending.addAll(pageIds);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Поток завершается только после close(): прерывание при работающем конвейере не должно
+    // оставить очередь без обработчика, иначе пишущие потоки заблокируются на CAPACITY
+    private void run() {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        while (true) {
+            List<Long> batch = nextBatch();
+            if (batch == null) {
+                return;
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            List<Long> failed;
+            try {
+                failed = send(batch);
+            } catch (RuntimeException e) {
+                System.out.println("Ошибка отправки в Elasticsearch: " + e.getMessage());
+                failed = batch;
+            }
+            if (!failed.isEmpty()) {
+                requeue(failed);
+            }
+            finishBatch();
+            if (failed.isEmpty()) {
+                backoff = INITIAL_BACKOFF_MILLIS;
+                continue;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                System.out.println("Прерывание индексатора Elasticsearch проигнорировано: конвейер не остановлен");
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    // Пачка набирается до BATCH_SIZE страниц или до истечения FLUSH_INTERVAL_MILLIS.
+    // null — конвейер остановлен, пустой список — ожидание прервано и его нужно повторить
+    private List<Long> nextBatch() {
+        lock.lock();
+        try {
+            while (pending.isEmpty()) {
+                if (!running) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+            long remaining = TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS);
+            while (running && !flushRequested && pending.size() < BATCH_SIZE && remaining > 0) {
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            List<Long> batch = new ArrayList<>(Math.min(pending.size(), BATCH_SIZE));
+            Iterator<Long> iterator = pending.iterator();
+            while (iterator.hasNext() && batch.size() < BATCH_SIZE) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+            inFlight = batch.size();
+            notFull.signalAll();
+            return batch;
+        } catch (InterruptedException e) {
+            if (!running) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            System.out.println("Прерывание индексатора Elasticsearch проигнорировано: конвейер не остановлен");
+            return List.of();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finishBatch() {
+        lock.lock();
+        try {
+            inFlight = 0;
+            if (pending.isEmpty()) {
+                flushRequested = false;
+                drained.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Возвращает страницы, которые нужно отправить повторно
+    private List<Long> send(List<Long> batch) {
+        if (!indexReady) {
+            PageIndexAdmin.ensureAlias(client);
+            indexReady = true;
+        }
+        Loaded loaded = loader.apply(batch);
+        Map<Long, PageDocument> documents = loaded.documents();
+        Map<Long, List<String>> versions = loaded.versions();
+        List<VersionDocument> history = loaded.history();
+
+        // wait_for: пачка видна поиску к моменту смены поколения индекса; ждёт только поток индексатора
+        BulkRequest.Builder request = new BulkRequest.Builder().refresh(Refresh.WaitFor);
+        // В новом индексе обновление отключено до конца загрузки, поэтому для него отдельный запрос без wait_for
+        String target = reindexTarget;
+        BulkRequest.Builder reindexRequest = target == null ? null : new BulkRequest.Builder();
+        for (Long pageId : batch) {
+            String id = pageId.toString();
+            PageDocument document = documents.get(pageId);
+            if (document == null) {
+                request.operations(op -> op.delete(d -> d.index(PageIndexAdmin.ALIAS).id(id)));
+                if (reindexRequest != null) {
+                    deletedDuringReindex.add(pageId);
+                    reindexRequest.operations(op -> op.delete(d -> d.index(target).id(id)));
+                }
+            } else {
+                Map<String, Object> source =
+                        PageIndexAdmin.toSource(document, versions.getOrDefault(pageId, List.of()));
+                request.operations(op -> op.index(i -> i.index(PageIndexAdmin.ALIAS).id(id).document(source)));
+                if (reindexRequest != null) {
+                    reindexRequest.operations(op -> op.index(i -> i.index(target).id(id).document(source)));
+                }
+            }
+        }
+        Set<Long> failed = new LinkedHashSet<>();
+        if (reindexRequest != null) {
+            collectFailed(bulk(reindexRequest.build()), failed, Long::valueOf);
+        }
+        collectFailed(bulk(request.build()), failed, Long::valueOf);
+        SearchIndexing.indexChanged();
+        if (PageIndexAdmin.HISTORY_ENABLED) {
+            sendHistory(batch, documents, history, failed);
+        }
+        return new ArrayList<>(failed);
+    }
+
+    private static Loaded load(SessionFactory sessionFactory, List<Long> batch) {
+        try (Session session = sessionFactory.openSession()) {
+            Map<Long, PageDocument> documents = PageDocumentLoader.loadAll(session, batch);
+            Map<Long, List<String>> versions = PageIndexAdmin.CONTENT_MODE == ContentIndexMode.VERSIONS
+                    ? PageDocumentLoader.loadVersionContents(session, documents.keySet())
+                    : Map.of();
+            // В историю дописывается только последняя версия: прежние уже проиндексированы
+            List<VersionDocument> history = PageIndexAdmin.HISTORY_ENABLED
+                    ? PageDocumentLoader.loadVersions(session, documents.keySet(), true)
+                    : List.of();
+            return new Loaded(documents, versions, history);
+        }
+    }
+
+    private BulkResponse bulk(BulkRequest request) {
+        return Backend.ELASTICSEARCH.call(() -> {
+            try {
+                return client.bulk(request);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Документы истории идентифицируются id версии, поэтому при сбое повторно ставится её страница
+    private void sendHistory(List<Long> batch, Map<Long, PageDocument> documents, List<VersionDocument> history,
+                             Set<Long> failed) {
+        PageIndexAdmin.deleteHistory(client, batch.stream().filter(pageId -> !documents.containsKey(pageId)).toList());
+        if (history.isEmpty()) {
+            return;
+        }
+        Map<String, Long> pageIds = new HashMap<>();
+        BulkRequest.Builder request = new BulkRequest.Builder();
+        for (VersionDocument version : history) {
+            String id = version.getId().toString();
+            Map<String, Object> source = PageIndexAdmin.toHistorySource(version);
+            pageIds.put(id, version.getPageId());
+            request.operations(op -> op.index(i -> i.index(PageIndexAdmin.HISTORY_INDEX).id(id).document(source)));
+        }
+        collectFailed(bulk(request.build()), failed, pageIds::get);
+    }
+
+    private static void collectFailed(BulkResponse response, Set<Long> failed, Function<String, Long> pageIdOf) {
+        if (!response.errors()) {
+            return;
+        }
+        for (BulkResponseItem item : response.items()) {
+            if (item.error() == null) {
+                continue;
+            }
+            // 429 и 5xx временные, остальные ошибки повтор не исправит
+            if (item.status() == 429 || item.status() >= 500) {
+                failed.add(pageIdOf.apply(item.id()));
+            } else {
+                System.out.println("Elasticsearch отклонил страницу " + item.id() + ": " + item.error().reason());
+            }
+        }
+    }
+}
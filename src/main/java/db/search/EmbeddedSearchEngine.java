@@ -0,0 +1,642 @@
+package db.search;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+// Встроенный полнотекстовый индекс: заголовок, теги и последняя версия содержимого.
+// Изменения страниц копятся до flush() и записываются одним неизменяемым сегментом на пачку;
+// более новый сегмент перекрывает документ из старых, удаление записывается как отметка.
+// Когда сегментов становится больше MAX_SEGMENTS, живые документы сливаются в один сегмент.
+// Индекс открывается (и при необходимости собирается) в фоне; до готовности поиск ничего не находит.
+public class EmbeddedSearchEngine implements PageIndexListener {
+
+    public enum Field {
+        TITLE("t:", 3.0),
+        TAGS("g:", 2.0),
+        CONTENT("c:", 1.0);
+
+        private final String prefix;
+        private final double boost;
+
+        Field(String prefix, double boost) {
+            this.prefix = prefix;
+            this.boost = boost;
+        }
+    }
+
+    private static final int MAGIC = 0x444D5347;
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_SEGMENTS = 16;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int FIELD_COUNT = Field.values().length;
+    // Параметры BM25
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Убывание оценки, затем возрастание id. Double.compare сравнивает точное значение оценки: курсор
+    // передаёт тот же double, что был в выдаче, а оценки пересчитываются в том же порядке сложения
+    private static final Comparator<Map.Entry<Long, Double>> HIT_ORDER =
+            Map.Entry.<Long, Double>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey());
+
+    private static volatile EmbeddedSearchEngine instance;
+
+    private final SessionFactory sessionFactory;
+    private final Path directory;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Упорядочивает загрузку документа из базы и его запись, чтобы старое состояние не перекрыло новое
+    private final ReentrantLock indexLock = new ReentrantLock();
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<Long, DocRef> live = new HashMap<>();
+    // Изменения, ожидающие записи в flush(): id страницы -> удалена ли она
+    private final Map<Long, Boolean> pending = new LinkedHashMap<>();
+    private final long[] totalLengths = new long[FIELD_COUNT];
+    private long nextGeneration = 1;
+    private volatile boolean ready;
+
+    private EmbeddedSearchEngine(SessionFactory sessionFactory, Path directory) {
+        this.sessionFactory = sessionFactory;
+        this.directory = directory;
+    }
+
+    public static EmbeddedSearchEngine getInstance(SessionFactory sessionFactory) {
+        if (instance == null) {
+            synchronized (EmbeddedSearchEngine.class) {
+                if (instance == null) {
+                    EmbeddedSearchEngine engine = new EmbeddedSearchEngine(sessionFactory,
+                            Path.of(System.getProperty("docman.search.dir", "search-index")));
+                    SearchIndexing.register(engine);
+                    instance = engine;
+                    engine.openInBackground();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Индекс открывается один раз при запуске (Startup.openSearchIndexes)
+    public static EmbeddedSearchEngine getInstance() {
+        EmbeddedSearchEngine current = instance;
+        if (current == null) {
+            throw new IllegalStateException("Встроенный поисковый индекс не открыт");
+        }
+        return current;
+    }
+
+    public List<SearchHit> search(String query, Set<Field> fields, int limit) {
+        return search(query, fields, limit, null, null);
+    }
+
+    // Продолжение выдачи после (afterScore, afterId) в порядке убывания оценки и возрастания id
+    public List<SearchHit> search(String query, Set<Field> fields, int limit, Double afterScore, Long afterId) {
+        List<String> terms = Analyzer.analyze(query).stream().distinct().toList();
+        if (!ready || terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            int docCount = live.size();
+            if (docCount == 0) {
+                return List.of();
+            }
+            Map<Long, Double> scores = new HashMap<>();
+            for (Field field : fields) {
+                double avgLength = Math.max(1.0, (double) totalLengths[field.ordinal()] / docCount);
+                for (String term : terms) {
+                    scoreTerm(field, field.prefix + term, docCount, avgLength, scores);
+                }
+            }
+            Map.Entry<Long, Double> after = afterScore == null || afterId == null ? null : Map.entry(afterId, afterScore);
+            return scores.entrySet().stream()
+                    .filter(entry -> after == null || HIT_ORDER.compare(entry, after) > 0)
+                    .sorted(HIT_ORDER)
+                    .limit(limit)
+                    .map(entry -> {
+                        DocRef ref = live.get(entry.getKey());
+                        return new SearchHit(entry.getKey(), ref.segment.slugs[ref.doc],
+                                ref.segment.titles[ref.doc], entry.getValue());
+                    })
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void scoreTerm(Field field, String key, int docCount, double avgLength, Map<Long, Double> scores) {
+        int documentFrequency = 0;
+        for (Segment segment : segments) {
+            int[] postings = segment.postings.get(key);
+            if (postings == null) {
+                continue;
+            }
+            for (int i = 0; i < postings.length; i += 2) {
+                if (isLive(segment, postings[i])) {
+                    documentFrequency++;
+                }
+            }
+        }
+        if (documentFrequency == 0) {
+            return;
+        }
+        double idf = Math.log(1 + (docCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        for (Segment segment : segments) {
+            int[] postings = segment.postings.get(key);
+            if (postings == null) {
+                continue;
+            }
+            for (int i = 0; i < postings.length; i += 2) {
+                int doc = postings[i];
+                if (!isLive(segment, doc)) {
+                    continue;
+                }
+                int frequency = postings[i + 1];
+                int length = segment.lengths[doc][field.ordinal()];
+                double tf = frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / avgLength));
+                scores.merge(segment.pageIds[doc], field.boost * idf * tf, Double::sum);
+            }
+        }
+    }
+
+    @Override
+    public void pageChanged(Long pageId) {
+        synchronized (pending) {
+            pending.put(pageId, Boolean.FALSE);
+        }
+    }
+
+    @Override
+    public void pageDeleted(Long pageId) {
+        synchronized (pending) {
+            pending.put(pageId, Boolean.TRUE);
+        }
+    }
+
+    // Все изменения пачки outbox записываются одним сегментом; документы загружаются одним запросом
+    @Override
+    public void flush() {
+        if (!ready) {
+            return;
+        }
+        indexLock.lock();
+        try {
+            Map<Long, Boolean> changes;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                changes = new LinkedHashMap<>(pending);
+                pending.clear();
+            }
+            try {
+                List<Long> changedIds = new ArrayList<>();
+                SegmentBuilder builder = new SegmentBuilder();
+                lock.readLock().lock();
+                try {
+                    changes.forEach((pageId, deleted) -> {
+                        if (!deleted) {
+                            changedIds.add(pageId);
+                        } else if (live.containsKey(pageId)) {
+                            builder.delete(pageId);
+                        }
+                    });
+                } finally {
+                    lock.readLock().unlock();
+                }
+                if (!changedIds.isEmpty()) {
+                    Map<Long, PageDocument> documents;
+                    try (Session session = sessionFactory.openSession()) {
+                        documents = PageDocumentLoader.loadAll(session, changedIds);
+                    }
+                    for (Long pageId : changedIds) {
+                        PageDocument document = documents.get(pageId);
+                        if (document != null) {
+                            builder.add(document);
+                        } else {
+                            builder.delete(pageId);
+                        }
+                    }
+                }
+                if (!builder.isEmpty()) {
+                    commit(builder);
+                }
+            } catch (RuntimeException e) {
+                // Неудачная пачка будет доставлена повторно, но и буфер не теряет изменения.
+                // Изменение, записанное после неудачи, новее и не перезаписывается; пересборка очищает буфер
+                synchronized (pending) {
+                    changes.forEach(pending::putIfAbsent);
+                }
+                throw e;
+            }
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    // Полная пересборка из базы; поиск продолжает работать по старым сегментам до подмены.
+    // Изменения, накопленные до начала чтения, уже есть в базе: пересборка их покрывает
+    public void rebuild() {
+        indexLock.lock();
+        try {
+            synchronized (pending) {
+                pending.clear();
+            }
+            SegmentBuilder builder = new SegmentBuilder();
+            try (Session session = sessionFactory.openSession()) {
+                Long afterId = 0L;
+                List<Long> pageIds;
+                while (!(pageIds = PageDocumentLoader.nextPageIds(session, afterId, PageDocumentLoader.BATCH_SIZE)).isEmpty()) {
+                    PageDocumentLoader.loadAll(session, pageIds).values().forEach(builder::add);
+                    afterId = pageIds.get(pageIds.size() - 1);
+                    session.clear();
+                }
+            }
+            replaceAll(builder);
+            ready = true;
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Изменения из outbox, пришедшие до готовности, остаются в pending: их применит первый flush() после открытия
+    private void openInBackground() {
+        Thread.ofVirtual().name("docman-search-open").start(() -> {
+            long started = System.nanoTime();
+            try {
+                open();
+                System.out.printf("Встроенный поисковый индекс открыт за %d мс, документов: %d%n",
+                        (System.nanoTime() - started) / 1_000_000, size());
+            } catch (RuntimeException e) {
+                System.out.println("ОШИБКА открытия встроенного поискового индекса: " + e.getMessage());
+            }
+        });
+    }
+
+    private void open() {
+        indexLock.lock();
+        try {
+            openSegments();
+            if (segments.isEmpty()) {
+                System.out.println("Поисковый индекс пуст, выполняется полная сборка");
+                rebuild();
+            }
+            ready = true;
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    private void openSegments() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing.sorted().toList();
+            }
+            lock.writeLock().lock();
+            try {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        Files.deleteIfExists(file);
+                    } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                        Segment segment = readSegment(file);
+                        addSegment(segment);
+                        nextGeneration = Math.max(nextGeneration, segment.generation + 1);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось открыть поисковый индекс " + directory, e);
+        }
+    }
+
+    private void commit(SegmentBuilder builder) {
+        lock.writeLock().lock();
+        try {
+            Segment segment = builder.build(nextGeneration++);
+            writeSegment(segment);
+            addSegment(segment);
+            if (segments.size() > MAX_SEGMENTS) {
+                merge();
+            }
+            SearchIndexing.indexChanged();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void merge() {
+        SegmentBuilder builder = new SegmentBuilder();
+        for (Segment segment : segments) {
+            builder.addLive(segment, this);
+        }
+        replaceAll(builder);
+    }
+
+    // Новый сегмент записывается до удаления старых: после сбоя между шагами
+    // он всё равно перекрывает их при повторном открытии
+    private void replaceAll(SegmentBuilder builder) {
+        lock.writeLock().lock();
+        try {
+            Segment segment = builder.build(nextGeneration++);
+            writeSegment(segment);
+            for (Segment old : segments) {
+                try {
+                    Files.deleteIfExists(segmentPath(old.generation));
+                } catch (IOException e) {
+                    System.out.println("Не удалось удалить сегмент " + old.generation + ": " + e.getMessage());
+                }
+            }
+            segments.clear();
+            live.clear();
+            Arrays.fill(totalLengths, 0);
+            addSegment(segment);
+            SearchIndexing.indexChanged();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addSegment(Segment segment) {
+        segments.add(segment);
+        for (long pageId : segment.tombstones) {
+            removeLive(pageId);
+        }
+        for (int doc = 0; doc < segment.pageIds.length; doc++) {
+            removeLive(segment.pageIds[doc]);
+            live.put(segment.pageIds[doc], new DocRef(segment, doc));
+            segment.liveDocs++;
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                totalLengths[field] += segment.lengths[doc][field];
+            }
+        }
+        // Сегменты без живых документов и отметок больше ничего не перекрывают
+        segments.removeIf(existing -> existing != segment && existing.tombstones.length == 0
+                && existing.liveDocs == 0 && deleteQuietly(existing));
+    }
+
+    private boolean deleteQuietly(Segment segment) {
+        try {
+            Files.deleteIfExists(segmentPath(segment.generation));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void removeLive(long pageId) {
+        DocRef previous = live.remove(pageId);
+        if (previous != null) {
+            previous.segment.liveDocs--;
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                totalLengths[field] -= previous.segment.lengths[previous.doc][field];
+            }
+        }
+    }
+
+    private boolean isLive(Segment segment, int doc) {
+        DocRef ref = live.get(segment.pageIds[doc]);
+        return ref != null && ref.segment == segment && ref.doc == doc;
+    }
+
+    private Path segmentPath(long generation) {
+        return directory.resolve(String.format("segment-%016d%s", generation, SEGMENT_SUFFIX));
+    }
+
+    private void writeSegment(Segment segment) {
+        Path target = segmentPath(segment.generation);
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(segment.generation);
+            out.writeInt(segment.tombstones.length);
+            for (long pageId : segment.tombstones) {
+                out.writeLong(pageId);
+            }
+            out.writeInt(segment.pageIds.length);
+            for (int doc = 0; doc < segment.pageIds.length; doc++) {
+                out.writeLong(segment.pageIds[doc]);
+                out.writeUTF(segment.slugs[doc]);
+                out.writeUTF(segment.titles[doc]);
+                for (int field = 0; field < FIELD_COUNT; field++) {
+                    out.writeInt(segment.lengths[doc][field]);
+                }
+            }
+            out.writeInt(segment.postings.size());
+            for (Map.Entry<String, int[]> entry : segment.postings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                int[] postings = entry.getValue();
+                out.writeInt(postings.length);
+                for (int value : postings) {
+                    out.writeInt(value);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось записать сегмент индекса " + target, e);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось записать сегмент индекса " + target, e);
+        }
+    }
+
+    private static Segment readSegment(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Неизвестный формат сегмента " + file);
+            }
+            long generation = in.readLong();
+            long[] tombstones = new long[in.readInt()];
+            for (int i = 0; i < tombstones.length; i++) {
+                tombstones[i] = in.readLong();
+            }
+            int docCount = in.readInt();
+            long[] pageIds = new long[docCount];
+            String[] slugs = new String[docCount];
+            String[] titles = new String[docCount];
+            int[][] lengths = new int[docCount][FIELD_COUNT];
+            for (int doc = 0; doc < docCount; doc++) {
+                pageIds[doc] = in.readLong();
+                slugs[doc] = in.readUTF();
+                titles[doc] = in.readUTF();
+                for (int field = 0; field < FIELD_COUNT; field++) {
+                    lengths[doc][field] = in.readInt();
+                }
+            }
+            int termCount = in.readInt();
+            Map<String, int[]> postings = new HashMap<>(termCount * 2);
+            for (int i = 0; i < termCount; i++) {
+                String term = in.readUTF();
+                int[] values = new int[in.readInt()];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = in.readInt();
+                }
+                postings.put(term, values);
+            }
+            return new Segment(generation, tombstones, pageIds, slugs, titles, lengths, postings);
+        }
+    }
+
+    private static final class Segment {
+        final long generation;
+        final long[] tombstones;
+        final long[] pageIds;
+        final String[] slugs;
+        final String[] titles;
+        final int[][] lengths;
+        // Термин с префиксом поля -> пары (номер документа в сегменте, частота)
+        final Map<String, int[]> postings;
+        // Документы сегмента, ещё не перекрытые более новыми; меняется под блокировкой записи
+        int liveDocs;
+
+        Segment(long generation, long[] tombstones, long[] pageIds, String[] slugs, String[] titles,
+                int[][] lengths, Map<String, int[]> postings) {
+            this.generation = generation;
+            this.tombstones = tombstones;
+            this.pageIds = pageIds;
+            this.slugs = slugs;
+            this.titles = titles;
+            this.lengths = lengths;
+            this.postings = postings;
+        }
+    }
+
+    private static final class DocRef {
+        final Segment segment;
+        final int doc;
+
+        DocRef(Segment segment, int doc) {
+            this.segment = segment;
+            this.doc = doc;
+        }
+    }
+
+    private static final class SegmentBuilder {
+        private final List<Long> tombstones = new ArrayList<>();
+        private final List<Long> pageIds = new ArrayList<>();
+        private final List<String> slugs = new ArrayList<>();
+        private final List<String> titles = new ArrayList<>();
+        private final List<int[]> lengths = new ArrayList<>();
+        private final Map<String, IntList> postings = new HashMap<>();
+
+        void delete(Long pageId) {
+            tombstones.add(pageId);
+        }
+
+        boolean isEmpty() {
+            return tombstones.isEmpty() && pageIds.isEmpty();
+        }
+
+        void add(PageDocument document) {
+            int doc = pageIds.size();
+            pageIds.add(document.getId());
+            slugs.add(document.getSlug());
+            titles.add(document.getTitle());
+            int[] fieldLengths = new int[FIELD_COUNT];
+            fieldLengths[Field.TITLE.ordinal()] = addField(doc, Field.TITLE, document.getTitle());
+            fieldLengths[Field.TAGS.ordinal()] = addField(doc, Field.TAGS, String.join(" ", document.getTags()));
+            fieldLengths[Field.CONTENT.ordinal()] = addField(doc, Field.CONTENT, document.getContent());
+            lengths.add(fieldLengths);
+        }
+
+        private int addField(int doc, Field field, String text) {
+            List<String> terms = Analyzer.analyze(text);
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String term : terms) {
+                frequencies.merge(term, 1, Integer::sum);
+            }
+            frequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(field.prefix + term, key -> new IntList()).add(doc, frequency));
+            return terms.size();
+        }
+
+        // Переносит живые документы сегмента; номера документов растут, поэтому списки остаются упорядоченными
+        void addLive(Segment segment, EmbeddedSearchEngine engine) {
+            int[] remap = new int[segment.pageIds.length];
+            for (int doc = 0; doc < remap.length; doc++) {
+                if (engine.isLive(segment, doc)) {
+                    remap[doc] = pageIds.size();
+                    pageIds.add(segment.pageIds[doc]);
+                    slugs.add(segment.slugs[doc]);
+                    titles.add(segment.titles[doc]);
+                    lengths.add(segment.lengths[doc]);
+                } else {
+                    remap[doc] = -1;
+                }
+            }
+            segment.postings.forEach((term, values) -> {
+                for (int i = 0; i < values.length; i += 2) {
+                    int doc = remap[values[i]];
+                    if (doc >= 0) {
+                        postings.computeIfAbsent(term, key -> new IntList()).add(doc, values[i + 1]);
+                    }
+                }
+            });
+        }
+
+        Segment build(long generation) {
+            Map<String, int[]> built = new HashMap<>(postings.size() * 2);
+            postings.forEach((term, values) -> built.put(term, values.toArray()));
+            return new Segment(generation,
+                    tombstones.stream().mapToLong(Long::longValue).toArray(),
+                    pageIds.stream().mapToLong(Long::longValue).toArray(),
+                    slugs.toArray(String[]::new),
+                    titles.toArray(String[]::new),
+                    lengths.toArray(int[][]::new),
+                    built);
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int first, int second) {
+            if (size + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = first;
+            values[size++] = second;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
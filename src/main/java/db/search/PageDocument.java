@@ -0,0 +1,18 @@
+package db.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageDocument {
+    private Long id;
+    private String slug;
+    private String title;
+    private List<String> tags;
+    private String content;
+}
@@ -0,0 +1,130 @@
+package db.search;
+
+import org.hibernate.Session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Собирает документы для индекса тремя запросами на пачку страниц вместо обхода ленивых коллекций
+public class PageDocumentLoader {
+    public static final int BATCH_SIZE = 500;
+
+    private PageDocumentLoader() {
+    }
+
+    public static PageDocument load(Session session, Long pageId) {
+        return loadAll(session, List.of(pageId)).get(pageId);
+    }
+
+    public static Map<Long, PageDocument> loadAll(Session session, Collection<Long> pageIds) {
+        Map<Long, PageDocument> documents = new LinkedHashMap<>();
+        if (pageIds.isEmpty()) {
+            return documents;
+        }
+        List<Object[]> pages = session.createNativeQuery(
+                        "SELECT id, slug, title FROM pages WHERE id IN (:ids) ORDER BY id", Object[].class)
+                .setParameterList("ids", pageIds)
+                .list();
+        for (Object[] row : pages) {
+            Long id = ((Number) row[0]).longValue();
+            documents.put(id, new PageDocument(id, (String) row[1], (String) row[2], new ArrayList<>(), ""));
+        }
+        if (documents.isEmpty()) {
+            return documents;
+        }
+
+        List<Object[]> tags = session.createNativeQuery(
+                        "SELECT pt.page_id, t.name FROM page_tags pt JOIN tags t ON t.id = pt.tag_id " +
+                                "WHERE pt.page_id IN (:ids) ORDER BY t.name", Object[].class)
+                .setParameterList("ids", documents.keySet())
+                .list();
+        for (Object[] row : tags) {
+            documents.get(((Number) row[0]).longValue()).getTags().add((String) row[1]);
+        }
+
+        // Последняя опубликованная версия, а если опубликованных нет — последняя версия
+        List<Object[]> contents = session.createNativeQuery(
+                        "SELECT DISTINCT ON (page_id) page_id, content FROM page_versions " +
+                                "WHERE page_id IN (:ids) ORDER BY page_id, isPublished DESC, versionNumber DESC",
+                        Object[].class)
+                .setParameterList("ids", documents.keySet())
+                .list();
+        for (Object[] row : contents) {
+            String content = (String) row[1];
+            documents.get(((Number) row[0]).longValue()).setContent(content != null ? content : "");
+        }
+        return documents;
+    }
+
+    // Содержимое всех версий страниц в порядке номеров версий
+    public static Map<Long, List<String>> loadVersionContents(Session session, Collection<Long> pageIds) {
+        Map<Long, List<String>> contents = new LinkedHashMap<>();
+        if (pageIds.isEmpty()) {
+            return contents;
+        }
+        List<Object[]> rows = session.createNativeQuery(
+                        "SELECT page_id, content FROM page_versions WHERE page_id IN (:ids) " +
+                                "ORDER BY page_id, versionNumber", Object[].class)
+                .setParameterList("ids", pageIds)
+                .list();
+        for (Object[] row : rows) {
+            String content = (String) row[1];
+            contents.computeIfAbsent(((Number) row[0]).longValue(), id -> new ArrayList<>())
+                    .add(content != null ? content : "");
+        }
+        return contents;
+    }
+
+    // Версии страниц для индекса истории; при latestOnly только последняя версия каждой страницы
+    public static List<VersionDocument> loadVersions(Session session, Collection<Long> pageIds, boolean latestOnly) {
+        if (pageIds.isEmpty()) {
+            return List.of();
+        }
+        String sql = latestOnly
+                ? "SELECT DISTINCT ON (page_id) id, page_id, versionNumber, isPublished, content FROM page_versions " +
+                        "WHERE page_id IN (:ids) ORDER BY page_id, versionNumber DESC"
+                : "SELECT id, page_id, versionNumber, isPublished, content FROM page_versions " +
+                        "WHERE page_id IN (:ids) ORDER BY page_id, versionNumber";
+        List<Object[]> rows = session.createNativeQuery(sql, Object[].class)
+                .setParameterList("ids", pageIds)
+                .list();
+        List<VersionDocument> versions = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            String content = (String) row[4];
+            versions.add(new VersionDocument(((Number) row[0]).longValue(), ((Number) row[1]).longValue(),
+                    ((Number) row[2]).intValue(), (Boolean) row[3], content != null ? content : ""));
+        }
+        return versions;
+    }
+
+    // Идентификаторы страниц порциями по возрастанию, для полной сборки индекса
+    public static List<Long> nextPageIds(Session session, Long afterId, int limit) {
+        return session.createQuery("SELECT p.id FROM Page p WHERE p.id > :afterId ORDER BY p.id", Long.class)
+                .setParameter("afterId", afterId)
+                .setMaxResults(limit)
+                .list();
+    }
+
+    // То же в пределах (afterId, upToId], для параллельного обхода по диапазонам
+    public static List<Long> nextPageIds(Session session, Long afterId, Long upToId, int limit) {
+        return session.createQuery(
+                        "SELECT p.id FROM Page p WHERE p.id > :afterId AND p.id <= :upToId ORDER BY p.id", Long.class)
+                .setParameter("afterId", afterId)
+                .setParameter("upToId", upToId)
+                .setMaxResults(limit)
+                .list();
+    }
+
+    // Минимальный и максимальный id страниц или null, если страниц нет
+    public static long[] idRange(Session session) {
+        Object[] row = session.createQuery("SELECT min(p.id), max(p.id) FROM Page p", Object[].class)
+                .uniqueResult();
+        if (row == null || row[0] == null) {
+            return null;
+        }
+        return new long[]{((Number) row[0]).longValue(), ((Number) row[1]).longValue()};
+    }
+}
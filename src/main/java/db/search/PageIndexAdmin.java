@@ -0,0 +1,228 @@
+package db.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch.indices.CreateIndexResponse;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import co.elastic.clients.elasticsearch.indices.get_mapping.IndexMappingRecord;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import db.util.Backend;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Поиск и индексация обращаются к псевдониму ALIAS, за которым стоит версионированный индекс pages_<время>.
+// Переиндексация создаёт новый индекс и переключает на него псевдоним одним атомарным запросом.
+// Схема документа страницы зависит от CONTENT_MODE; история версий при docman.search.history=true
+// хранится отдельно в HISTORY_INDEX, по документу на версию.
+public class PageIndexAdmin {
+    public static final String ALIAS = "pages";
+    public static final String HISTORY_INDEX = "page_versions";
+    public static final ContentIndexMode CONTENT_MODE = ContentIndexMode.current();
+    public static final boolean HISTORY_ENABLED = Boolean.getBoolean("docman.search.history");
+
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS");
+    // Настройки, которые получает индекс после загрузки, если у текущего индекса они не заданы
+    private static final String DEFAULT_REPLICAS = System.getProperty("docman.search.replicas", "1");
+    private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+
+    private PageIndexAdmin() {
+    }
+
+    // Миллисекунды и случайный суффикс: имена не совпадают и при переиндексации с разных узлов
+    public static String newIndexName() {
+        return ALIAS + "_" + LocalDateTime.now().format(VERSION_FORMAT)
+                + "_" + Integer.toHexString(ThreadLocalRandom.current().nextInt(0x1000, 0x10000));
+    }
+
+    // Создаёт индекс с псевдонимом, если его ещё нет. Индекс pages, созданный до появления псевдонимов,
+    // остаётся как есть до первой переиндексации
+    public static void ensureAlias(ElasticsearchClient client) {
+        call(() -> {
+            if (HISTORY_ENABLED && !client.indices().exists(e -> e.index(HISTORY_INDEX)).value()) {
+                createHistory(client);
+            }
+            if (client.indices().existsAlias(e -> e.name(ALIAS)).value()
+                    || client.indices().exists(e -> e.index(ALIAS)).value()) {
+                return null;
+            }
+            String index = newIndexName();
+            create(client, index, false);
+            client.indices().updateAliases(u -> u.actions(a -> a.add(add -> add.index(index).alias(ALIAS))));
+            return null;
+        });
+    }
+
+    // Схема текущего индекса страниц построена для другого CONTENT_MODE; индекса ещё нет — совпадает
+    public static boolean contentModeMismatch(ElasticsearchClient client) {
+        return call(() -> {
+            if (!client.indices().existsAlias(e -> e.name(ALIAS)).value()
+                    && !client.indices().exists(e -> e.index(ALIAS)).value()) {
+                return false;
+            }
+            String expected = CONTENT_MODE == ContentIndexMode.LATEST ? "content" : "versions";
+            for (IndexMappingRecord record : client.indices().getMapping(g -> g.index(ALIAS)).result().values()) {
+                if (record.mappings() == null || !record.mappings().properties().containsKey(expected)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    // При bulkLoad обновление отключено, а реплики не создаются до окончания загрузки
+    public static void createIndex(ElasticsearchClient client, String index, boolean bulkLoad) {
+        call(() -> create(client, index, bulkLoad));
+    }
+
+    private static CreateIndexResponse create(ElasticsearchClient client, String index, boolean bulkLoad)
+            throws IOException {
+        return client.indices().create(c -> c
+                .index(index)
+                .settings(s -> bulkLoad
+                        ? s.refreshInterval(t -> t.time("-1")).numberOfReplicas("0")
+                        : s)
+                .mappings(m -> {
+                    m.properties("id", p -> p.long_(l -> l))
+                            .properties("slug", p -> p.keyword(k -> k))
+                            .properties("title", p -> p.text(t -> t))
+                            .properties("tags", p -> p.nested(n -> n
+                                    .properties("name", np -> np.text(t -> t))));
+                    if (CONTENT_MODE == ContentIndexMode.LATEST) {
+                        m.properties("content", p -> p.text(t -> t));
+                    } else {
+                        m.properties("versions", p -> p.nested(n -> n
+                                .properties("content", np -> np.text(t -> t))));
+                    }
+                    return m;
+                }));
+    }
+
+    private static CreateIndexResponse createHistory(ElasticsearchClient client) throws IOException {
+        return client.indices().create(c -> c
+                .index(HISTORY_INDEX)
+                .mappings(m -> m
+                        .properties("id", p -> p.long_(l -> l))
+                        .properties("page_id", p -> p.long_(l -> l))
+                        .properties("version_number", p -> p.integer(i -> i))
+                        .properties("published", p -> p.boolean_(b -> b))
+                        .properties("content", p -> p.text(t -> t))));
+    }
+
+    // Структура совпадает с тем, что ожидают запросы SearchDAO; versionContents нужны только в режиме VERSIONS
+    static Map<String, Object> toSource(PageDocument document, List<String> versionContents) {
+        Map<String, Object> source = new LinkedHashMap<>();
+        source.put("id", document.getId());
+        source.put("slug", document.getSlug());
+        source.put("title", document.getTitle());
+        source.put("tags", document.getTags().stream().map(name -> Map.of("name", name)).toList());
+        if (CONTENT_MODE == ContentIndexMode.LATEST) {
+            source.put("content", document.getContent());
+        } else {
+            source.put("versions", versionContents.stream().map(content -> Map.of("content", content)).toList());
+        }
+        return source;
+    }
+
+    static Map<String, Object> toHistorySource(VersionDocument version) {
+        Map<String, Object> source = new LinkedHashMap<>();
+        source.put("id", version.getId());
+        source.put("page_id", version.getPageId());
+        source.put("version_number", version.getVersionNumber());
+        source.put("published", version.isPublished());
+        source.put("content", version.getContent());
+        return source;
+    }
+
+    // Версии удалённых страниц; документы истории не связаны с псевдонимом и переиндексацией
+    public static void deleteHistory(ElasticsearchClient client, Collection<Long> pageIds) {
+        if (pageIds.isEmpty()) {
+            return;
+        }
+        List<FieldValue> values = pageIds.stream().map(FieldValue::of).toList();
+        call(() -> client.deleteByQuery(d -> d
+                .index(HISTORY_INDEX)
+                .query(q -> q.terms(t -> t.field("page_id").terms(v -> v.value(values))))));
+    }
+
+    // Возвращает новому индексу число реплик и интервал обновления индекса, на который сейчас указывает псевдоним
+    public static void finishBulkLoad(ElasticsearchClient client, String index) {
+        call(() -> {
+            IndexSettings current = currentSettings(client);
+            String replicas = current != null && current.numberOfReplicas() != null
+                    ? current.numberOfReplicas() : DEFAULT_REPLICAS;
+            Time refreshInterval = current != null && current.refreshInterval() != null
+                    ? current.refreshInterval() : Time.of(t -> t.time(DEFAULT_REFRESH_INTERVAL));
+            client.indices().putSettings(p -> p
+                    .index(index)
+                    .settings(s -> s.refreshInterval(refreshInterval).numberOfReplicas(replicas)));
+            client.indices().refresh(r -> r.index(index));
+            return null;
+        });
+    }
+
+    // Настройки уровня index текущего индекса страниц; null, если индекса ещё нет
+    private static IndexSettings currentSettings(ElasticsearchClient client) throws IOException {
+        if (!client.indices().existsAlias(e -> e.name(ALIAS)).value()
+                && !client.indices().exists(e -> e.index(ALIAS)).value()) {
+            return null;
+        }
+        for (IndexState state : client.indices().getSettings(g -> g.index(ALIAS)).result().values()) {
+            IndexSettings settings = state.settings();
+            if (settings != null) {
+                return settings.index() != null ? settings.index() : settings;
+            }
+        }
+        return null;
+    }
+
+    // Одним запросом: псевдоним переходит на новый индекс, а прежний индекс без псевдонима удаляется.
+    // Возвращает индексы, на которые псевдоним указывал раньше
+    public static Set<String> switchAlias(ElasticsearchClient client, String index) {
+        return call(() -> {
+            List<Action> actions = new ArrayList<>();
+            Set<String> previous = Set.of();
+            if (client.indices().existsAlias(e -> e.name(ALIAS)).value()) {
+                previous = client.indices().getAlias(g -> g.name(ALIAS)).result().keySet();
+                for (String old : previous) {
+                    actions.add(Action.of(a -> a.remove(r -> r.index(old).alias(ALIAS))));
+                }
+            } else if (client.indices().exists(e -> e.index(ALIAS)).value()) {
+                actions.add(Action.of(a -> a.removeIndex(r -> r.index(ALIAS))));
+            }
+            actions.add(Action.of(a -> a.add(add -> add.index(index).alias(ALIAS))));
+            client.indices().updateAliases(u -> u.actions(actions));
+            return previous;
+        });
+    }
+
+    public static void deleteIndex(ElasticsearchClient client, String index) {
+        call(() -> client.indices().delete(d -> d.index(index)));
+    }
+
+    private static <T> T call(IndexAction<T> action) {
+        return Backend.ELASTICSEARCH.call(() -> {
+            try {
+                return action.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface IndexAction<T> {
+        T run() throws IOException;
+    }
+}
@@ -0,0 +1,17 @@
+package db.search;
+
+// Получает изменения страниц из outbox после фиксации транзакций. Исключение означает, что изменение
+// не применено: событие останется необработанным и будет доставлено повторно
+public interface PageIndexListener {
+    void pageChanged(Long pageId);
+
+    void pageDeleted(Long pageId);
+
+    // Изменились теги или их привязка к страницам
+    default void tagsChanged() {
+    }
+
+    // Вызывается после пачки событий: к возврату все полученные изменения должны быть записаны в индекс
+    default void flush() {
+    }
+}
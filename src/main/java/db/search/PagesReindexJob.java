@@ -0,0 +1,243 @@
+package db.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import db.util.Backend;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Полная пересборка индекса страниц без простоя поиска.
+// Страницы читаются из базы параллельно по диапазонам id и загружаются в новый индекс с отключённым обновлением;
+// поиск всё это время работает со старым индексом, затем псевдоним атомарно переключается на новый.
+// Изменения, сделанные во время загрузки, конвейер индексации дублирует в новый индекс; загрузка пишет
+// документы операцией create, поэтому не затирает более свежую версию, уже записанную конвейером.
+public class PagesReindexJob {
+    private static final int SLICES = Integer.getInteger("docman.reindex.slices", 4);
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_BACKOFF_MILLIS = 500;
+    private static final long PIPELINE_FLUSH_MILLIS = 30_000;
+    private static final boolean KEEP_OLD_INDEX = Boolean.getBoolean("docman.reindex.keepOld");
+    private static final AtomicBoolean RUNNING = new AtomicBoolean();
+
+    private final SessionFactory sessionFactory;
+    private final ElasticsearchClient client;
+    private final ElasticsearchIndexingPipeline pipeline;
+    private final AtomicLong indexed = new AtomicLong();
+
+    public PagesReindexJob(SessionFactory sessionFactory, ElasticsearchClient client,
+                           ElasticsearchIndexingPipeline pipeline) {
+        this.sessionFactory = sessionFactory;
+        this.client = client;
+        this.pipeline = pipeline;
+    }
+
+    // Возвращает число загруженных страниц
+    public long run() {
+        if (!RUNNING.compareAndSet(false, true)) {
+            throw new IllegalStateException("Переиндексация уже выполняется");
+        }
+        try {
+            return reindex();
+        } finally {
+            RUNNING.set(false);
+        }
+    }
+
+    private long reindex() {
+        long started = System.currentTimeMillis();
+        String index = PageIndexAdmin.newIndexName();
+        PageIndexAdmin.ensureAlias(client);
+        PageIndexAdmin.createIndex(client, index, true);
+        try {
+            pipeline.beginReindex(index);
+        } catch (RuntimeException e) {
+            PageIndexAdmin.deleteIndex(client, index);
+            throw e;
+        }
+        try {
+            loadSlices(index);
+            removeDeleted(index);
+            PageIndexAdmin.finishBulkLoad(client, index);
+            // Изменения из очереди конвейера должны попасть в новый индекс до переключения
+            if (!pipeline.flush(PIPELINE_FLUSH_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException("Очередь индексации не разобрана, переключение индекса " + index + " отменено");
+            }
+            removeDeleted(index);
+            Set<String> previous = PageIndexAdmin.switchAlias(client, index);
+            SearchIndexing.indexChanged();
+            pipeline.endReindex(index);
+            if (!KEEP_OLD_INDEX) {
+                previous.forEach(old -> PageIndexAdmin.deleteIndex(client, old));
+            }
+        } catch (RuntimeException e) {
+            pipeline.endReindex(index);
+            try {
+                PageIndexAdmin.deleteIndex(client, index);
+            } catch (RuntimeException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+        System.out.println("Индекс " + index + " собран: " + indexed.get() + " страниц за "
+                + (System.currentTimeMillis() - started) + " мс");
+        return indexed.get();
+    }
+
+    private void loadSlices(String index) {
+        long[] range;
+        try (Session session = sessionFactory.openSession()) {
+            range = PageDocumentLoader.idRange(session);
+        }
+        if (range == null) {
+            return;
+        }
+        // Диапазон (from, to] каждого среза; последний срез доходит до максимального id
+        long span = Math.max(1, (range[1] - range[0] + SLICES) / SLICES);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (long from = range[0] - 1; from < range[1]; from += span) {
+                long sliceFrom = from;
+                long sliceTo = Math.min(from + span, range[1]);
+                futures.add(executor.submit(() -> loadSlice(index, sliceFrom, sliceTo)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Переиндексация прервана", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Ошибка загрузки страниц в индекс " + index, e.getCause());
+        }
+    }
+
+    private void loadSlice(String index, long from, long to) {
+        Long afterId = from;
+        while (true) {
+            Map<Long, PageDocument> documents;
+            Map<Long, List<String>> versions;
+            List<VersionDocument> history;
+            List<Long> ids;
+            try (Session session = sessionFactory.openSession()) {
+                ids = PageDocumentLoader.nextPageIds(session, afterId, to, PageDocumentLoader.BATCH_SIZE);
+                if (ids.isEmpty()) {
+                    return;
+                }
+                documents = PageDocumentLoader.loadAll(session, ids);
+                versions = PageIndexAdmin.CONTENT_MODE == ContentIndexMode.VERSIONS
+                        ? PageDocumentLoader.loadVersionContents(session, documents.keySet())
+                        : Map.of();
+                history = PageIndexAdmin.HISTORY_ENABLED
+                        ? PageDocumentLoader.loadVersions(session, documents.keySet(), false)
+                        : List.of();
+            }
+            if (!documents.isEmpty()) {
+                BulkRequest.Builder request = new BulkRequest.Builder();
+                documents.forEach((pageId, document) -> {
+                    Map<String, Object> source =
+                            PageIndexAdmin.toSource(document, versions.getOrDefault(pageId, List.of()));
+                    request.operations(op -> op.create(c -> c.index(index).id(pageId.toString()).document(source)));
+                });
+                bulk(request.build());
+                indexed.addAndGet(documents.size());
+            }
+            // История не переключается псевдонимом: документы версий перезаписываются на месте
+            if (!history.isEmpty()) {
+                BulkRequest.Builder request = new BulkRequest.Builder();
+                for (VersionDocument version : history) {
+                    Map<String, Object> source = PageIndexAdmin.toHistorySource(version);
+                    request.operations(op -> op.index(i -> i
+                            .index(PageIndexAdmin.HISTORY_INDEX).id(version.getId().toString()).document(source)));
+                }
+                bulk(request.build());
+            }
+            afterId = ids.get(ids.size() - 1);
+        }
+    }
+
+    // Страницы, удалённые во время загрузки, могли быть прочитаны срезом до удаления
+    private void removeDeleted(String index) {
+        Set<Long> deleted = pipeline.getDeletedDuringReindex();
+        if (deleted.isEmpty()) {
+            return;
+        }
+        BulkRequest.Builder request = new BulkRequest.Builder();
+        for (Long pageId : deleted) {
+            request.operations(op -> op.delete(d -> d.index(index).id(pageId.toString())));
+        }
+        bulk(request.build());
+    }
+
+    private void bulk(BulkRequest request) {
+        long backoff = RETRY_BACKOFF_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            BulkResponse response;
+            try {
+                response = Backend.ELASTICSEARCH.call(() -> {
+                    try {
+                        return client.bulk(request);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                sleep(backoff);
+                backoff *= 2;
+                continue;
+            }
+            if (!response.errors()) {
+                return;
+            }
+            boolean retry = false;
+            for (BulkResponseItem item : response.items()) {
+                // 409: документ уже записан конвейером, 404: удаляемого документа нет
+                if (item.error() == null || item.status() == 409 || item.status() == 404) {
+                    continue;
+                }
+                if (item.status() == 429 || item.status() >= 500) {
+                    retry = true;
+                } else {
+                    throw new RuntimeException("Elasticsearch отклонил страницу " + item.id() + ": "
+                            + item.error().reason());
+                }
+            }
+            if (!retry) {
+                return;
+            }
+            if (attempt >= MAX_ATTEMPTS) {
+                throw new RuntimeException("Elasticsearch перегружен, пачка не загружена за " + MAX_ATTEMPTS + " попыток");
+            }
+            // Повторная отправка всей пачки безопасна: уже созданные документы вернут 409
+            sleep(backoff);
+            backoff *= 2;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Переиндексация прервана", e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package db.search;
+
+// Алгоритм стемминга Snowball для русского языка
+class RussianStemmer {
+    private static final String VOWELS = "аеиоуыэюя";
+
+    private static final String[] PERFECTIVE_GERUND_1 = {"в", "вши", "вшись"};
+    private static final String[] PERFECTIVE_GERUND_2 = {"ив", "ивши", "ившись", "ыв", "ывши", "ывшись"};
+    private static final String[] ADJECTIVE = {
+            "ее", "ие", "ые", "ое", "ими", "ыми", "ей", "ий", "ый", "ой", "ем", "им", "ым", "ом",
+            "его", "ого", "ему", "ому", "их", "ых", "ую", "юю", "ая", "яя", "ою", "ею"};
+    private static final String[] PARTICIPLE_1 = {"ем", "нн", "вш", "ющ", "щ"};
+    private static final String[] PARTICIPLE_2 = {"ивш", "ывш", "ующ"};
+    private static final String[] REFLEXIVE = {"ся", "сь"};
+    private static final String[] VERB_1 = {
+            "ла", "на", "ете", "йте", "ли", "й", "л", "ем", "н", "ло", "но", "ет", "ют", "ны", "ть", "ешь", "нно"};
+    private static final String[] VERB_2 = {
+            "ила", "ыла", "ена", "ейте", "уйте", "ите", "или", "ыли", "ей", "уй", "ил", "ыл", "им", "ым", "ен",
+            "ило", "ыло", "ено", "ят", "ует", "уют", "ит", "ыт", "ены", "ить", "ыть", "ишь", "ую", "ю"};
+    private static final String[] NOUN = {
+            "а", "ев", "ов", "ие", "ье", "е", "иями", "ями", "ами", "еи", "ии", "и", "ией", "ей", "ой", "ий", "й",
+            "иям", "ям", "ием", "ем", "ам", "ом", "о", "у", "ах", "иях", "ях", "ы", "ь", "ию", "ью", "ю", "ия", "ья", "я"};
+    private static final String[] SUPERLATIVE = {"ейш", "ейше"};
+    private static final String[] DERIVATIONAL = {"ост", "ость"};
+    private static final String[] NONE = {};
+
+    private RussianStemmer() {
+    }
+
+    static String stem(String word) {
+        int rv = regionAfterVowel(word, 0);
+        if (rv >= word.length()) {
+            return word;
+        }
+        int r1 = regionAfterConsonant(word, 0);
+        int r2 = regionAfterConsonant(word, r1);
+        StringBuilder sb = new StringBuilder(word);
+
+        if (!removeEnding(sb, rv, PERFECTIVE_GERUND_1, PERFECTIVE_GERUND_2)) {
+            removeEnding(sb, rv, NONE, REFLEXIVE);
+            if (removeEnding(sb, rv, NONE, ADJECTIVE)) {
+                removeEnding(sb, rv, PARTICIPLE_1, PARTICIPLE_2);
+            } else if (!removeEnding(sb, rv, VERB_1, VERB_2)) {
+                removeEnding(sb, rv, NONE, NOUN);
+            }
+        }
+
+        if (sb.length() > rv && sb.charAt(sb.length() - 1) == 'и') {
+            sb.setLength(sb.length() - 1);
+        }
+
+        removeEnding(sb, r2, NONE, DERIVATIONAL);
+
+        if (removeEnding(sb, rv, NONE, SUPERLATIVE)) {
+            undoubleN(sb, rv);
+        } else if (!undoubleN(sb, rv) && sb.length() > rv && sb.charAt(sb.length() - 1) == 'ь') {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
+    // Окончания первой группы удаляются, только если перед ними стоит «а» или «я»
+    private static boolean removeEnding(StringBuilder sb, int regionStart, String[] afterAOrYa, String[] plain) {
+        String best = null;
+        for (String ending : afterAOrYa) {
+            int start = sb.length() - ending.length();
+            if (start - 1 >= regionStart && endsWith(sb, ending)
+                    && (sb.charAt(start - 1) == 'а' || sb.charAt(start - 1) == 'я')
+                    && (best == null || ending.length() > best.length())) {
+                best = ending;
+            }
+        }
+        for (String ending : plain) {
+            int start = sb.length() - ending.length();
+            if (start >= regionStart && endsWith(sb, ending) && (best == null || ending.length() > best.length())) {
+                best = ending;
+            }
+        }
+        if (best == null) {
+            return false;
+        }
+        sb.setLength(sb.length() - best.length());
+        return true;
+    }
+
+    private static boolean undoubleN(StringBuilder sb, int regionStart) {
+        if (sb.length() - 2 >= regionStart && endsWith(sb, "нн")) {
+            sb.setLength(sb.length() - 1);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean endsWith(StringBuilder sb, String ending) {
+        int offset = sb.length() - ending.length();
+        if (offset < 0) {
+            return false;
+        }
+        for (int i = 0; i < ending.length(); i++) {
+            if (sb.charAt(offset + i) != ending.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int regionAfterVowel(String word, int from) {
+        for (int i = from; i < word.length(); i++) {
+            if (isVowel(word.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return word.length();
+    }
+
+    private static int regionAfterConsonant(String word, int from) {
+        for (int i = from + 1; i < word.length(); i++) {
+            if (!isVowel(word.charAt(i)) && isVowel(word.charAt(i - 1))) {
+                return i + 1;
+            }
+        }
+        return word.length();
+    }
+
+    private static boolean isVowel(char c) {
+        return VOWELS.indexOf(c) >= 0;
+    }
+}
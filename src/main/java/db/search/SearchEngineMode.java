@@ -0,0 +1,17 @@
+package db.search;
+
+import java.util.Locale;
+
+public enum SearchEngineMode {
+    ELASTICSEARCH,
+    EMBEDDED;
+
+    public static SearchEngineMode current() {
+        String value = System.getProperty("docman.search.engine", ELASTICSEARCH.name());
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Неизвестный поисковый движок: " + value, e);
+        }
+    }
+}
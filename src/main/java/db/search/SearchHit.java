@@ -0,0 +1,15 @@
+package db.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchHit {
+    private Long pageId;
+    private String slug;
+    private String title;
+    private double score;
+}
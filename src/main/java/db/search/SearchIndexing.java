@@ -0,0 +1,56 @@
+package db.search;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Реестр получателей изменений страниц. Вызывается только из SearchIndexingConsumer: ошибки не перехватываются,
+// чтобы событие outbox не было отмечено обработанным, пока индекс его не применил
+public class SearchIndexing {
+    private static final CopyOnWriteArrayList<PageIndexListener> listeners = new CopyOnWriteArrayList<>();
+    // Растёт каждый раз, когда изменения становятся видны поиску; по нему устаревают кэшированные результаты
+    private static final AtomicLong generation = new AtomicLong();
+
+    private SearchIndexing() {
+    }
+
+    public static void register(PageIndexListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public static void unregister(PageIndexListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Счётчик этого процесса: растёт, когда индексирует этот узел, и не видит индексацию на других узлах
+    public static long currentGeneration() {
+        return generation.get();
+    }
+
+    public static void indexChanged() {
+        generation.incrementAndGet();
+    }
+
+    public static void pageChanged(Long pageId) {
+        for (PageIndexListener listener : listeners) {
+            listener.pageChanged(pageId);
+        }
+    }
+
+    public static void pageDeleted(Long pageId) {
+        for (PageIndexListener listener : listeners) {
+            listener.pageDeleted(pageId);
+        }
+    }
+
+    public static void tagsChanged() {
+        for (PageIndexListener listener : listeners) {
+            listener.tagsChanged();
+        }
+    }
+
+    public static void flush() {
+        for (PageIndexListener listener : listeners) {
+            listener.flush();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package db.search;
+
+import java.lang.ref.WeakReference;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+// Локальный кэш результатов поиска. Запись действительна, пока не изменилось поколение индекса
+// (SearchIndexing.currentGeneration) и не истёк MAX_AGE_MILLIS; часто запрашиваемые устаревшие записи
+// перезагружаются в фоне, чтобы первый запрос после индексации не ждал поискового движка.
+// Поколение считается только в этом процессе: изменения, проиндексированные другим узлом,
+// становятся видны не позже чем через MAX_AGE_MILLIS.
+// Значения изменяемые, поэтому вызывающий всегда получает копию (copier), а не объект из кэша.
+public class SearchResultCache<V> {
+    private static final int MAX_ENTRIES = Integer.getInteger("docman.search.cache.size", 1_000);
+    private static final long REFRESH_INTERVAL_MILLIS = Long.getLong("docman.search.cache.refresh.millis", 1_000);
+    // Столько обращений за интервал обновления делают запрос «популярным»
+    private static final int POPULAR_HITS = 3;
+    private static final long MAX_AGE_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("docman.search.cache.maxAge.millis", 30_000));
+
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "docman-search-cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final UnaryOperator<V> copier;
+    private final Refresh refresh;
+
+    public SearchResultCache(UnaryOperator<V> copier) {
+        this.copier = copier;
+        this.refresh = new Refresh(this);
+        refresh.future = REFRESHER.scheduleWithFixedDelay(refresh,
+                REFRESH_INTERVAL_MILLIS, REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Регистр, пробелы и пунктуация не влияют на ключ: «Установка  сервера!» и «установка сервера» совпадают
+    public static String normalize(String query) {
+        return String.join(" ", Analyzer.tokenize(query));
+    }
+
+    // Ошибка loader передаётся вызывающему и не кэшируется, как и результат null
+    public V get(String key, Supplier<V> loader) {
+        long generation = SearchIndexing.currentGeneration();
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            entry.hits.incrementAndGet();
+            entry.lastAccessNanos = System.nanoTime();
+            if (isFresh(entry, generation)) {
+                return copier.apply(entry.value);
+            }
+        }
+        V value = loader.get();
+        if (value == null) {
+            return null;
+        }
+        Entry<V> loaded = new Entry<>(value, generation, loader);
+        if (entry != null) {
+            loaded.hits.set(entry.hits.get());
+        }
+        entries.put(key, loaded);
+        trim();
+        return copier.apply(value);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    // Останавливает фоновое обновление; кэш, который стал недостижим, останавливает его сам
+    public void close() {
+        refresh.cancel();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void refreshPopular() {
+        long generation = SearchIndexing.currentGeneration();
+        for (Map.Entry<String, Entry<V>> mapEntry : entries.entrySet()) {
+            Entry<V> entry = mapEntry.getValue();
+            // Счётчик обращений затухает, чтобы популярность отражала недавние запросы
+            int hits = entry.hits.getAndUpdate(value -> value / 2);
+            if (isFresh(entry, generation) || hits < POPULAR_HITS) {
+                continue;
+            }
+            try {
+                V value = entry.loader.get();
+                if (value != null) {
+                    Entry<V> refreshed = new Entry<>(value, generation, entry.loader);
+                    refreshed.hits.set(entry.hits.get());
+                    refreshed.lastAccessNanos = entry.lastAccessNanos;
+                    entries.replace(mapEntry.getKey(), entry, refreshed);
+                }
+            } catch (RuntimeException e) {
+                System.out.println("Не удалось обновить результат поиска '" + mapEntry.getKey() + "': " + e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isFresh(Entry<?> entry, long generation) {
+        return entry.generation == generation && System.nanoTime() - entry.loadedNanos < MAX_AGE_NANOS;
+    }
+
+    // При переполнении удаляется десятая часть записей, к которым дольше всего не обращались
+    private void trim() {
+        if (entries.size() <= MAX_ENTRIES) {
+            return;
+        }
+        int excess = entries.size() - MAX_ENTRIES + MAX_ENTRIES / 10;
+        entries.entrySet().stream()
+                .sorted(Comparator.comparingLong(mapEntry -> mapEntry.getValue().lastAccessNanos))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(entries::remove);
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long generation;
+        final Supplier<V> loader;
+        final AtomicInteger hits = new AtomicInteger();
+        final long loadedNanos = System.nanoTime();
+        volatile long lastAccessNanos = loadedNanos;
+
+        Entry(V value, long generation, Supplier<V> loader) {
+            this.value = value;
+            this.generation = generation;
+            this.loader = loader;
+        }
+    }
+
+    // Задача общего планировщика держит кэш через слабую ссылку, иначе он не был бы собран никогда
+    private static final class Refresh implements Runnable {
+        private final WeakReference<SearchResultCache<?>> cache;
+        volatile ScheduledFuture<?> future;
+
+        Refresh(SearchResultCache<?> cache) {
+            this.cache = new WeakReference<>(cache);
+        }
+
+        @Override
+        public void run() {
+            SearchResultCache<?> current = cache.get();
+            if (current == null) {
+                cancel();
+                return;
+            }
+            current.refreshPopular();
+        }
+
+        void cancel() {
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
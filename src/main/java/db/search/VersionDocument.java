@@ -0,0 +1,16 @@
+package db.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionDocument {
+    private Long id;
+    private Long pageId;
+    private Integer versionNumber;
+    private boolean published;
+    private String content;
+}
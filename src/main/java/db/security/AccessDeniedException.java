@@ -0,0 +1,15 @@
+package db.security;
+
+import lombok.Getter;
+
+@Getter
+public class AccessDeniedException extends RuntimeException {
+    private final String username;
+    private final Permission permission;
+
+    public AccessDeniedException(String username, String roleName, Permission permission) {
+        super("Пользователю " + username + " с ролью " + roleName + " не разрешено " + permission);
+        this.username = username;
+        this.permission = permission;
+    }
+}
@@ -0,0 +1,28 @@
+package db.security;
+
+// Биты закреплены явно: маски хранятся в roles.permissions
+public enum Permission {
+    READ(1),
+    COMMENT(1 << 1),
+    EDIT(1 << 2),
+    PUBLISH(1 << 3),
+    ADMIN(1 << 4);
+
+    private final long mask;
+
+    Permission(long mask) {
+        this.mask = mask;
+    }
+
+    public long mask() {
+        return mask;
+    }
+
+    public static long maskOf(Permission... permissions) {
+        long mask = 0;
+        for (Permission permission : permissions) {
+            mask |= permission.mask;
+        }
+        return mask;
+    }
+}
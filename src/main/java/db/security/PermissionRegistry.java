@@ -0,0 +1,42 @@
+package db.security;
+
+import db.dao.ReferenceDataRegistry;
+import db.entities.Role;
+import db.entities.User;
+import org.hibernate.SessionFactory;
+
+// Проверка прав по маскам ролей из снимка ReferenceDataRegistry: чтение словаря и битовая операция, без БД и Redis.
+// Снимок обновляется при изменении ролей через RoleDAO, в том числе на других узлах
+public final class PermissionRegistry {
+    private static volatile PermissionRegistry instance;
+
+    private final ReferenceDataRegistry referenceData;
+
+    private PermissionRegistry(ReferenceDataRegistry referenceData) {
+        this.referenceData = referenceData;
+    }
+
+    public static PermissionRegistry getInstance(SessionFactory sessionFactory) {
+        if (instance == null) {
+            synchronized (PermissionRegistry.class) {
+                if (instance == null) {
+                    instance = new PermissionRegistry(ReferenceDataRegistry.getInstance(sessionFactory));
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ADMIN разрешает любое действие; неизвестная роль не имеет прав
+    public boolean isAllowed(Long roleId, Permission permission) {
+        Long mask = referenceData.permissions(roleId);
+        return mask != null && (mask & (permission.mask() | Permission.ADMIN.mask())) != 0;
+    }
+
+    public void check(User user, Permission permission) {
+        Role role = user.getRole();
+        if (!isAllowed(role != null ? role.getId() : null, permission)) {
+            throw new AccessDeniedException(user.getUsername(), role != null ? role.getName() : null, permission);
+        }
+    }
+}
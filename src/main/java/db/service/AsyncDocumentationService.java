@@ -0,0 +1,65 @@
+package db.service;
+
+import db.dto.PageSummaryDTO;
+import db.dto.SearchResultDTO;
+import db.dto.SuggestionDTO;
+import db.dto.TagCountDTO;
+import db.dto.VersionDiffDTO;
+import db.entities.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncDocumentationService extends AutoCloseable {
+    CompletableFuture<Page> getPageById(Long id);
+    CompletableFuture<List<Page>> getAllPages();
+    CompletableFuture<Page> createPage(String title, String slug, String content, String username);
+    CompletableFuture<PageVersion> updatePageContent(Long pageId, String newContent, String username);
+    CompletableFuture<PageVersion> getLatestPageVersion(Long pageId);
+    CompletableFuture<List<PageVersion>> getPageVersions(Long pageId);
+    CompletableFuture<VersionDiffDTO> diffPageVersions(Long fromVersionId, Long toVersionId);
+    CompletableFuture<Void> deletePage(Long id);
+    CompletableFuture<FullPage> getFullPage(Long pageId);
+    CompletableFuture<FullPage> getFullPageBySlug(String slug);
+
+    CompletableFuture<User> getUserById(Long id);
+    CompletableFuture<List<User>> getAllUsers();
+    CompletableFuture<User> createUser(String username, String roleName, String actingUsername);
+    CompletableFuture<User> updateUser(User user, String actingUsername);
+    CompletableFuture<Void> deleteUser(Long id, String actingUsername);
+
+    CompletableFuture<Role> getRoleById(Long id);
+    CompletableFuture<List<Role>> getAllRoles();
+    CompletableFuture<Role> createRole(Role role, String actingUsername);
+    CompletableFuture<Role> updateRole(Role role, String actingUsername);
+    CompletableFuture<Void> deleteRole(Long id, String actingUsername);
+
+    CompletableFuture<Tag> saveTag(Tag tag);
+    CompletableFuture<List<Page>> searchPagesByTag(String tagName);
+    CompletableFuture<Void> addTagToPage(Long pageId, String tagName);
+    CompletableFuture<Void> removeTagFromPage(Long pageId, String tagName);
+    CompletableFuture<List<TagCountDTO>> getTagCloud(int limit);
+    CompletableFuture<List<PageSummaryDTO>> getPagesByTag(String tagName, Long afterPageId, int limit);
+
+    CompletableFuture<List<Page>> searchPages(String query);
+    CompletableFuture<SearchResultDTO> searchPageHits(String query, int size, Double afterScore, Long afterId);
+    CompletableFuture<SearchResultDTO> searchContentHits(String query, int size, Double afterScore, Long afterId);
+    CompletableFuture<List<SuggestionDTO>> suggest(String prefix, int limit);
+    CompletableFuture<Long> rebuildSearchIndex();
+
+    CompletableFuture<List<Block>> getBlocksByPageId(Long pageId);
+    CompletableFuture<Void> patchBlockContent(Long blockId, String path, String jsonValue);
+    CompletableFuture<Void> removeBlockContentField(Long blockId, String path);
+    CompletableFuture<Void> moveBlock(Long blockId, Long afterBlockId);
+    CompletableFuture<List<Heading>> getHeadingsByPageId(Long pageId);
+
+    CompletableFuture<List<Link>> getLinksByPageId(Long pageId);
+    CompletableFuture<List<Link>> getBacklinks(Long pageId);
+    CompletableFuture<List<Page>> getOrphanPages(Long afterPageId, int limit);
+    CompletableFuture<List<Link>> getBrokenLinks();
+    CompletableFuture<List<Comment>> getCommentsByPageVersion(Long pageVersionId);
+    CompletableFuture<Comment> addComment(Long pageVersionId, String username, String text);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,264 @@
+package db.service;
+
+import db.dto.PageSummaryDTO;
+import db.dto.SearchResultDTO;
+import db.dto.SuggestionDTO;
+import db.dto.TagCountDTO;
+import db.dto.VersionDiffDTO;
+import db.entities.*;
+import db.util.Backend;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+public class AsyncDocumentationServiceImpl implements AsyncDocumentationService {
+    private final DocumentationService delegate;
+    private final ExecutorService executor;
+
+    public AsyncDocumentationServiceImpl(DocumentationService delegate) {
+        this(delegate, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public AsyncDocumentationServiceImpl(DocumentationService delegate, ExecutorService executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    // Обращения к Redis ограничиваются внутри RedisCacheUtil, здесь — только основной бэкенд операции
+    private <T> CompletableFuture<T> onDatabase(Supplier<T> action) {
+        return CompletableFuture.supplyAsync(() -> Backend.POSTGRES.call(action), executor);
+    }
+
+    private CompletableFuture<Void> onDatabase(Runnable action) {
+        return CompletableFuture.runAsync(() -> Backend.POSTGRES.call(() -> {
+            action.run();
+            return null;
+        }), executor);
+    }
+
+    private <T> CompletableFuture<T> onSearch(Supplier<T> action) {
+        return CompletableFuture.supplyAsync(() -> Backend.ELASTICSEARCH.call(action), executor);
+    }
+
+    @Override
+    public CompletableFuture<Page> getPageById(Long id) {
+        return onDatabase(() -> delegate.getPageById(id));
+    }
+
+    @Override
+    public CompletableFuture<List<Page>> getAllPages() {
+        return onDatabase(delegate::getAllPages);
+    }
+
+    @Override
+    public CompletableFuture<Page> createPage(String title, String slug, String content, String username) {
+        return onDatabase(() -> delegate.createPage(title, slug, content, username));
+    }
+
+    @Override
+    public CompletableFuture<PageVersion> updatePageContent(Long pageId, String newContent, String username) {
+        return onDatabase(() -> delegate.updatePageContent(pageId, newContent, username));
+    }
+
+    @Override
+    public CompletableFuture<PageVersion> getLatestPageVersion(Long pageId) {
+        return onDatabase(() -> delegate.getLatestPageVersion(pageId));
+    }
+
+    @Override
+    public CompletableFuture<List<PageVersion>> getPageVersions(Long pageId) {
+        return onDatabase(() -> delegate.getPageVersions(pageId));
+    }
+
+    @Override
+    public CompletableFuture<VersionDiffDTO> diffPageVersions(Long fromVersionId, Long toVersionId) {
+        return onDatabase(() -> delegate.diffPageVersions(fromVersionId, toVersionId));
+    }
+
+    @Override
+    public CompletableFuture<Void> deletePage(Long id) {
+        return onDatabase(() -> delegate.deletePage(id));
+    }
+
+    // Сборка страницы сама берёт разрешение на каждую загрузку; внешнее разрешение
+    // при исчерпании лимита заблокировало бы её же загрузки
+    @Override
+    public CompletableFuture<FullPage> getFullPage(Long pageId) {
+        return CompletableFuture.supplyAsync(() -> delegate.getFullPage(pageId), executor);
+    }
+
+    @Override
+    public CompletableFuture<FullPage> getFullPageBySlug(String slug) {
+        return CompletableFuture.supplyAsync(() -> delegate.getFullPageBySlug(slug), executor);
+    }
+
+    @Override
+    public CompletableFuture<User> getUserById(Long id) {
+        return onDatabase(() -> delegate.getUserById(id));
+    }
+
+    @Override
+    public CompletableFuture<List<User>> getAllUsers() {
+        return onDatabase(delegate::getAllUsers);
+    }
+
+    @Override
+    public CompletableFuture<User> createUser(String username, String roleName, String actingUsername) {
+        return onDatabase(() -> delegate.createUser(username, roleName, actingUsername));
+    }
+
+    @Override
+    public CompletableFuture<User> updateUser(User user, String actingUsername) {
+        return onDatabase(() -> delegate.updateUser(user, actingUsername));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteUser(Long id, String actingUsername) {
+        return onDatabase(() -> delegate.deleteUser(id, actingUsername));
+    }
+
+    @Override
+    public CompletableFuture<Role> getRoleById(Long id) {
+        return onDatabase(() -> delegate.getRoleById(id));
+    }
+
+    @Override
+    public CompletableFuture<List<Role>> getAllRoles() {
+        return onDatabase(delegate::getAllRoles);
+    }
+
+    @Override
+    public CompletableFuture<Role> createRole(Role role, String actingUsername) {
+        return onDatabase(() -> delegate.createRole(role, actingUsername));
+    }
+
+    @Override
+    public CompletableFuture<Role> updateRole(Role role, String actingUsername) {
+        return onDatabase(() -> delegate.updateRole(role, actingUsername));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteRole(Long id, String actingUsername) {
+        return onDatabase(() -> delegate.deleteRole(id, actingUsername));
+    }
+
+    @Override
+    public CompletableFuture<Tag> saveTag(Tag tag) {
+        return onDatabase(() -> delegate.saveTag(tag));
+    }
+
+    @Override
+    public CompletableFuture<List<Page>> searchPagesByTag(String tagName) {
+        return onDatabase(() -> delegate.searchPagesByTag(tagName));
+    }
+
+    @Override
+    public CompletableFuture<Void> addTagToPage(Long pageId, String tagName) {
+        return onDatabase(() -> delegate.addTagToPage(pageId, tagName));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeTagFromPage(Long pageId, String tagName) {
+        return onDatabase(() -> delegate.removeTagFromPage(pageId, tagName));
+    }
+
+    @Override
+    public CompletableFuture<List<TagCountDTO>> getTagCloud(int limit) {
+        return onDatabase(() -> delegate.getTagCloud(limit));
+    }
+
+    @Override
+    public CompletableFuture<List<PageSummaryDTO>> getPagesByTag(String tagName, Long afterPageId, int limit) {
+        return onDatabase(() -> delegate.getPagesByTag(tagName, afterPageId, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<Page>> searchPages(String query) {
+        return onSearch(() -> delegate.searchPages(query));
+    }
+
+    @Override
+    public CompletableFuture<SearchResultDTO> searchPageHits(String query, int size, Double afterScore, Long afterId) {
+        return onSearch(() -> delegate.searchPageHits(query, size, afterScore, afterId));
+    }
+
+    @Override
+    public CompletableFuture<SearchResultDTO> searchContentHits(String query, int size, Double afterScore, Long afterId) {
+        return onSearch(() -> delegate.searchContentHits(query, size, afterScore, afterId));
+    }
+
+    // Подсказки отдаются из памяти, разрешение бэкенда не требуется
+    @Override
+    public CompletableFuture<List<SuggestionDTO>> suggest(String prefix, int limit) {
+        return CompletableFuture.supplyAsync(() -> delegate.suggest(prefix, limit), executor);
+    }
+
+    // Пересборка сама берёт разрешения на каждый запрос к Elasticsearch и не держит одно на всё время работы
+    @Override
+    public CompletableFuture<Long> rebuildSearchIndex() {
+        return CompletableFuture.supplyAsync(delegate::rebuildSearchIndex, executor);
+    }
+
+    @Override
+    public CompletableFuture<List<Block>> getBlocksByPageId(Long pageId) {
+        return onDatabase(() -> delegate.getBlocksByPageId(pageId));
+    }
+
+    @Override
+    public CompletableFuture<Void> patchBlockContent(Long blockId, String path, String jsonValue) {
+        return onDatabase(() -> delegate.patchBlockContent(blockId, path, jsonValue));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeBlockContentField(Long blockId, String path) {
+        return onDatabase(() -> delegate.removeBlockContentField(blockId, path));
+    }
+
+    @Override
+    public CompletableFuture<Void> moveBlock(Long blockId, Long afterBlockId) {
+        return onDatabase(() -> delegate.moveBlock(blockId, afterBlockId));
+    }
+
+    @Override
+    public CompletableFuture<List<Heading>> getHeadingsByPageId(Long pageId) {
+        return onDatabase(() -> delegate.getHeadingsByPageId(pageId));
+    }
+
+    @Override
+    public CompletableFuture<List<Link>> getLinksByPageId(Long pageId) {
+        return onDatabase(() -> delegate.getLinksByPageId(pageId));
+    }
+
+    @Override
+    public CompletableFuture<List<Link>> getBacklinks(Long pageId) {
+        return onDatabase(() -> delegate.getBacklinks(pageId));
+    }
+
+    @Override
+    public CompletableFuture<List<Page>> getOrphanPages(Long afterPageId, int limit) {
+        return onDatabase(() -> delegate.getOrphanPages(afterPageId, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<Link>> getBrokenLinks() {
+        return onDatabase(delegate::getBrokenLinks);
+    }
+
+    @Override
+    public CompletableFuture<List<Comment>> getCommentsByPageVersion(Long pageVersionId) {
+        return onDatabase(() -> delegate.getCommentsByPageVersion(pageVersionId));
+    }
+
+    @Override
+    public CompletableFuture<Comment> addComment(Long pageVersionId, String username, String text) {
+        return onDatabase(() -> delegate.addComment(pageVersionId, username, text));
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -1,5 +1,10 @@
 package db.service;
 
+import db.dto.PageSummaryDTO;
+import db.dto.SearchResultDTO;
+import db.dto.SuggestionDTO;
+import db.dto.TagCountDTO;
+import db.dto.VersionDiffDTO;
 import db.entities.*;
 
 import java.util.List;
@@ -11,29 +16,46 @@ public interface DocumentationService {
     PageVersion updatePageContent(Long pageId, String newContent, String username);
     PageVersion getLatestPageVersion(Long pageId);
     List<PageVersion> getPageVersions(Long pageId);
+    VersionDiffDTO diffPageVersions(Long fromVersionId, Long toVersionId);
     void deletePage(Long id);
+    FullPage getFullPage(Long pageId);
+    FullPage getFullPageBySlug(String slug);
 
     User getUserById(Long id);
     List<User> getAllUsers();
-    User createUser(String username, String roleName);
-    User updateUser(User user);
-    void deleteUser(Long id);
+    User createUser(String username, String roleName, String actingUsername);
+    User updateUser(User user, String actingUsername);
+    void deleteUser(Long id, String actingUsername);
 
     Role getRoleById(Long id);
     List<Role> getAllRoles();
-    Role createRole(Role role);
-    Role updateRole(Role role);
-    void deleteRole(Long id);
+    Role createRole(Role role, String actingUsername);
+    Role updateRole(Role role, String actingUsername);
+    void deleteRole(Long id, String actingUsername);
 
     Tag saveTag(Tag tag);
     List<Page> searchPagesByTag(String tagName);
+    void addTagToPage(Long pageId, String tagName);
+    void removeTagFromPage(Long pageId, String tagName);
+    List<TagCountDTO> getTagCloud(int limit);
+    List<PageSummaryDTO> getPagesByTag(String tagName, Long afterPageId, int limit);
 
     List<Page> searchPages(String query);
+    SearchResultDTO searchPageHits(String query, int size, Double afterScore, Long afterId);
+    SearchResultDTO searchContentHits(String query, int size, Double afterScore, Long afterId);
+    List<SuggestionDTO> suggest(String prefix, int limit);
+    long rebuildSearchIndex();
 
     List<Block> getBlocksByPageId(Long pageId);
+    void patchBlockContent(Long blockId, String path, String jsonValue);
+    void removeBlockContentField(Long blockId, String path);
+    void moveBlock(Long blockId, Long afterBlockId);
     List<Heading> getHeadingsByPageId(Long pageId);
 
     List<Link> getLinksByPageId(Long pageId);
+    List<Link> getBacklinks(Long pageId);
+    List<Page> getOrphanPages(Long afterPageId, int limit);
+    List<Link> getBrokenLinks();
     List<Comment> getCommentsByPageVersion(Long pageVersionId);
     Comment addComment(Long pageVersionId, String username, String text);
 }
@@ -1,10 +1,25 @@
 package db.service;
 
 import db.dao.*;
+import db.dto.PageSummaryDTO;
+import db.dto.SearchResultDTO;
+import db.dto.SuggestionDTO;
+import db.dto.TagCountDTO;
+import db.dto.VersionDiffDTO;
 import db.entities.*;
+import db.metrics.OperationTracer;
+import db.security.Permission;
+import db.security.PermissionRegistry;
+import db.util.Backend;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 public class DocumentationServiceImpl implements DocumentationService {
     private final BlockDAO blockDAO;
@@ -16,6 +31,7 @@ public class DocumentationServiceImpl implements DocumentationService {
     private final UserDAO userDAO;
     private final CommentDAO commentDAO;
     private final LinkDAO linkDAO;
+    private final PermissionRegistry permissions;
 
     public DocumentationServiceImpl(BlockDAO blockDAO, PageDAO pageDAO, PageVersionDAO pageVersionDAO,
                                     RoleDAO roleDAO, SearchDAO searchDAO, TagDAO tagDAO, UserDAO userDAO,
@@ -29,6 +45,7 @@ public class DocumentationServiceImpl implements DocumentationService {
         this.userDAO = userDAO;
         this.commentDAO = commentDAO;
         this.linkDAO = linkDAO;
+        this.permissions = roleDAO.getPermissionRegistry();
     }
 
     @Override
@@ -48,6 +65,7 @@ public class DocumentationServiceImpl implements DocumentationService {
     public Page createPage(String title, String slug, String content, String username) {
         User author = userDAO.findByUsername(username);
         if (author == null) throw new RuntimeException("User not found");
+        permissions.check(author, Permission.EDIT);
 
         Page existingPage = pageDAO.findBySlug(slug);
         if (existingPage != null) {
@@ -71,9 +89,10 @@ public class DocumentationServiceImpl implements DocumentationService {
 
         User editor = userDAO.findByUsername(username);
         if (editor == null) throw new RuntimeException("User not found");
+        permissions.check(editor, Permission.EDIT);
 
-        page.setUpdatedAt(LocalDateTime.now());
-        pageDAO.update(page);
+        page = pageDAO.updateWithRetry(Page.class, pageId, p -> p.setUpdatedAt(LocalDateTime.now()));
+        if (page == null) throw new RuntimeException("Page not found");
 
         return pageVersionDAO.createNewVersion(page, editor, newContent);
     }
@@ -97,6 +116,11 @@ public class DocumentationServiceImpl implements DocumentationService {
         return pageVersionDAO.findAllVersions(pageId);
     }
 
+    @Override
+    public VersionDiffDTO diffPageVersions(Long fromVersionId, Long toVersionId) {
+        return pageVersionDAO.diffVersions(fromVersionId, toVersionId);
+    }
+
     @Override
     public void deletePage(Long id) {
         Page page = pageDAO.findById(Page.class, id);
@@ -104,6 +128,68 @@ public class DocumentationServiceImpl implements DocumentationService {
         pageDAO.delete(page);
     }
 
+    @Override
+    public FullPage getFullPage(Long pageId) {
+        return assembleFullPage(pageId, null);
+    }
+
+    @Override
+    public FullPage getFullPageBySlug(String slug) {
+        Page page = Backend.POSTGRES.call(() -> pageDAO.findBySlug(slug));
+        if (page == null) throw new RuntimeException("Page not found");
+        return assembleFullPage(page.getId(), page);
+    }
+
+    // Части страницы загружаются параллельно, время ответа определяется самой медленной из них.
+    // Каждая загрузка занимает своё разрешение Backend.POSTGRES, поэтому страница не открывает
+    // больше соединений, чем позволяет ограничение
+    private FullPage assembleFullPage(Long pageId, Page knownPage) {
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            Executor executor = OperationTracer.propagate(pool);
+            CompletableFuture<Page> page = knownPage != null
+                    ? CompletableFuture.completedFuture(knownPage)
+                    : onDatabase(() -> pageDAO.findById(Page.class, pageId), executor);
+            CompletableFuture<PageVersion> latestVersion =
+                    onDatabase(() -> pageVersionDAO.findLatestVersion(pageId), executor);
+            CompletableFuture<List<Comment>> comments = latestVersion.thenApplyAsync(
+                    version -> version == null ? List.of()
+                            : Backend.POSTGRES.call(() -> commentDAO.getCommentsByPageVersionId(version.getId())),
+                    executor);
+            CompletableFuture<List<Block>> blocks = onDatabase(() -> blockDAO.getBlocksByPageId(pageId), executor);
+            CompletableFuture<List<Heading>> headings = onDatabase(() -> pageDAO.getHeadingsByPageId(pageId), executor);
+            CompletableFuture<List<Link>> links = onDatabase(() -> linkDAO.getLinksByPageId(pageId), executor);
+            CompletableFuture<List<Tag>> tags = onDatabase(() -> tagDAO.getTagsByPageId(pageId), executor);
+
+            if (join(page) == null) throw new RuntimeException("Page not found");
+
+            List<Tag> pageTags = join(tags);
+            return new FullPage(
+                    join(page),
+                    join(latestVersion),
+                    join(blocks),
+                    join(headings),
+                    join(links),
+                    pageTags != null ? pageTags : List.of(),
+                    join(comments)
+            );
+        }
+    }
+
+    private static <T> CompletableFuture<T> onDatabase(Supplier<T> load, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> Backend.POSTGRES.call(load), executor);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     @Override
     public User getUserById(Long id) {
         User user = userDAO.findById(User.class, id);
@@ -116,14 +202,20 @@ public class DocumentationServiceImpl implements DocumentationService {
         return userDAO.getAllUsers();
     }
 
+    // Пользователи и роли меняет только пользователь с ADMIN; стандартные роли и первый администратор
+    // создаются миграцией V11
+    private void requireAdmin(String actingUsername) {
+        User actor = userDAO.findByUsername(actingUsername);
+        if (actor == null) throw new RuntimeException("User not found");
+        permissions.check(actor, Permission.ADMIN);
+    }
+
+    // Роль не создаётся по имени: иначе опечатка или другой регистр давали бы новую роль с чужими правами
     @Override
-    public User createUser(String username, String roleName) {
+    public User createUser(String username, String roleName, String actingUsername) {
+        requireAdmin(actingUsername);
         Role role = roleDAO.findByName(roleName);
-        if (role == null) {
-            role = new Role();
-            role.setName(roleName);
-            roleDAO.save(role);
-        }
+        if (role == null) throw new RuntimeException("Role not found: " + roleName);
 
         User user = new User();
         user.setUsername(username);
@@ -137,13 +229,15 @@ public class DocumentationServiceImpl implements DocumentationService {
     }
 
     @Override
-    public User updateUser(User user) {
+    public User updateUser(User user, String actingUsername) {
+        requireAdmin(actingUsername);
         user.setUpdatedAt(LocalDateTime.now());
         return userDAO.update(user);
     }
 
     @Override
-    public void deleteUser(Long id) {
+    public void deleteUser(Long id, String actingUsername) {
+        requireAdmin(actingUsername);
         User user = userDAO.findById(User.class, id);
         if (user == null) throw new RuntimeException("User not found");
         userDAO.delete(user);
@@ -162,17 +256,26 @@ public class DocumentationServiceImpl implements DocumentationService {
     }
 
     @Override
-    public Role createRole(Role role) {
+    public Role createRole(Role role, String actingUsername) {
+        requireAdmin(actingUsername);
         return roleDAO.save(role);
     }
 
+    // permissions = 0 означает «маска не задана»: сохраняется маска из БД. Роль без прав не нужна — её удаляют
     @Override
-    public Role updateRole(Role role) {
+    public Role updateRole(Role role, String actingUsername) {
+        requireAdmin(actingUsername);
+        if (role.getPermissions() == 0) {
+            Role stored = roleDAO.findById(Role.class, role.getId());
+            if (stored == null) throw new RuntimeException("Role not found");
+            role.setPermissions(stored.getPermissions());
+        }
         return roleDAO.update(role);
     }
 
     @Override
-    public void deleteRole(Long id) {
+    public void deleteRole(Long id, String actingUsername) {
+        requireAdmin(actingUsername);
         Role role = roleDAO.findById(Role.class, id);
         if (role == null) throw new RuntimeException("Role not found");
         roleDAO.delete(role);
@@ -188,16 +291,73 @@ public class DocumentationServiceImpl implements DocumentationService {
         return tagDAO.findPagesByTag(tagName);
     }
 
+    @Override
+    public void addTagToPage(Long pageId, String tagName) {
+        Page page = pageDAO.findById(Page.class, pageId);
+        if (page == null) throw new RuntimeException("Page not found");
+        tagDAO.addTagToPage(pageId, tagName);
+    }
+
+    @Override
+    public void removeTagFromPage(Long pageId, String tagName) {
+        tagDAO.removeTagFromPage(pageId, tagName);
+    }
+
+    @Override
+    public List<TagCountDTO> getTagCloud(int limit) {
+        return tagDAO.getTopTags(limit);
+    }
+
+    @Override
+    public List<PageSummaryDTO> getPagesByTag(String tagName, Long afterPageId, int limit) {
+        return tagDAO.findPageSummariesByTag(tagName, afterPageId, limit);
+    }
+
     @Override
     public List<Page> searchPages(String query) {
         return searchDAO.searchByTitleOrTag(query);
     }
 
+    @Override
+    public SearchResultDTO searchPageHits(String query, int size, Double afterScore, Long afterId) {
+        return searchDAO.searchHitsByTitleOrTag(query, size, afterScore, afterId);
+    }
+
+    @Override
+    public SearchResultDTO searchContentHits(String query, int size, Double afterScore, Long afterId) {
+        return searchDAO.searchHitsByContent(query, size, afterScore, afterId);
+    }
+
+    @Override
+    public List<SuggestionDTO> suggest(String prefix, int limit) {
+        return searchDAO.suggest(prefix, limit);
+    }
+
+    @Override
+    public long rebuildSearchIndex() {
+        return searchDAO.rebuildIndex();
+    }
+
     @Override
     public List<Block> getBlocksByPageId(Long pageId) {
         return blockDAO.getBlocksByPageId(pageId);
     }
 
+    @Override
+    public void patchBlockContent(Long blockId, String path, String jsonValue) {
+        if (!blockDAO.patchContent(blockId, path, jsonValue)) throw new RuntimeException("Block not found");
+    }
+
+    @Override
+    public void removeBlockContentField(Long blockId, String path) {
+        if (!blockDAO.removeContentField(blockId, path)) throw new RuntimeException("Block not found");
+    }
+
+    @Override
+    public void moveBlock(Long blockId, Long afterBlockId) {
+        if (!blockDAO.moveBlock(blockId, afterBlockId)) throw new RuntimeException("Block not found");
+    }
+
     @Override
     public List<Heading> getHeadingsByPageId(Long pageId) {
         return pageDAO.getHeadingsByPageId(pageId);
@@ -208,6 +368,21 @@ public class DocumentationServiceImpl implements DocumentationService {
         return linkDAO.getLinksByPageId(pageId);
     }
 
+    @Override
+    public List<Link> getBacklinks(Long pageId) {
+        return linkDAO.getBacklinks(pageId);
+    }
+
+    @Override
+    public List<Page> getOrphanPages(Long afterPageId, int limit) {
+        return pageDAO.findByIds(linkDAO.findOrphanPageIds(afterPageId, limit));
+    }
+
+    @Override
+    public List<Link> getBrokenLinks() {
+        return linkDAO.findBrokenLinks();
+    }
+
     @Override
     public List<Comment> getCommentsByPageVersion(Long pageVersionId) {
         return commentDAO.getCommentsByPageVersionId(pageVersionId);
@@ -220,6 +395,7 @@ public class DocumentationServiceImpl implements DocumentationService {
 
         User author = userDAO.findByUsername(username);
         if (author == null) throw new RuntimeException("User not found");
+        permissions.check(author, Permission.COMMENT);
 
         Comment comment = new Comment();
         comment.setPageVersion(pageVersion);
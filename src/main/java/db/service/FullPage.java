@@ -0,0 +1,21 @@
+package db.service;
+
+import db.entities.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FullPage {
+    private Page page;
+    private PageVersion latestVersion;
+    private List<Block> blocks;
+    private List<Heading> headings;
+    private List<Link> links;
+    private List<Tag> tags;
+    private List<Comment> comments;
+}
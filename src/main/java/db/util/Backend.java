@@ -0,0 +1,69 @@
+package db.util;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+public enum Backend {
+    // Больше параллельных обращений, чем соединений в пуле Hibernate, всё равно ждут соединения
+    POSTGRES("docman.limit.postgres", configuredPoolSize(20)),
+    REDIS("docman.limit.redis", 16),
+    ELASTICSEARCH("docman.limit.elasticsearch", 10);
+
+    private final int limit;
+    private final Semaphore permits;
+
+    Backend(String property, int defaultLimit) {
+        this.limit = Integer.getInteger(property, defaultLimit);
+        this.permits = new Semaphore(limit, true);
+    }
+
+    // hibernate.connection.pool_size из hibernate.cfg.xml; без файла или свойства — значение по умолчанию
+    private static int configuredPoolSize(int fallback) {
+        try (InputStream in = Backend.class.getClassLoader().getResourceAsStream("hibernate.cfg.xml")) {
+            if (in == null) {
+                return fallback;
+            }
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            NodeList properties = factory.newDocumentBuilder().parse(in).getElementsByTagName("property");
+            for (int i = 0; i < properties.getLength(); i++) {
+                Element property = (Element) properties.item(i);
+                if ("hibernate.connection.pool_size".equals(property.getAttribute("name"))) {
+                    return Integer.parseInt(property.getTextContent().trim());
+                }
+            }
+            return fallback;
+        } catch (Exception e) {
+            System.out.println("ПРЕДУПРЕЖДЕНИЕ размер пула из hibernate.cfg.xml не прочитан: " + e.getMessage());
+            return fallback;
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    // Блокирует только вызывающий поток; для виртуальных потоков ожидание не занимает поток платформы
+    public <T> T call(Supplier<T> action) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Ожидание доступа к " + name() + " прервано", e);
+        }
+        try {
+            return action.get();
+        } finally {
+            permits.release();
+        }
+    }
+}
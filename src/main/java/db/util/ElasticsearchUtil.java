@@ -7,13 +7,19 @@ import co.elastic.clients.transport.rest_client.RestClientTransport;
 import org.apache.http.HttpHost;
 import org.elasticsearch.client.RestClient;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 public class ElasticsearchUtil {
 
-    private static ElasticsearchClient client;
+    private static volatile ElasticsearchClient client;
 
-    public static void init() {
+    public static synchronized void init() {
+        if (client != null) {
+            return;
+        }
         RestClient restClient = RestClient.builder(
-                new HttpHost("localhost", 9200, "http"))
+                HttpHost.create(System.getProperty("docman.elasticsearch.url", "http://localhost:9200")))
                 .build();
 
         ElasticsearchTransport transport = new RestClientTransport(
@@ -31,9 +37,21 @@ public class ElasticsearchUtil {
         return client;
     }
 
-    public static void close() throws Exception {
+    // Создаёт клиент и открывает первое соединение до первого запроса
+    public static void warmUp() {
+        try {
+            if (!getClient().ping().value()) {
+                throw new RuntimeException("Elasticsearch не ответил на ping");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Elasticsearch недоступен", e);
+        }
+    }
+
+    public static synchronized void close() throws Exception {
         if (client != null) {
             client._transport().close();
+            client = null;
         }
     }
-}
\ No newline at end of file
+}
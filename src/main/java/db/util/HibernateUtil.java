@@ -1,24 +1,83 @@
 package db.util;
 
-import lombok.Getter;
+import db.metrics.Metrics;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
 
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 public class HibernateUtil {
-    @Getter
-    private static final SessionFactory sessionFactory = buildSessionFactory();
+    // Версия PostgreSQL для быстрого запуска, когда диалект не может спросить её у сервера
+    private static final String DATABASE_VERSION = System.getProperty("docman.db.version", "16.0");
+
+    private static volatile SessionFactory sessionFactory;
+
+    public static SessionFactory getSessionFactory() {
+        if (sessionFactory == null) {
+            synchronized (HibernateUtil.class) {
+                if (sessionFactory == null) {
+                    sessionFactory = buildSessionFactory();
+                }
+            }
+        }
+        return sessionFactory;
+    }
 
     private static SessionFactory buildSessionFactory() {
         try {
-            return new Configuration().configure().buildSessionFactory();
+            Configuration configuration = new Configuration().configure();
+            // Статистика Hibernate собирается только при включённых метриках
+            configuration.setProperty("hibernate.generate_statistics", String.valueOf(Metrics.ENABLED));
+            SessionFactory factory;
+            if (Startup.FAST) {
+                factory = buildFast(configuration);
+            } else {
+                SchemaMigrationUtil.prepareSchema(configuration.getProperties());
+                factory = configuration.buildSessionFactory();
+            }
+            Metrics.bindHibernate(factory);
+            return factory;
         } catch (Throwable ex) {
             System.err.println("Initial SessionFactory creation failed: " + ex);
-            throw new ExceptionInInitializerError(ex);
+            throw new IllegalStateException("Не удалось создать SessionFactory", ex);
         }
     }
 
-    public static void shutdown() {
-        getSessionFactory().close();
+    // Flyway проверяет схему параллельно со сборкой SessionFactory; Hibernate при этом не сверяет таблицы
+    // и не читает метаданные JDBC, поэтому диалекту явно передаются СУБД и её версия (docman.db.version)
+    private static SessionFactory buildFast(Configuration configuration) throws Exception {
+        configuration.setProperty("hibernate.hbm2ddl.auto", "none");
+        configuration.setProperty("hibernate.boot.allow_jdbc_metadata_access", "false");
+        String[] version = DATABASE_VERSION.split("\\.");
+        configuration.setProperty("jakarta.persistence.database-product-name", "PostgreSQL");
+        configuration.setProperty("jakarta.persistence.database-product-version", DATABASE_VERSION);
+        configuration.setProperty("jakarta.persistence.database-major-version", version[0]);
+        configuration.setProperty("jakarta.persistence.database-minor-version", version.length > 1 ? version[1] : "0");
+        Properties properties = configuration.getProperties();
+        if (System.getProperty(SchemaMigrationUtil.SCHEMA_MODE_PROPERTY) == null) {
+            properties.setProperty(SchemaMigrationUtil.SCHEMA_MODE_PROPERTY, "validate");
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> schema = executor.submit(() -> SchemaMigrationUtil.prepareSchema(properties));
+            SessionFactory factory = configuration.buildSessionFactory();
+            try {
+                schema.get();
+            } catch (ExecutionException e) {
+                factory.close();
+                throw new RuntimeException("Схема БД не прошла проверку", e.getCause());
+            }
+            return factory;
+        }
     }
-}
 
+    public static synchronized void shutdown() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+            sessionFactory = null;
+        }
+    }
+}
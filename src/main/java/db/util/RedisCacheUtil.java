@@ -1,48 +1,127 @@
 package db.util;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import db.metrics.Metrics;
+import db.metrics.OperationTracer;
+import db.metrics.Timer;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
 public class RedisCacheUtil {
     private static final JedisPoolConfig POOL_CONFIG = buildPoolConfig();
-    private static final JedisPool JEDIS_POOL = new JedisPool(POOL_CONFIG, "localhost", 6379);
-    private static final ObjectMapper OBJECT_MAPPER = buildObjectMapper();
+    private static final String HOST = System.getProperty("docman.redis.host", "localhost");
+    private static final int PORT = Integer.getInteger("docman.redis.port", 6379);
+    private static final JedisPool JEDIS_POOL = new JedisPool(POOL_CONFIG, HOST, PORT);
+    private static final ObjectMapper OBJECT_MAPPER = JsonUtil.mapper();
+    private static final int EVICT_BATCH_SIZE = 500;
+    // Время команды вместе с ожиданием соединения; ожидание пула отдельно в redis.borrow
+    private static final Timer GET = Metrics.timer("redis.get");
+    private static final Timer SET = Metrics.timer("redis.set");
+    private static final Timer EVAL = Metrics.timer("redis.eval");
+    private static final Timer DEL = Metrics.timer("redis.del");
+    private static final Timer PUBLISH = Metrics.timer("redis.publish");
+    private static final Timer BORROW = Metrics.timer("redis.borrow");
+    private static final LongAdder BYTES_WRITTEN = Metrics.counter("redis.bytes.written");
+    private static final LongAdder BYTES_READ = Metrics.counter("redis.bytes.read");
+    // Запись выполняется, только если в кэше нет значения с более новой версией
+    private static final String SET_IF_NEWER_SCRIPT =
+            "local current = redis.call('GET', KEYS[1]) " +
+            "if current then " +
+            "  local ok, decoded = pcall(cjson.decode, current) " +
+            "  if ok and type(decoded) == 'table' then " +
+            "    local cachedVersion = tonumber(decoded['version']) " +
+            "    if cachedVersion and cachedVersion > tonumber(ARGV[2]) then return 0 end " +
+            "  end " +
+            "end " +
+            "redis.call('SET', KEYS[1], ARGV[1]) " +
+            "return 1";
+
+    static {
+        Metrics.gauge("redis.pool.active", JEDIS_POOL::getNumActive);
+        Metrics.gauge("redis.pool.idle", JEDIS_POOL::getNumIdle);
+        Metrics.gauge("redis.pool.waiters", JEDIS_POOL::getNumWaiters);
+    }
 
     private RedisCacheUtil() {
     }
 
+    public static String getHost() {
+        return HOST;
+    }
+
+    public static int getPort() {
+        return PORT;
+    }
+
     private static JedisPoolConfig buildPoolConfig() {
         JedisPoolConfig config = new JedisPoolConfig();
-        config.setMaxTotal(16);
-        config.setMaxIdle(8);
+        config.setMaxTotal(Backend.REDIS.getLimit());
+        config.setMaxIdle(Math.max(1, Backend.REDIS.getLimit() / 2));
         config.setMinIdle(0);
         config.setTestOnBorrow(true);
         config.setTestOnReturn(true);
         return config;
     }
 
-    private static ObjectMapper buildObjectMapper() {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.registerModule(new Jdk8Module());
-        mapper.registerModule(new JavaTimeModule());
-        mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
-        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-        return mapper;
+    private static <T> T executeWithJedis(Timer command, String key, JedisAction<T> action) {
+        OperationTracer.redisCommand();
+        return command.time(() -> Backend.REDIS.call(() -> {
+            try (Jedis jedis = borrow()) {
+                return action.apply(jedis, key);
+            } catch (Exception e) {
+                throw new RuntimeException("Ошибка работы с Redis по ключу " + key, e);
+            }
+        }));
+    }
+
+    private static Jedis borrow() {
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            Jedis jedis = JEDIS_POOL.getResource();
+            failed = false;
+            return jedis;
+        } finally {
+            BORROW.record(System.nanoTime() - started, failed);
+        }
+    }
+
+    // Длина строки в UTF-8 без кодирования в массив байт
+    private static long utf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static String written(String payload) {
+        BYTES_WRITTEN.add(utf8Length(payload));
+        return payload;
     }
 
-    private static <T> T executeWithJedis(String key, JedisAction<T> action) {
-        try (Jedis jedis = JEDIS_POOL.getResource()) {
-            return action.apply(jedis, key);
-        } catch (Exception e) {
-            throw new RuntimeException("Ошибка работы с Redis по ключу " + key, e);
+    private static String read(String value) {
+        if (value != null) {
+            BYTES_READ.add(utf8Length(value));
         }
+        return value;
     }
 
     @FunctionalInterface
@@ -51,33 +130,99 @@ public class RedisCacheUtil {
     }
 
     public static <T> void cacheValue(String key, T value) {
-        executeWithJedis(key, (jedis, k) -> {
-            jedis.set(k, OBJECT_MAPPER.writeValueAsString(value));
+        executeWithJedis(SET, key, (jedis, k) -> {
+            jedis.set(k, written(OBJECT_MAPPER.writeValueAsString(value)));
             return null;
         });
     }
 
+    public static <T> boolean cacheValueIfNewer(String key, T value, long version) {
+        return executeWithJedis(EVAL, key, (jedis, k) -> {
+            Object result = jedis.eval(
+                    SET_IF_NEWER_SCRIPT,
+                    List.of(k),
+                    List.of(written(OBJECT_MAPPER.writeValueAsString(value)), Long.toString(version)));
+            return Long.valueOf(1L).equals(result);
+        });
+    }
+
     public static <T> T getValue(String key, Class<T> clazz) {
-        return executeWithJedis(key, (jedis, k) -> {
-            String value = jedis.get(k);
+        return executeWithJedis(GET, key, (jedis, k) -> {
+            String value = read(jedis.get(k));
             return value == null ? null : OBJECT_MAPPER.readValue(value, clazz);
         });
     }
 
     public static <T> T getValue(String key, TypeReference<T> type) {
-        return executeWithJedis(key, (jedis, k) -> {
-            String value = jedis.get(k);
+        return executeWithJedis(GET, key, (jedis, k) -> {
+            String value = read(jedis.get(k));
+            return value == null ? null : OBJECT_MAPPER.readValue(value, type);
+        });
+    }
+
+    // Поле хэша: все значения одного владельца удаляются одним evict(key)
+    public static <T> void cacheField(String key, String field, T value) {
+        executeWithJedis(SET, key, (jedis, k) -> {
+            jedis.hset(k, field, written(OBJECT_MAPPER.writeValueAsString(value)));
+            return null;
+        });
+    }
+
+    public static <T> T getField(String key, String field, Class<T> clazz) {
+        return executeWithJedis(GET, key, (jedis, k) -> {
+            String value = read(jedis.hget(k, field));
+            return value == null ? null : OBJECT_MAPPER.readValue(value, clazz);
+        });
+    }
+
+    public static <T> T getField(String key, String field, TypeReference<T> type) {
+        return executeWithJedis(GET, key, (jedis, k) -> {
+            String value = read(jedis.hget(k, field));
             return value == null ? null : OBJECT_MAPPER.readValue(value, type);
         });
     }
 
     public static void evict(String key) {
-        executeWithJedis(key, (jedis, k) -> {
+        executeWithJedis(DEL, key, (jedis, k) -> {
             jedis.del(k);
             return null;
         });
     }
 
+    public static void evictAll(Collection<String> keys) {
+        List<String> batch = new ArrayList<>(Math.min(keys.size(), EVICT_BATCH_SIZE));
+        for (String key : keys) {
+            batch.add(key);
+            if (batch.size() == EVICT_BATCH_SIZE) {
+                evictBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            evictBatch(batch);
+        }
+    }
+
+    private static void evictBatch(List<String> keys) {
+        executeWithJedis(DEL, keys.getFirst(), (jedis, k) -> {
+            jedis.del(keys.toArray(String[]::new));
+            return null;
+        });
+    }
+
+    public static void publish(String channel, String message) {
+        executeWithJedis(PUBLISH, channel, (jedis, k) -> jedis.publish(k, written(message)));
+    }
+
+    // Создаёт пул и открывает первое соединение до первого запроса
+    public static void warmUp() {
+        Backend.REDIS.call(() -> {
+            try (Jedis jedis = borrow()) {
+                return jedis.ping();
+            }
+        });
+    }
+
     public static void shutdown() {
         JEDIS_POOL.close();
     }
@@ -0,0 +1,52 @@
+package db.util;
+
+import org.flywaydb.core.Flyway;
+
+import java.util.Properties;
+
+public class SchemaMigrationUtil {
+    public static final String SCHEMA_MODE_PROPERTY = "docman.schema.mode";
+    private static final String MIGRATIONS_LOCATION = "classpath:db/migration";
+
+    private SchemaMigrationUtil() {
+    }
+
+    public enum SchemaMode {
+        MIGRATE,
+        VALIDATE,
+        NONE
+    }
+
+    public static SchemaMode resolveMode(Properties properties) {
+        String mode = System.getProperty(SCHEMA_MODE_PROPERTY, properties.getProperty(SCHEMA_MODE_PROPERTY, "migrate"));
+        try {
+            return SchemaMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Неизвестный режим схемы '" + mode + "', ожидается migrate, validate или none", e);
+        }
+    }
+
+    public static void prepareSchema(Properties properties) {
+        SchemaMode mode = resolveMode(properties);
+        if (mode == SchemaMode.NONE) {
+            return;
+        }
+
+        // Базы, созданные через hbm2ddl.auto=update, принимаются как версия 1 без повторного создания таблиц
+        Flyway flyway = Flyway.configure()
+                .dataSource(
+                        properties.getProperty("hibernate.connection.url"),
+                        properties.getProperty("hibernate.connection.username"),
+                        properties.getProperty("hibernate.connection.password"))
+                .locations(MIGRATIONS_LOCATION)
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load();
+
+        if (mode == SchemaMode.MIGRATE) {
+            flyway.migrate();
+        } else {
+            flyway.validate();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package db.util;
+
+import db.metrics.Metrics;
+import db.search.AutocompleteIndex;
+import db.search.ElasticsearchIndexingPipeline;
+import db.search.EmbeddedSearchEngine;
+import db.search.PageIndexAdmin;
+import db.search.PagesReindexJob;
+import db.search.SearchEngineMode;
+import org.hibernate.SessionFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// Параллельный запуск Hibernate, Redis и Elasticsearch, затем открытие поисковых индексов,
+// с замером времени до готовности и до первого запроса.
+// docman.startup.fast=true дополнительно только проверяет схему вместо миграции (см. HibernateUtil)
+public final class Startup {
+    public static final boolean FAST = Boolean.getBoolean("docman.startup.fast");
+
+    private static final AtomicBoolean firstRequest = new AtomicBoolean();
+
+    private Startup() {
+    }
+
+    // Без SessionFactory сервис не работает, поэтому её ошибка прерывает запуск;
+    // Redis и Elasticsearch при ошибке только предупреждают и подключатся при первом обращении
+    public static SessionFactory initialize() {
+        long started = System.nanoTime();
+        Map<String, Long> millis = new LinkedHashMap<>();
+        SessionFactory sessionFactory;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<SessionFactory> hibernate =
+                    CompletableFuture.supplyAsync(() -> timed("Hibernate", millis, HibernateUtil::getSessionFactory), executor);
+            CompletableFuture<Void> redis = CompletableFuture.runAsync(
+                    () -> optional("Redis", millis, RedisCacheUtil::warmUp), executor);
+            CompletableFuture<Void> elasticsearch = SearchEngineMode.current() == SearchEngineMode.EMBEDDED
+                    ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.runAsync(() -> optional("Elasticsearch", millis, ElasticsearchUtil::warmUp), executor);
+            CompletableFuture.allOf(redis, elasticsearch).join();
+            try {
+                sessionFactory = hibernate.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException runtime ? runtime : new RuntimeException(e.getCause());
+            }
+        }
+        timed("Search", millis, () -> {
+            openSearchIndexes(sessionFactory);
+            return null;
+        });
+        long total = (System.nanoTime() - started) / 1_000_000;
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        Metrics.gauge("startup.backendsMillis", () -> total);
+        Metrics.gauge("startup.readyMillis", () -> uptime);
+        millis.forEach((backend, value) -> Metrics.gauge("startup." + backend.toLowerCase(Locale.ROOT) + "Millis", () -> value));
+        System.out.printf("Бэкенды запущены за %d мс %s, готовность через %d мс после старта JVM%s%n",
+                total, millis, uptime, FAST ? " (быстрый запуск)" : "");
+        return sessionFactory;
+    }
+
+    // Поисковые индексы процесса открываются один раз, до создания SearchDAO; строятся они в фоне
+    public static void openSearchIndexes(SessionFactory sessionFactory) {
+        AutocompleteIndex.getInstance(sessionFactory);
+        if (SearchEngineMode.current() == SearchEngineMode.EMBEDDED) {
+            EmbeddedSearchEngine.getInstance(sessionFactory);
+        } else {
+            ElasticsearchIndexingPipeline pipeline = ElasticsearchIndexingPipeline.start(sessionFactory);
+            reindexIfContentModeChanged(sessionFactory, pipeline);
+        }
+    }
+
+    // Индекс со схемой другого режима содержимого не находит страницы по тексту: пересобираем его в фоне,
+    // поиск до переключения псевдонима работает со старым индексом
+    private static void reindexIfContentModeChanged(SessionFactory sessionFactory, ElasticsearchIndexingPipeline pipeline) {
+        try {
+            if (!PageIndexAdmin.contentModeMismatch(ElasticsearchUtil.getClient())) {
+                return;
+            }
+        } catch (RuntimeException e) {
+            System.out.println("ПРЕДУПРЕЖДЕНИЕ Не удалось проверить схему поискового индекса: " + e.getMessage());
+            return;
+        }
+        System.out.println("Схема поискового индекса не совпадает с режимом " + PageIndexAdmin.CONTENT_MODE
+                + ", индекс пересобирается в фоне");
+        Thread.ofVirtual().name("docman-search-reindex").start(() -> {
+            try {
+                new PagesReindexJob(sessionFactory, ElasticsearchUtil.getClient(), pipeline).run();
+            } catch (RuntimeException e) {
+                System.out.println("ОШИБКА фоновой переиндексации: " + e.getMessage());
+            }
+        });
+    }
+
+    // Вызывается после первого обслуженного запроса; повторные вызовы ничего не делают
+    public static void firstRequestServed() {
+        if (firstRequest.compareAndSet(false, true)) {
+            long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+            Metrics.gauge("startup.firstRequestMillis", () -> uptime);
+            System.out.println("Первый запрос обслужен через " + uptime + " мс после старта JVM");
+        }
+    }
+
+    private static <T> T timed(String backend, Map<String, Long> millis, Supplier<T> action) {
+        long started = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            synchronized (millis) {
+                millis.put(backend, (System.nanoTime() - started) / 1_000_000);
+            }
+        }
+    }
+
+    private static void optional(String backend, Map<String, Long> millis, Runnable action) {
+        try {
+            timed(backend, millis, () -> {
+                action.run();
+                return null;
+            });
+        } catch (RuntimeException e) {
+            System.out.println("ПРЕДУПРЕЖДЕНИЕ " + backend + " недоступен при запуске: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,4 @@
+-- Исходный блок (type и content из текста версии) для блоков, изменённых напрямую через BlockDAO.
+-- NULL — блок совпадает с текстом версии. Пока исходный блок в новой версии не меняется,
+-- PageStructureWriter сохраняет прямую правку вместо того, чтобы вернуть содержимое из текста
+ALTER TABLE blocks ADD COLUMN origin JSONB;
@@ -0,0 +1,18 @@
+-- Стандартные роли (маски как в V8) и первый администратор: пользователей и роли создаёт только ADMIN.
+-- Роль, уже существующая под тем же именем в другом регистре, не дублируется
+INSERT INTO roles (name, description, permissions)
+SELECT r.name, r.description, r.permissions
+FROM (VALUES ('Guest', 'Гость', 1),
+             ('Reader', 'Читатель', 1),
+             ('Commenter', 'Комментатор', 3),
+             ('Editor', 'Редактор', 15),
+             ('Admin', 'Администратор', 31)) AS r (name, description, permissions)
+WHERE NOT EXISTS (SELECT 1 FROM roles WHERE lower(roles.name) = lower(r.name));
+
+INSERT INTO users (username, email, password, createdAt, updatedAt, role_id)
+SELECT 'admin', 'admin@example.com', 'admin_pass', now(), now(), roles.id
+FROM roles
+WHERE lower(roles.name) = 'admin'
+  AND NOT EXISTS (SELECT 1 FROM users WHERE username = 'admin')
+ORDER BY roles.id
+LIMIT 1;
@@ -0,0 +1,3 @@
+-- Аренда пачки outbox: строки захватываются короткой транзакцией, доставка идёт вне её.
+-- Пока claimed_until в будущем, событие не выбирается другими экземплярами; после сбоя аренда истекает
+ALTER TABLE outbox_events ADD COLUMN claimed_until TIMESTAMP;
@@ -0,0 +1,90 @@
+CREATE TABLE IF NOT EXISTS roles
+(
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name        VARCHAR(255) NOT NULL UNIQUE,
+    description VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS users
+(
+    id        BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username  VARCHAR(255) NOT NULL UNIQUE,
+    email     VARCHAR(255) NOT NULL UNIQUE,
+    password  VARCHAR(255) NOT NULL,
+    createdAt TIMESTAMP(6),
+    updatedAt TIMESTAMP(6),
+    role_id   BIGINT       NOT NULL REFERENCES roles (id)
+);
+
+CREATE TABLE IF NOT EXISTS pages
+(
+    id        BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    title     VARCHAR(255) NOT NULL,
+    slug      VARCHAR(255) NOT NULL UNIQUE,
+    createdAt TIMESTAMP(6),
+    updatedAt TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS page_versions
+(
+    id            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    page_id       BIGINT       NOT NULL REFERENCES pages (id),
+    versionNumber INTEGER      NOT NULL,
+    content       TEXT,
+    changed_by_id BIGINT       NOT NULL REFERENCES users (id),
+    changedAt     TIMESTAMP(6) NOT NULL,
+    isPublished   BOOLEAN      NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS headings
+(
+    id       BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    page_id  BIGINT       NOT NULL REFERENCES pages (id),
+    level    INTEGER      NOT NULL,
+    text     VARCHAR(255) NOT NULL,
+    position INTEGER      NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS blocks
+(
+    id        BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    page_id   BIGINT       NOT NULL REFERENCES pages (id),
+    type      VARCHAR(255) NOT NULL,
+    content   JSONB,
+    position  INTEGER      NOT NULL,
+    isVisible BOOLEAN      NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS tags
+(
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name        VARCHAR(255) NOT NULL UNIQUE,
+    description VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS page_tags
+(
+    page_id BIGINT NOT NULL REFERENCES pages (id),
+    tag_id  BIGINT NOT NULL REFERENCES tags (id),
+    PRIMARY KEY (page_id, tag_id)
+);
+
+CREATE TABLE IF NOT EXISTS comments
+(
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    page_version_id BIGINT       NOT NULL REFERENCES page_versions (id),
+    author_id       BIGINT       NOT NULL REFERENCES users (id),
+    text            TEXT         NOT NULL,
+    createdAt       TIMESTAMP(6) NOT NULL,
+    updatedAt       TIMESTAMP(6),
+    resolved        BOOLEAN      NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS links
+(
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    page_id     BIGINT       NOT NULL REFERENCES pages (id),
+    url         VARCHAR(255) NOT NULL,
+    title       VARCHAR(255),
+    description VARCHAR(255)
+);
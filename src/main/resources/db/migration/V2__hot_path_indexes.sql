@@ -0,0 +1,30 @@
+-- Последняя версия и список версий страницы: WHERE page_id = ? ORDER BY versionNumber
+CREATE INDEX IF NOT EXISTS idx_page_versions_page_number
+    ON page_versions (page_id, versionNumber DESC);
+
+-- Последняя опубликованная версия страницы
+CREATE INDEX IF NOT EXISTS idx_page_versions_page_published
+    ON page_versions (page_id, versionNumber DESC)
+    WHERE isPublished;
+
+-- Комментарии к версии: WHERE page_version_id = ? ORDER BY createdAt
+CREATE INDEX IF NOT EXISTS idx_comments_version_created
+    ON comments (page_version_id, createdAt);
+
+-- Открытые комментарии к версии
+CREATE INDEX IF NOT EXISTS idx_comments_version_unresolved
+    ON comments (page_version_id)
+    WHERE NOT resolved;
+
+CREATE INDEX IF NOT EXISTS idx_blocks_page_position
+    ON blocks (page_id, position);
+
+CREATE INDEX IF NOT EXISTS idx_headings_page_position
+    ON headings (page_id, position);
+
+CREATE INDEX IF NOT EXISTS idx_links_page
+    ON links (page_id);
+
+-- Первичный ключ page_tags (page_id, tag_id) не покрывает поиск страниц по тегу
+CREATE INDEX IF NOT EXISTS idx_page_tags_tag_page
+    ON page_tags (tag_id, page_id);
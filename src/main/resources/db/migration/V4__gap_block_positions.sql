@@ -0,0 +1,10 @@
+-- Позиции с шагом 1024 позволяют вставлять и перемещать элементы изменением одной строки
+UPDATE blocks b
+SET position = r.rn * 1024
+FROM (SELECT id, ROW_NUMBER() OVER (PARTITION BY page_id ORDER BY position, id) AS rn FROM blocks) r
+WHERE b.id = r.id;
+
+UPDATE headings h
+SET position = r.rn * 1024
+FROM (SELECT id, ROW_NUMBER() OVER (PARTITION BY page_id ORDER BY position, id) AS rn FROM headings) r
+WHERE h.id = r.id;
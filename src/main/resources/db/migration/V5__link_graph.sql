@@ -0,0 +1,31 @@
+ALTER TABLE links ADD COLUMN IF NOT EXISTS internal BOOLEAN NOT NULL DEFAULT FALSE;
+ALTER TABLE links ADD COLUMN IF NOT EXISTS target_slug VARCHAR(255);
+ALTER TABLE links ADD COLUMN IF NOT EXISTS target_page_id BIGINT REFERENCES pages (id) ON DELETE SET NULL;
+
+-- Те же правила, что и в LinkTargets.internalSlug
+UPDATE links
+SET internal    = TRUE,
+    target_slug = NULLIF(regexp_replace(rtrim(split_part(split_part(url, '#', 1), '?', 1), '/'), '^.*/', ''), '')
+WHERE url !~ '^[a-zA-Z][a-zA-Z0-9+.-]*:'
+  AND url NOT LIKE '//%'
+  AND url NOT LIKE '#%';
+
+UPDATE links
+SET internal = FALSE
+WHERE internal AND target_slug IS NULL;
+
+UPDATE links l
+SET target_page_id = p.id
+FROM pages p
+WHERE l.internal
+  AND p.slug = l.target_slug;
+
+-- Обратные ссылки: WHERE target_page_id = ?; используется и для поиска страниц-сирот
+CREATE INDEX IF NOT EXISTS idx_links_target_page
+    ON links (target_page_id)
+    WHERE target_page_id IS NOT NULL;
+
+-- Битые внутренние ссылки и их разрешение при появлении страницы с нужным slug
+CREATE INDEX IF NOT EXISTS idx_links_unresolved_slug
+    ON links (target_slug)
+    WHERE internal AND target_page_id IS NULL;
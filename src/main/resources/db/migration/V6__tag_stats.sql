@@ -0,0 +1,16 @@
+CREATE TABLE IF NOT EXISTS tag_stats
+(
+    tag_id     BIGINT PRIMARY KEY REFERENCES tags (id) ON DELETE CASCADE,
+    page_count BIGINT NOT NULL DEFAULT 0
+);
+
+INSERT INTO tag_stats (tag_id, page_count)
+SELECT t.id, COUNT(pt.page_id)
+FROM tags t
+         LEFT JOIN page_tags pt ON pt.tag_id = t.id
+GROUP BY t.id
+ON CONFLICT (tag_id) DO UPDATE SET page_count = EXCLUDED.page_count;
+
+-- Облако тегов: ORDER BY page_count DESC LIMIT ?
+CREATE INDEX IF NOT EXISTS idx_tag_stats_count
+    ON tag_stats (page_count DESC, tag_id);
@@ -0,0 +1,13 @@
+-- Журнал изменений, записываемый в той же транзакции, что и сами изменения
+CREATE TABLE outbox_events (
+    id BIGSERIAL PRIMARY KEY,
+    aggregate_type VARCHAR(64) NOT NULL,
+    aggregate_id BIGINT,
+    event_type VARCHAR(64) NOT NULL,
+    payload JSONB NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT now(),
+    processed_at TIMESTAMP
+);
+
+CREATE INDEX idx_outbox_events_pending ON outbox_events (id) WHERE processed_at IS NULL;
+CREATE INDEX idx_outbox_events_processed ON outbox_events (processed_at) WHERE processed_at IS NOT NULL;
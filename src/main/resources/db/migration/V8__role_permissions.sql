@@ -0,0 +1,12 @@
+-- Права роли битовой маской: READ=1, COMMENT=2, EDIT=4, PUBLISH=8, ADMIN=16 (см. db.security.Permission)
+ALTER TABLE roles ADD COLUMN permissions BIGINT NOT NULL DEFAULT 0;
+
+UPDATE roles
+SET permissions = CASE lower(name)
+                      WHEN 'guest' THEN 1
+                      WHEN 'reader' THEN 1
+                      WHEN 'commenter' THEN 3
+                      WHEN 'editor' THEN 15
+                      WHEN 'admin' THEN 31
+                      ELSE 1
+    END;
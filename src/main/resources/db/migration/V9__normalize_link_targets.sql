@@ -0,0 +1,22 @@
+-- V5 разбирал url без обрезки пробельных и управляющих символов по краям, а LinkTargets.internalSlug
+-- обрезает их (String.trim); пересчитываем ссылки по тем же правилам, что и в приложении
+UPDATE links l
+SET internal       = s.slug IS NOT NULL,
+    target_slug    = s.slug,
+    target_page_id = NULL
+FROM (SELECT id,
+             CASE
+                 WHEN path = '' OR path ~ '^[a-zA-Z][a-zA-Z0-9+.-]*:' OR path LIKE '//%' OR path LIKE '#%' THEN NULL
+                 ELSE NULLIF(regexp_replace(rtrim(split_part(split_part(path, '#', 1), '?', 1), '/'), '^.*/', ''), '')
+                 END AS slug
+      FROM (SELECT id, regexp_replace(url, '^[\u0001- ]+|[\u0001- ]+$', '', 'g') AS path
+            FROM links) trimmed) s
+WHERE l.id = s.id
+  AND (l.internal IS DISTINCT FROM (s.slug IS NOT NULL) OR l.target_slug IS DISTINCT FROM s.slug);
+
+UPDATE links l
+SET target_page_id = p.id
+FROM pages p
+WHERE l.internal
+  AND l.target_page_id IS NULL
+  AND p.slug = l.target_slug;
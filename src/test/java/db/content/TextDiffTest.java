@@ -0,0 +1,51 @@
+package db.content;
+
+import db.dto.DiffHunkDTO;
+import db.dto.DiffSpanDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextDiffTest {
+
+    @Test
+    void changedLineProducesOneHunkWithWordSpans() {
+        List<DiffHunkDTO> hunks = TextDiff.diff("a\nb\nc\nd\n", "a\nb\nx c\nd\n");
+
+        assertEquals(1, hunks.size());
+        DiffHunkDTO hunk = hunks.getFirst();
+        assertEquals(List.of(" a", " b", "-c", "+x c", " d"), hunk.getLines());
+        assertEquals(1, hunk.getFromLine());
+        assertEquals(4, hunk.getFromCount());
+        assertEquals(List.of(new DiffSpanDTO(TextDiff.EQUAL, "a\nb\n"), new DiffSpanDTO(TextDiff.ADDED, "x "),
+                new DiffSpanDTO(TextDiff.EQUAL, "c\nd")), hunk.getWords());
+    }
+
+    @Test
+    void identicalTextsHaveNoHunks() {
+        assertTrue(TextDiff.diff("a\nb\n", "a\nb\n").isEmpty());
+    }
+
+    @Test
+    void expiredDeadlineReplacesUnresolvedBlockWhole() {
+        List<DiffHunkDTO> hunks = TextDiff.diff("same\na\nb\nc\nsame\n", "same\nb\nc\nd\nsame\n", System.nanoTime() - 1);
+
+        assertEquals(1, hunks.size());
+        assertEquals(List.of(" same", "-a", "-b", "-c", "+b", "+c", "+d", " same"), hunks.getFirst().getLines());
+        assertNull(hunks.getFirst().getWords());
+        assertTrue(hunks.getFirst().isTruncated());
+    }
+
+    @Test
+    void withoutDeadlineCommonLinesAreKept() {
+        List<DiffHunkDTO> hunks = TextDiff.diff("same\na\nb\nc\nsame\n", "same\nb\nc\nd\nsame\n", Long.MAX_VALUE);
+
+        assertEquals(List.of(" same", "-a", " b", " c", "+d", " same"), hunks.getFirst().getLines());
+        assertFalse(hunks.getFirst().isTruncated());
+    }
+}
@@ -0,0 +1,73 @@
+package db.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// План блоков при createNewVersion: ключом блока здесь служит строка содержимого
+class PageStructureWriterTest {
+    private static final int STEP = PageStructureWriter.POSITION_STEP;
+    private static final Function<String, Object> KEY = block -> block;
+
+    private static PageStructureWriter.ExistingRow row(long id, int position, String content) {
+        return new PageStructureWriter.ExistingRow(id, position, content);
+    }
+
+    private static PageStructureWriter.ExistingRow edited(long id, int position, String content, String origin) {
+        return new PageStructureWriter.ExistingRow(id, position, content, origin);
+    }
+
+    @Test
+    void patchedBlockSurvivesNewVersion() {
+        // patchContent изменил блок 2 («b» -> «b*»), новая версия меняет в тексте только третий блок
+        List<PageStructureWriter.ExistingRow> existing = List.of(
+                row(1, STEP, "a"), edited(2, 2 * STEP, "b*", "b"), row(3, 3 * STEP, "c"));
+
+        PageStructureWriter.Plan<String> plan = PageStructureWriter.planBlocks(existing, List.of("a", "b", "d"), KEY);
+
+        assertTrue(plan.deletes.isEmpty());
+        assertTrue(plan.inserts.isEmpty());
+        assertEquals(1, plan.updates.size());
+        assertEquals(3L, plan.updates.getFirst().rowId);
+        assertEquals("d", plan.updates.getFirst().item);
+    }
+
+    @Test
+    void unchangedTextKeepsMovedBlock() {
+        // moveBlock поставил блок 3 в начало страницы
+        List<PageStructureWriter.ExistingRow> existing = List.of(
+                edited(3, 0, "c", "c"), row(1, STEP, "a"), row(2, 2 * STEP, "b"));
+
+        PageStructureWriter.Plan<String> plan = PageStructureWriter.planBlocks(existing, List.of("a", "b", "c"), KEY);
+
+        assertTrue(plan.isEmpty());
+    }
+
+    @Test
+    void changedSourceBlockOverridesDirectEdit() {
+        List<PageStructureWriter.ExistingRow> existing = List.of(
+                row(1, STEP, "a"), edited(2, 2 * STEP, "b*", "b"), row(3, 3 * STEP, "c"));
+
+        PageStructureWriter.Plan<String> plan = PageStructureWriter.planBlocks(existing, List.of("a", "e", "c"), KEY);
+
+        assertEquals(1, plan.updates.size());
+        assertEquals(2L, plan.updates.getFirst().rowId);
+        assertEquals("e", plan.updates.getFirst().item);
+    }
+
+    @Test
+    void removedSourceBlockDeletesDirectEdit() {
+        List<PageStructureWriter.ExistingRow> existing = List.of(
+                row(1, STEP, "a"), edited(2, 2 * STEP, "b*", "b"), row(3, 3 * STEP, "c"));
+
+        PageStructureWriter.Plan<String> plan = PageStructureWriter.planBlocks(existing, List.of("a", "c"), KEY);
+
+        assertEquals(List.of(2L), plan.deletes);
+        assertTrue(plan.updates.isEmpty());
+        assertTrue(plan.inserts.isEmpty());
+    }
+}
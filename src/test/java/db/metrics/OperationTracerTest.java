@@ -0,0 +1,95 @@
+package db.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Запускается с docman.trace.mode=STRICT (maven-surefire-plugin в pom.xml); Hibernate заменён прямыми вызовами инспектора
+class OperationTracerTest {
+    private static final SqlStatementInspector INSPECTOR = new SqlStatementInspector();
+
+    interface Pages {
+        void loadPages(int count);
+
+        void loadTags(int count);
+
+        void loadInParallel(int count);
+    }
+
+    static class PagesImpl implements Pages {
+
+        @Override
+        public void loadPages(int count) {
+            for (int i = 0; i < count; i++) {
+                INSPECTOR.inspect("select p.id, p.title from pages p where p.slug = 'page-" + i + "'");
+                INSPECTOR.inspect("select t.name from tags t where t.id in (?, ?) order by " + i);
+            }
+        }
+
+        @Override
+        public void loadTags(int count) {
+            for (int i = 0; i < count; i++) {
+                INSPECTOR.inspect("select t.name from page_tags pt join tags t on t.id = pt.tag_id where pt.page_id = " + i);
+            }
+        }
+
+        @Override
+        public void loadInParallel(int count) {
+            try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+                CompletableFuture<?>[] loads = new CompletableFuture<?>[count];
+                for (int i = 0; i < count; i++) {
+                    String sql = "select b.id from blocks b where b.page_id = " + i;
+                    loads[i] = CompletableFuture.runAsync(() -> INSPECTOR.inspect(sql), OperationTracer.propagate(pool));
+                }
+                CompletableFuture.allOf(loads).join();
+            }
+        }
+    }
+
+    private final Pages pages = OperationTracer.wrap(Pages.class, new PagesImpl());
+
+    @Test
+    void exceedingStatementBudgetFailsOperation() {
+        OperationTracer.budget("loadPages", 4, 0);
+
+        StatementBudgetException e = assertThrows(StatementBudgetException.class, () -> pages.loadPages(3));
+
+        assertEquals(6, e.getTrace().getStatements());
+        assertTrue(e.getMessage().contains("SQL-выражений 6 при бюджете 4"), e.getMessage());
+        assertSame(e.getTrace(), OperationTracer.lastTrace());
+    }
+
+    @Test
+    void operationWithinBudgetPasses() {
+        OperationTracer.budget("loadPages", 4, 0);
+
+        pages.loadPages(2);
+
+        OperationTrace trace = OperationTracer.lastTrace();
+        assertEquals(4, trace.getStatements());
+        assertEquals(2, trace.getShapes().size());
+    }
+
+    @Test
+    void repeatedShapeIsReportedAsNPlusOne() {
+        StatementBudgetException e = assertThrows(StatementBudgetException.class,
+                () -> pages.loadTags(OperationTracer.REPEAT_THRESHOLD));
+
+        assertTrue(e.getMessage().contains("N+1: " + OperationTracer.REPEAT_THRESHOLD + " раз"), e.getMessage());
+        assertEquals(1, e.getTrace().getRepeatedShapes(OperationTracer.REPEAT_THRESHOLD).size());
+    }
+
+    @Test
+    void propagatedTasksCountTowardsOperation() {
+        pages.loadInParallel(3);
+
+        assertEquals(3, OperationTracer.lastTrace().getStatements());
+    }
+}
@@ -0,0 +1,49 @@
+package db.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerTest {
+
+    @Test
+    void percentilesStayWithinBucketError() {
+        Timer timer = new Timer("test", true);
+        for (long nanos = 1; nanos <= 1_000; nanos++) {
+            timer.record(nanos * 1_000, false);
+        }
+
+        assertEquals(1_000, timer.getCount());
+        assertEquals(1_000_000, timer.getMaxNanos());
+        long p50 = timer.getPercentileNanos(0.5);
+        long p99 = timer.getPercentileNanos(0.99);
+        assertTrue(p50 >= 500_000 && p50 <= 625_000, "p50 " + p50);
+        assertTrue(p99 >= 990_000 && p99 <= 1_000_000, "p99 " + p99);
+    }
+
+    @Test
+    void failedActionIsCountedAsError() {
+        Timer timer = new Timer("test", true);
+
+        assertThrows(IllegalStateException.class, () -> timer.time(() -> {
+            throw new IllegalStateException();
+        }));
+
+        assertEquals(1, timer.getCount());
+        assertEquals(1, timer.getErrors());
+    }
+
+    @Test
+    void disabledTimerOnlyRunsAction() {
+        Timer timer = new Timer("test", false);
+
+        int result = timer.time(() -> 42);
+        timer.record(1_000, true);
+
+        assertEquals(42, result);
+        assertEquals(0, timer.getCount());
+        assertEquals(0, timer.getPercentileNanos(0.99));
+    }
+}
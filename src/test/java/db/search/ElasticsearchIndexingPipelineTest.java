@@ -0,0 +1,131 @@
+package db.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Elasticsearch заменён HTTP-заглушкой: псевдоним pages существует, первый _bulk отвечает 429 на страницу 1
+class ElasticsearchIndexingPipelineTest {
+    private static final Pattern OPERATION = Pattern.compile("\\{\"(index|delete)\":\\{[^}]*\"_id\":\"(\\d+)\"");
+
+    private final List<List<String>> bulkOperations = new CopyOnWriteArrayList<>();
+    private final List<Long> bulkNanos = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private RestClient restClient;
+    private ElasticsearchIndexingPipeline pipeline;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/_alias/" + PageIndexAdmin.ALIAS, exchange -> respond(exchange, 200, null));
+        server.createContext("/_bulk", this::bulk);
+        server.start();
+        restClient = RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort(), "http")).build();
+        ElasticsearchClient client = new ElasticsearchClient(new RestClientTransport(restClient, new JacksonJsonpMapper()));
+        pipeline = new ElasticsearchIndexingPipeline(client, ElasticsearchIndexingPipelineTest::load);
+    }
+
+    @AfterEach
+    void stopStub() throws IOException {
+        pipeline.close();
+        restClient.close();
+        server.stop(0);
+    }
+
+    // Страницы 1 и 2 есть в базе, страница 3 удалена
+    private static ElasticsearchIndexingPipeline.Loaded load(List<Long> batch) {
+        Map<Long, PageDocument> documents = new HashMap<>();
+        for (Long pageId : batch) {
+            if (pageId != 3L) {
+                documents.put(pageId, new PageDocument(pageId, "page-" + pageId, "Страница " + pageId,
+                        List.of("deploy"), "Содержимое страницы " + pageId));
+            }
+        }
+        return new ElasticsearchIndexingPipeline.Loaded(documents, Map.of(), List.of());
+    }
+
+    @Test
+    void coalescesChangesAndRetriesRejectedPageAfterBackoff() {
+        pipeline.pageChanged(1L);
+        pipeline.pageChanged(2L);
+        pipeline.pageChanged(1L);
+        pipeline.pageDeleted(3L);
+        pipeline.pageChanged(2L);
+        pipeline.startWorker();
+
+        assertTrue(pipeline.flush(10, TimeUnit.SECONDS));
+
+        assertEquals(2, bulkOperations.size(), bulkOperations.toString());
+        assertEquals(List.of("index 1", "index 2", "delete 3"), bulkOperations.get(0));
+        assertEquals(List.of("index 1"), bulkOperations.get(1));
+        long pause = TimeUnit.NANOSECONDS.toMillis(bulkNanos.get(1) - bulkNanos.get(0));
+        assertTrue(pause >= 150, "повтор через " + pause + " мс");
+        assertEquals(0, pipeline.getPendingCount());
+    }
+
+    private void bulk(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        bulkNanos.add(System.nanoTime());
+        boolean first = bulkOperations.isEmpty();
+        List<String> operations = new ArrayList<>();
+        StringBuilder items = new StringBuilder();
+        Matcher matcher = OPERATION.matcher(body);
+        while (matcher.find()) {
+            String type = matcher.group(1);
+            String id = matcher.group(2);
+            operations.add(type + " " + id);
+            boolean rejected = first && id.equals("1");
+            if (!items.isEmpty()) {
+                items.append(',');
+            }
+            items.append("{\"").append(type).append("\":{\"_index\":\"pages\",\"_id\":\"").append(id)
+                    .append("\",\"status\":").append(rejected ? 429 : 200);
+            if (rejected) {
+                items.append(",\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"очередь заполнена\"}");
+            }
+            items.append("}}");
+        }
+        bulkOperations.add(operations);
+        boolean errors = first && operations.contains("index 1");
+        respond(exchange, 200, "{\"took\":1,\"errors\":" + errors + ",\"items\":[" + items + "]}");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        exchange.getResponseHeaders().add("X-Elastic-Product", "Elasticsearch");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (json == null || "HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}